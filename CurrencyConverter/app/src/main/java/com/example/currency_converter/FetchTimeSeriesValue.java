@@ -6,11 +6,9 @@ import android.util.Log;
 
 import org.json.JSONObject;
 
-import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
-import java.io.InputStreamReader;
-import java.util.ArrayList;
-import java.util.List;
+import java.io.InputStream;
 import java.net.HttpURLConnection;
 import java.net.URL;
 
@@ -31,7 +29,7 @@ public class FetchTimeSeriesValue {
     private String to;
     private String from;
     private String date;
-    private List<Double> result;
+    private double[] result;
 
     /**
      * Constructor initializes the class with the necessary parameters for the API call and
@@ -101,48 +99,56 @@ public class FetchTimeSeriesValue {
         }
 
         /**
-         * Fetches currency rates from the specified URL and parses the JSON response.
+         * Fetches currency rates from the specified URL. The compact binary series is requested
+         * first; a JSON response, [{"yyyy-MM-dd": rate}, ...], is still understood.
          *
          * @param toCurrency The target currency code.
          * @param fromCurrency The base currency code.
          * @param toDate The date for which to fetch historical rates.
-         * @return A list of currency rates as doubles.
+         * @return The currency rates in ascending date order, empty if the request failed.
          */
-        public List<Double> fetchCurrencyRates(String toCurrency, String fromCurrency, String toDate) {
-            List<Double> rates = new ArrayList<>();
+        public double[] fetchCurrencyRates(String toCurrency, String fromCurrency, String toDate) {
+            double[] rates = new double[0];
             try {
-                // Construct the URL for the API request.
-                String urlString = String.format("https://cuddly-lamp-p594qvpr427xrv-8080.app.github.dev/api/historical?toDate=%s&to=%s&from=%s",
-                        toDate, toCurrency, fromCurrency);
+                // Construct the URL for the API request, asking for no more points than the screen has pixels.
+                int points = Math.max(activity.getResources().getDisplayMetrics().widthPixels, 3);
+                String urlString = String.format("https://cuddly-lamp-p594qvpr427xrv-8080.app.github.dev/api/historical?toDate=%s&to=%s&from=%s&points=%d",
+                        toDate, toCurrency, fromCurrency, points);
                 URL url = new URL(urlString);
                 HttpURLConnection conn = (HttpURLConnection) url.openConnection();
                 conn.setRequestMethod("GET");
-                conn.setRequestProperty("Accept", "application/json");
+                conn.setRequestProperty("Accept", RateSeriesDecoder.MEDIA_TYPE + ", application/json;q=0.5");
 
                 if (conn.getResponseCode() != 200) {
                     throw new RuntimeException("Failed : HTTP error code : " + conn.getResponseCode());
                 }
 
-                // Read the response.
-                BufferedReader br = new BufferedReader(new InputStreamReader(conn.getInputStream()));
-                StringBuilder response = new StringBuilder();
-                String output;
-                while ((output = br.readLine()) != null) {
-                    response.append(output);
+                // Read the whole response body.
+                String contentType = conn.getContentType();
+                int length = conn.getContentLength();
+                ByteArrayOutputStream body = new ByteArrayOutputStream(length > 0 ? length : 16384);
+                InputStream in = conn.getInputStream();
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = in.read(chunk)) != -1) {
+                    body.write(chunk, 0, read);
                 }
+                in.close();
                 conn.disconnect();
 
-                // Parse the response and extract rates.
-                JSONArray ratesArray = new JSONArray(response.toString());
-                for (int i = 0; i < ratesArray.length(); i++) {
-                    try {
-                        rates.add(Double.parseDouble(ratesArray.getString(i)));
-                    } catch (NumberFormatException e) {
-                        Log.e("Parsing Error", "Error parsing rate as double: " + ratesArray.getString(i));
+                if (contentType != null && contentType.startsWith(RateSeriesDecoder.MEDIA_TYPE)) {
+                    rates = RateSeriesDecoder.decodeRates(body.toByteArray());
+                } else {
+                    // Parse the JSON response, one {date: rate} object per day.
+                    JSONArray ratesArray = new JSONArray(body.toString("UTF-8"));
+                    rates = new double[ratesArray.length()];
+                    for (int i = 0; i < ratesArray.length(); i++) {
+                        JSONObject point = ratesArray.getJSONObject(i);
+                        rates[i] = point.getDouble(point.keys().next());
                     }
                 }
 
-            } catch (IOException | JSONException e) {
+            } catch (IOException | JSONException | IllegalArgumentException e) {
                 Log.e("Network Error", "Error fetching currency rates", e);
             }
             return rates;
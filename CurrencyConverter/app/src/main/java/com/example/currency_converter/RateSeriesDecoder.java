@@ -0,0 +1,90 @@
+package com.example.currency_converter;
+
+/**
+ * Decodes the binary time series sent by the web service for the media type
+ * application/vnd.currency.rate-series. The rates are written straight into a primitive array,
+ * without intermediate objects.
+ *
+ * Layout (big-endian): byte version, byte encoding, byte scale, byte reserved,
+ * int startEpochDay, int dayCount, int valueCount, a bitmap of ceil(dayCount / 8) bytes marking
+ * the days that have a rate, then the rates: valueCount floats (encoding 0), or the rates
+ * times 10^scale (scale 0 to 18) as a zigzag varint followed by zigzag varint differences
+ * (encoding 1). The server rounds cross rates to 7 significant digits in encoding 1.
+ *
+ * Author: Aditya Aayush
+ */
+public final class RateSeriesDecoder {
+
+    public static final String MEDIA_TYPE = "application/vnd.currency.rate-series";
+
+    private static final int HEADER_SIZE = 16;
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+
+    private RateSeriesDecoder() {
+    }
+
+    /**
+     * @param data The response body.
+     * @return The rates in ascending date order.
+     * @throws IllegalArgumentException If the body is not a version 1 series.
+     */
+    public static double[] decodeRates(byte[] data) {
+        if (data.length < HEADER_SIZE || data[0] != 1 || data[2] < 0 || data[2] >= POWERS_OF_TEN.length) {
+            throw new IllegalArgumentException("Unsupported rate series format");
+        }
+        int encoding = data[1];
+        double power = POWERS_OF_TEN[data[2]];
+        int dayCount = readInt(data, 8);
+        int valueCount = readInt(data, 12);
+        int position = HEADER_SIZE + (dayCount + 7) / 8;
+        double[] rates = new double[valueCount];
+
+        if (encoding == 0) {
+            for (int i = 0; i < valueCount; i++, position += 4) {
+                rates[i] = Float.intBitsToFloat(readInt(data, position));
+            }
+        } else if (encoding == 1) {
+            long scaled = 0;
+            for (int i = 0; i < valueCount; i++) {
+                // Varint: 7 bits per byte, low bits first
+                long zigzag = 0;
+                int shift = 0;
+                int b;
+                do {
+                    b = data[position++];
+                    zigzag |= (long) (b & 0x7F) << shift;
+                    shift += 7;
+                } while ((b & 0x80) != 0);
+                scaled += (zigzag >>> 1) ^ -(zigzag & 1);
+                rates[i] = scaled / power;
+            }
+        } else {
+            throw new IllegalArgumentException("Unsupported rate series encoding " + encoding);
+        }
+        return rates;
+    }
+
+    /**
+     * @param data The response body.
+     * @return The days, as days since 1970-01-01, that have a rate, in the order of {@link #decodeRates(byte[])}.
+     */
+    public static int[] decodeEpochDays(byte[] data) {
+        int startDay = readInt(data, 4);
+        int dayCount = readInt(data, 8);
+        int[] days = new int[readInt(data, 12)];
+        int count = 0;
+        for (int bit = 0; bit < dayCount && count < days.length; bit++) {
+            if ((data[HEADER_SIZE + (bit >>> 3)] & (1 << (bit & 7))) != 0) {
+                days[count++] = startDay + bit;
+            }
+        }
+        return days;
+    }
+
+    private static int readInt(byte[] data, int position) {
+        return (data[position] & 0xFF) << 24 | (data[position + 1] & 0xFF) << 16
+                | (data[position + 2] & 0xFF) << 8 | (data[position + 3] & 0xFF);
+    }
+}
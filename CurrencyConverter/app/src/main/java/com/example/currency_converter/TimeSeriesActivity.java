@@ -51,17 +51,17 @@ public class TimeSeriesActivity extends AppCompatActivity {
      * Creates a graph based on the fetched currency values.
      * Uses MPAndroidChart to plot the data points on a line chart.
      *
-     * @param values List of Double values representing currency rates over time.
+     * @param values The currency rates over time, in ascending date order.
      */
-    public void createGraph(List<Double> values) {
-        Log.d("currencyValues", values.toString()); // Debug log for verifying fetched values
+    public void createGraph(double[] values) {
+        Log.d("currencyValues", values.length + " values"); // Debug log for verifying fetched values
         LineChart chart = findViewById(R.id.chart); // Ensure there's a LineChart view in your layout with this ID
 
         // Prepare data entries from the fetched values
         List<Entry> entries = new ArrayList<>();
-        for (int i = 0; i < values.size(); i++) {
+        for (int i = 0; i < values.length; i++) {
             // Each value is converted into an Entry object (Entry(x, y))
-            entries.add(new Entry(i, values.get(i).floatValue()));
+            entries.add(new Entry(i, (float) values[i]));
         }
 
         // Create a dataset from the entries with optional label
@@ -0,0 +1,81 @@
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Closed-loop load generator used to compare the platform-thread and virtual-thread execution
+ * modes of the web service. Keeps a fixed number of requests in flight for a fixed duration and
+ * reports throughput, error count and latency percentiles.
+ *
+ * Run with the single-file launcher (Java 11+), once per mode and concurrency level:
+ *   java bench/LoadBenchmark.java http://localhost:8080/api/latest?from=USD&to=EUR 1000 30
+ *   java bench/LoadBenchmark.java http://localhost:8080/api/latest?from=USD&to=EUR 5000 30
+ *   java bench/LoadBenchmark.java http://localhost:8080/api/latest?from=USD&to=EUR 10000 30
+ * starting the server with -Dcurrency.virtualThreads=false and then =true (Java 21+).
+ * Raise the server's -Dcurrency.server.maxInFlight above the tested concurrency, otherwise the
+ * excess requests are answered with 503.
+ *
+ * Author: Aditya Aayush
+ */
+public class LoadBenchmark {
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 3) {
+            System.err.println("Usage: java LoadBenchmark.java <url> <concurrency> <seconds>");
+            System.exit(1);
+        }
+        URI uri = URI.create(args[0]);
+        int concurrency = Integer.parseInt(args[1]);
+        long durationNanos = Duration.ofSeconds(Long.parseLong(args[2])).toNanos();
+
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        HttpRequest request = HttpRequest.newBuilder(uri).timeout(Duration.ofSeconds(60)).GET().build();
+
+        // One latency sample per completed request, in microseconds
+        long[] latencies = new long[1 << 22];
+        AtomicInteger samples = new AtomicInteger();
+        AtomicLong errors = new AtomicLong();
+        Semaphore slots = new Semaphore(concurrency);
+
+        long start = System.nanoTime();
+        long deadline = start + durationNanos;
+        while (System.nanoTime() < deadline) {
+            slots.acquire();
+            long sent = System.nanoTime();
+            client.sendAsync(request, HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+                if (error != null || response.statusCode() != 200) {
+                    errors.incrementAndGet();
+                } else {
+                    int index = samples.getAndIncrement();
+                    if (index < latencies.length) {
+                        latencies[index] = (System.nanoTime() - sent) / 1000;
+                    }
+                }
+                slots.release();
+            });
+        }
+        // Wait for the requests still in flight
+        slots.acquire(concurrency);
+        double seconds = (System.nanoTime() - start) / 1e9;
+
+        int count = Math.min(samples.get(), latencies.length);
+        long[] sorted = Arrays.copyOf(latencies, count);
+        Arrays.sort(sorted);
+        System.out.printf("concurrency=%d requests=%d errors=%d throughput=%.1f req/s%n",
+                concurrency, count, errors.get(), count / seconds);
+        if (count > 0) {
+            System.out.printf("latency p50=%.2f ms p95=%.2f ms p99=%.2f ms max=%.2f ms%n",
+                    sorted[count / 2] / 1000.0, sorted[(int) (count * 0.95)] / 1000.0,
+                    sorted[(int) (count * 0.99)] / 1000.0, sorted[count - 1] / 1000.0);
+        }
+    }
+}
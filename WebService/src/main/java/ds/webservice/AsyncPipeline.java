@@ -0,0 +1,239 @@
+package ds.webservice;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Non-blocking request pipeline shared by the API servlets. A request is switched to async mode,
+ * the container thread is released immediately, and the response is written when the result
+ * future completes. A configurable limit on in-flight requests protects the service: requests
+ * over the limit are rejected with 503 and a Retry-After header instead of queueing.
+ *
+ * Author: Aditya Aayush
+ */
+public final class AsyncPipeline {
+
+    /**
+     * Writes a successful result to the response.
+     */
+    @FunctionalInterface
+    public interface ResultWriter<T> {
+        void write(T result, HttpServletResponse response) throws IOException;
+    }
+
+    /**
+     * Writes a failure to the response.
+     */
+    @FunctionalInterface
+    public interface ErrorWriter {
+        void write(Throwable error, HttpServletResponse response) throws IOException;
+    }
+
+    // Upper bound of requests that are being processed at the same time.
+    private static final int MAX_IN_FLIGHT = ServiceConfig.getInt("server.maxInFlight", 2000);
+    private static final Semaphore permits = new Semaphore(MAX_IN_FLIGHT);
+    // Seconds a rejected client is asked to wait before retrying.
+    private static final String RETRY_AFTER_SECONDS = String.valueOf(ServiceConfig.getInt("server.retryAfterSeconds", 1));
+    // Time after which an unfinished async request is answered with 504.
+    private static final long ASYNC_TIMEOUT_MILLIS = ServiceConfig.getLong("server.asyncTimeoutMillis", 30000);
+
+    private static final AtomicLong rejected = new AtomicLong();
+    // Request attribute holding the System.nanoTime() at which the request was admitted.
+    private static final String START_ATTRIBUTE = AsyncPipeline.class.getName() + ".start";
+
+    // Utility class, no instances.
+    private AsyncPipeline() {
+    }
+
+    /**
+     * Admits a request and switches it to async mode. When the in-flight limit is reached the
+     * request is answered with 503 right away.
+     *
+     * @param request The incoming request.
+     * @param response The response to the request.
+     * @return The async context of the admitted request, or null if it was rejected.
+     * @throws IOException If the rejection could not be written.
+     */
+    public static AsyncContext start(HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (!permits.tryAcquire()) {
+            rejected.incrementAndGet();
+            response.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+            response.setHeader("Retry-After", RETRY_AFTER_SECONDS);
+            response.setContentType("text/plain");
+            response.getWriter().write("Service busy, retry later.");
+            return null;
+        }
+        try {
+            long startTime = System.nanoTime();
+            request.setAttribute(START_ATTRIBUTE, startTime);
+            // Everything before admission counts as parsing the request
+            RequestContext requestContext = RequestContext.of(request);
+            if (requestContext != null) {
+                requestContext.record(RequestContext.Span.PARSE, requestContext.getStartNanos(), startTime);
+            }
+            AsyncContext context = request.startAsync();
+            context.setTimeout(ASYNC_TIMEOUT_MILLIS);
+            return context;
+        } catch (RuntimeException e) {
+            permits.release();
+            throw e;
+        }
+    }
+
+    /**
+     * Completes an admitted request once the result future is done. Exactly one of the writers
+     * runs, unless the request timed out first, in which case a 504 has already been sent.
+     * The time from admission until the response is written is recorded in the latency histogram.
+     * The writers run with the request's {@link RequestContext} bound to their thread.
+     *
+     * @param context The async context returned by {@link #start(HttpServletRequest, HttpServletResponse)}.
+     * @param latency The histogram of the operation.
+     * @param result The future producing the result.
+     * @param onSuccess Writes the successful result.
+     * @param onError Writes the failure.
+     */
+    public static <T> void finish(AsyncContext context, LatencyHistogram latency, CompletableFuture<T> result, ResultWriter<T> onSuccess, ErrorWriter onError) {
+        AtomicBoolean done = new AtomicBoolean();
+        long startTime = (Long) context.getRequest().getAttribute(START_ATTRIBUTE);
+        RequestContext requestContext = RequestContext.of(context.getRequest());
+        context.addListener(new AsyncListener() {
+            @Override
+            public void onTimeout(AsyncEvent event) throws IOException {
+                if (done.compareAndSet(false, true)) {
+                    HttpServletResponse response = (HttpServletResponse) context.getResponse();
+                    response.setStatus(HttpServletResponse.SC_GATEWAY_TIMEOUT);
+                    response.setContentType("text/plain");
+                    response.getWriter().write("Request timed out.");
+                    latency.recordNanos(System.nanoTime() - startTime);
+                    LatencyMetrics.countStatus(latency, HttpServletResponse.SC_GATEWAY_TIMEOUT);
+                    permits.release();
+                    context.complete();
+                }
+            }
+
+            @Override
+            public void onError(AsyncEvent event) {
+                if (done.compareAndSet(false, true)) {
+                    permits.release();
+                    context.complete();
+                }
+            }
+
+            @Override
+            public void onComplete(AsyncEvent event) {
+            }
+
+            @Override
+            public void onStartAsync(AsyncEvent event) {
+            }
+        });
+
+        // Write on the blocking executor so slow clients never hold up upstream I/O threads
+        result.whenCompleteAsync((value, error) -> {
+            if (!done.compareAndSet(false, true)) {
+                return;
+            }
+            HttpServletResponse response = (HttpServletResponse) context.getResponse();
+            RequestContext previous = RequestContext.attach(requestContext);
+            try {
+                if (error == null) {
+                    onSuccess.write(value, response);
+                } else {
+                    onError.write(error instanceof CompletionException && error.getCause() != null ? error.getCause() : error, response);
+                }
+            } catch (Exception e) {
+                e.printStackTrace();
+            } finally {
+                RequestContext.attach(previous);
+                latency.recordNanos(System.nanoTime() - startTime);
+                LatencyMetrics.countStatus(latency, response.getStatus());
+                permits.release();
+                context.complete();
+            }
+        }, ExecutionMode.blocking());
+    }
+
+    /**
+     * Writes the body of a JSON response.
+     */
+    @FunctionalInterface
+    public interface JsonBody {
+        void writeTo(JsonWriter json) throws IOException;
+    }
+
+    /**
+     * Streams a JSON result to the response through a pooled {@link JsonWriter}, as UTF-8 on the
+     * output stream, without building the response text first. The time spent handing bytes to
+     * the container is recorded as the write span of the current request, the rest as the
+     * serialize span; both start with the call, serialize first.
+     *
+     * @param response The response to write to.
+     * @param body Writes the JSON value, e.g. {@code json -> json.value(result)}.
+     * @throws IOException If the response could not be written.
+     */
+    public static void writeJson(HttpServletResponse response, JsonBody body) throws IOException {
+        long start = System.nanoTime();
+        response.setCharacterEncoding("UTF-8");
+        // Read the I/O time after close, which flushes the rest of the body
+        JsonWriter json = new JsonWriter(response.getOutputStream());
+        try (json) {
+            body.writeTo(json);
+        }
+        long ioNanos = json.getIoNanos();
+        RequestContext requestContext = RequestContext.current();
+        if (requestContext != null) {
+            long end = System.nanoTime();
+            long serializeEnd = end - Math.min(ioNanos, end - start);
+            requestContext.record(RequestContext.Span.SERIALIZE, start, serializeEnd);
+            requestContext.record(RequestContext.Span.WRITE, serializeEnd, end);
+        }
+    }
+
+    /**
+     * Encodes a binary result and writes it to the response, recording the encoding time as the
+     * serialize span and the write as the write span of the current request.
+     *
+     * @param response The response to write to.
+     * @param contentType The media type of the body.
+     * @param body Encodes the body.
+     * @throws IOException If the response could not be written.
+     */
+    public static void writeBinary(HttpServletResponse response, String contentType, Supplier<byte[]> body) throws IOException {
+        long start = System.nanoTime();
+        byte[] bytes = body.get();
+        long writeStart = System.nanoTime();
+        response.setContentType(contentType);
+        response.setContentLength(bytes.length);
+        response.getOutputStream().write(bytes);
+        RequestContext requestContext = RequestContext.current();
+        if (requestContext != null) {
+            requestContext.record(RequestContext.Span.SERIALIZE, start, writeStart);
+            requestContext.end(RequestContext.Span.WRITE, writeStart);
+        }
+    }
+
+    /**
+     * @return The number of requests currently being processed.
+     */
+    public static int getInFlight() {
+        return MAX_IN_FLIGHT - permits.availablePermits();
+    }
+
+    /**
+     * @return The number of requests rejected because the in-flight limit was reached.
+     */
+    public static long getRejected() {
+        return rejected.get();
+    }
+}
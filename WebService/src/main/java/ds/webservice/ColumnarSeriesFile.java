@@ -0,0 +1,227 @@
+package ds.webservice;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.DoubleBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Columnar, memory-mapped copy of the historical rate store, laid out for range queries.
+ * The file holds a sorted date index followed by one contiguous column of EUR rates per currency,
+ * so a time series for a currency pair is two sequential slice reads and one element-wise divide.
+ * It is derived data: {@link HistoricalRateStore} rebuilds it whenever new days are appended.
+ *
+ * File layout (little-endian):
+ * header:  int magic, int version, int rowCount, int columnCount, columnCount x 3 ASCII bytes, padding to 8 bytes
+ * index:   rowCount x int epochDay, padding to 8 bytes
+ * columns: columnCount x (rowCount x double EUR rate, NaN when not published that day)
+ *
+ * Author: Aditya Aayush
+ */
+public final class ColumnarSeriesFile {
+
+    private static final int MAGIC = 0x43435453; // "CCTS"
+    private static final int VERSION = 1;
+
+    private final int rowCount;
+    private final Map<String, Integer> columns;
+    // Date index, one epoch day per row in ascending order.
+    private final IntBuffer days;
+    // All columns back to back; column c starts at c * rowCount.
+    private final DoubleBuffer rates;
+
+    private ColumnarSeriesFile(int rowCount, Map<String, Integer> columns, IntBuffer days, DoubleBuffer rates) {
+        this.rowCount = rowCount;
+        this.columns = columns;
+        this.days = days;
+        this.rates = rates;
+    }
+
+    /**
+     * Writes a new columnar file atomically.
+     *
+     * @param file The target file.
+     * @param codes The currency code of each column.
+     * @param epochDays The date of each row, ascending.
+     * @param columnData The EUR rates, one array of rowCount values per column.
+     */
+    public static void write(Path file, String[] codes, int[] epochDays, double[][] columnData) throws IOException {
+        int rowCount = epochDays.length;
+        int headerSize = align(16 + codes.length * 3);
+        int indexSize = align(rowCount * 4);
+        ByteBuffer buffer = ByteBuffer.allocate(headerSize + indexSize + codes.length * rowCount * 8)
+                .order(ByteOrder.LITTLE_ENDIAN);
+
+        buffer.putInt(MAGIC).putInt(VERSION).putInt(rowCount).putInt(codes.length);
+        for (String code : codes) {
+            buffer.put(code.getBytes(StandardCharsets.US_ASCII), 0, 3);
+        }
+        buffer.position(headerSize);
+        buffer.asIntBuffer().put(epochDays);
+        buffer.position(headerSize + indexSize);
+        DoubleBuffer columnBuffer = buffer.asDoubleBuffer();
+        for (double[] column : columnData) {
+            columnBuffer.put(column, 0, rowCount);
+        }
+        buffer.position(0);
+
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Maps an existing columnar file.
+     *
+     * @param file The file to open.
+     * @return The mapped file, ready for range queries.
+     */
+    public static ColumnarSeriesFile open(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            buffer.order(ByteOrder.LITTLE_ENDIAN);
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported columnar series format: " + file);
+            }
+            int rowCount = buffer.getInt(8);
+            int columnCount = buffer.getInt(12);
+            Map<String, Integer> columns = new HashMap<>(columnCount * 2);
+            byte[] code = new byte[3];
+            for (int i = 0; i < columnCount; i++) {
+                for (int j = 0; j < 3; j++) {
+                    code[j] = buffer.get(16 + i * 3 + j);
+                }
+                columns.put(new String(code, StandardCharsets.US_ASCII), i);
+            }
+            int headerSize = align(16 + columnCount * 3);
+            int indexSize = align(rowCount * 4);
+
+            buffer.position(headerSize);
+            IntBuffer days = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asIntBuffer();
+            days.limit(rowCount);
+            buffer.position(headerSize + indexSize);
+            DoubleBuffer rates = buffer.slice().order(ByteOrder.LITTLE_ENDIAN).asDoubleBuffer();
+            return new ColumnarSeriesFile(rowCount, columns, days, rates);
+        }
+    }
+
+    /**
+     * @return The number of rows (business days) in the file.
+     */
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    /**
+     * Reads the cross rates between two currencies for every row in a date range.
+     * Rows on which either currency was not published are skipped.
+     *
+     * @param start The first date of the range (inclusive).
+     * @param end The last date of the range (inclusive).
+     * @param fromCurrency The ISO code of the source currency.
+     * @param toCurrency The ISO code of the target currency.
+     * @return The series, or null if either currency is unknown.
+     */
+    public HistoricalRateStore.Series range(LocalDate start, LocalDate end, String fromCurrency, String toCurrency) {
+        return range((int) start.toEpochDay(), (int) end.toEpochDay(), fromCurrency, toCurrency);
+    }
+
+    /**
+     * Same as {@link #range(LocalDate, LocalDate, String, String)} with the range given as epoch days.
+     */
+    public HistoricalRateStore.Series range(int startDay, int endDay, String fromCurrency, String toCurrency) {
+        int from = column(fromCurrency);
+        int to = column(toCurrency);
+        if (from == -1 || to == -1) {
+            return null;
+        }
+        int first = lowerBound(startDay);
+        int last = endDay == Integer.MAX_VALUE ? rowCount : lowerBound(endDay + 1);
+        int length = Math.max(0, last - first);
+
+        int[] epochDays = new int[length];
+        double[] fromRates = new double[length];
+        double[] result = new double[length];
+        days.duplicate().position(first).get(epochDays, 0, length);
+        readColumn(from, first, fromRates, length);
+        readColumn(to, first, result, length);
+
+        // Element-wise divide over primitive arrays, simple enough for the JIT to vectorize
+        for (int i = 0; i < length; i++) {
+            result[i] = result[i] / fromRates[i];
+        }
+
+        // Compact away days on which either currency was missing (NaN never equals itself)
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            double rate = result[i];
+            epochDays[count] = epochDays[i];
+            result[count] = rate;
+            count += rate == rate ? 1 : 0;
+        }
+        return new HistoricalRateStore.Series(epochDays, result, count);
+    }
+
+    /**
+     * Copies a slice of one column, or fills the slice with 1.0 for the EUR base.
+     */
+    private void readColumn(int column, int firstRow, double[] target, int length) {
+        if (column == -2) {
+            Arrays.fill(target, 0, length, 1.0);
+            return;
+        }
+        rates.duplicate().position(column * rowCount + firstRow).get(target, 0, length);
+    }
+
+    /**
+     * Maps a currency code to its column.
+     *
+     * @return The column index, -2 for EUR (constant 1.0), or -1 if unknown.
+     */
+    private int column(String code) {
+        if (RateMatrix.EUR.equals(code)) {
+            return -2;
+        }
+        Integer column = code != null ? columns.get(code) : null;
+        return column != null ? column : -1;
+    }
+
+    /**
+     * Binary search for the first row whose date is on or after the given day.
+     */
+    private int lowerBound(int day) {
+        int low = 0;
+        int high = rowCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (days.get(mid) < day) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static int align(int size) {
+        return (size + 7) & ~7;
+    }
+}
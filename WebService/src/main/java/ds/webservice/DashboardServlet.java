@@ -1,7 +1,8 @@
 /**
  * Servlet responsible for generating the dashboard data.
  * This servlet fetches data for the highest currency pair, top devices, and various request/response metrics,
- * and forwards this data to a JSP page for rendering the dashboard view.
+ * and forwards this data to a JSP page for rendering the dashboard view. The log tables are paginated,
+ * controlled by the pageSize, windowHours and per-table cursor query parameters.
  *
  * Author: Aditya Aayush
  */
@@ -36,13 +37,66 @@ public class DashboardServlet extends HttpServlet{
         // Set attributes for the request scope to be accessed in the JSP
         request.setAttribute("mostFrequentConversion", displayText);
         request.setAttribute("topDevices", model.getTop5Devices());
-        request.setAttribute("clientRequests", model.getAllClientRequests());
-        request.setAttribute("serverRequests", model.getAllServerRequests());
-        request.setAttribute("serverResponses", model.getAllServerResponses());
-        request.setAttribute("serviceResponses", model.getAllServiceResponses());
+        request.setAttribute("topPairs", model.getPairPopularity().getRanking());
+
+        // One page per log table. The pages are lazy cursors, the JSP streams their rows as it reads them
+        LogPage.Window window = LogPage.Window.from(request);
+        request.setAttribute("window", window);
+        LogPage[] pages = {
+                model.getClientRequests(window, LogPage.cursor(request, "client_request")),
+                model.getServerRequests(window, LogPage.cursor(request, "server_request")),
+                model.getServerResponses(window, LogPage.cursor(request, "server_response")),
+                model.getServiceResponses(window, LogPage.cursor(request, "service_response"))};
+        request.setAttribute("clientRequests", pages[0]);
+        request.setAttribute("serverRequests", pages[1]);
+        request.setAttribute("serverResponses", pages[2]);
+        request.setAttribute("serviceResponses", pages[3]);
         request.setAttribute("averageResponseTime", model.getAverageResponseTime());
 
-        // Forward the request to the dashboard.jsp page for rendering the dashboard view
-        request.getRequestDispatcher("dashboard.jsp").forward(request, response);
+        // Report how effective the latest rate cache is at avoiding upstream calls
+        RateCache cache = model.getLatestRateCache();
+        request.setAttribute("rateCacheStats", String.format("%d hits, %d misses, %d evictions (%d tables cached)",
+                cache.getHits(), cache.getMisses(), cache.getEvictions(), cache.size()));
+        SingleFlight flights = model.getUpstreamFlights();
+        request.setAttribute("upstreamFlightStats", String.format("%d upstream calls, %d coalesced requests",
+                flights.getLeaders(), flights.getCoalesced()));
+        UpstreamClient upstream = model.getUpstreamClient();
+        request.setAttribute("upstreamClientStats", String.format("%d requests over %d TLS handshakes (%d reused), %d HTTP/2, %d HTTP/1.1",
+                upstream.getRequests(), upstream.getHandshakes(), upstream.getReusedRequests(),
+                upstream.getHttp2Responses(), upstream.getHttp1Responses()));
+        request.setAttribute("inFlightStats", String.format("%d API requests in flight, %d rejected with 503",
+                AsyncPipeline.getInFlight(), AsyncPipeline.getRejected()));
+        TelemetryWriter telemetry = model.getTelemetry();
+        StringBuilder telemetryStats = new StringBuilder();
+        for (String collection : TelemetryWriter.COLLECTIONS) {
+            telemetryStats.append(String.format("%s: %d queued, %d written in %d batches, %d not sampled, %d dropped, %d failed; ",
+                    collection, telemetry.getQueueDepth(collection), telemetry.getWritten(collection),
+                    telemetry.getBatches(collection), telemetry.getSampledOut(collection),
+                    telemetry.getDropped(collection), telemetry.getFailed(collection)));
+        }
+        telemetryStats.append("sink: ").append(telemetry.getSink().describe());
+        request.setAttribute("telemetryStats", telemetryStats.toString());
+        List<String> schemaFailures = SchemaBootstrap.getFailures();
+        String schemaStats = !SchemaBootstrap.isFinished() ? "Index creation still running"
+                : schemaFailures.isEmpty() ? "All indexes in place"
+                : schemaFailures.size() + " failed: " + String.join("; ", schemaFailures);
+        if (SchemaBootstrap.isFinished() && !SchemaBootstrap.isPairIndexReady()) {
+            schemaStats += ". The unique conversion pair index is missing, so pair counts may be duplicated";
+        }
+        request.setAttribute("schemaStats", schemaStats);
+        request.setAttribute("latencyHistograms", LatencyMetrics.all());
+        UserAgentParser userAgents = model.getUserAgentParser();
+        request.setAttribute("userAgentStats", String.format("%.1f%% hit rate (%d hits, %d misses, %d strings cached)",
+                userAgents.getHitRate() * 100, userAgents.getHits(), userAgents.getMisses(), userAgents.size()));
+
+        // Forward the request to the dashboard.jsp page for rendering the dashboard view,
+        // releasing the cursors of any table the page did not read to the end
+        try {
+            request.getRequestDispatcher("dashboard.jsp").forward(request, response);
+        } finally {
+            for (LogPage page : pages) {
+                page.close();
+            }
+        }
     }
 }
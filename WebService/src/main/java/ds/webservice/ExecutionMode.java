@@ -0,0 +1,125 @@
+package ds.webservice;
+
+import java.lang.reflect.Method;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Chooses how blocking work (Mongo writes, upstream I/O, writing async responses) is executed.
+ * By default it runs on a bounded pool of platform threads. With -Dcurrency.virtualThreads=true
+ * and a Java 21+ runtime, every task gets its own virtual thread instead of waiting for a pool
+ * thread. Whether that raises throughput has not been measured yet; bench/LoadBenchmark.java
+ * compares the two modes. The service is still compiled for Java 11, so the virtual-thread
+ * executor is looked up reflectively and the platform pool is used whenever it is not available.
+ *
+ * Author: Aditya Aayush
+ */
+public final class ExecutionMode {
+
+    // Whether virtual threads were requested and are supported by the running JVM.
+    private static final boolean VIRTUAL;
+    // Every executor handed out, so they can all be stopped when the web application stops.
+    private static final List<ExecutorService> CREATED = new CopyOnWriteArrayList<>();
+    // Executor for blocking tasks, shared by the whole service.
+    private static final ExecutorService BLOCKING;
+
+    static {
+        ExecutorService virtual = ServiceConfig.getString("virtualThreads", "false").equalsIgnoreCase("true")
+                ? newVirtualThreadExecutor() : null;
+        VIRTUAL = virtual != null;
+        BLOCKING = virtual != null ? virtual : newPlatformExecutor("blocking", ServiceConfig.getInt("blocking.threads", 32));
+        CREATED.add(BLOCKING);
+    }
+
+    // Utility class, no instances.
+    private ExecutionMode() {
+    }
+
+    /**
+     * @return True if blocking work runs on virtual threads.
+     */
+    public static boolean isVirtual() {
+        return VIRTUAL;
+    }
+
+    /**
+     * @return The shared executor for blocking tasks.
+     */
+    public static ExecutorService blocking() {
+        return BLOCKING;
+    }
+
+    /**
+     * Creates an executor for a subsystem that needs its own threads. In virtual mode the subsystem
+     * gets its own virtual-thread-per-task executor, otherwise a bounded platform pool.
+     *
+     * @param name The prefix of the thread names.
+     * @param platformThreads The pool size used when virtual threads are not enabled.
+     * @return The executor.
+     */
+    public static ExecutorService newExecutor(String name, int platformThreads) {
+        ExecutorService virtual = VIRTUAL ? newVirtualThreadExecutor() : null;
+        ExecutorService executor = virtual != null ? virtual : newPlatformExecutor(name, platformThreads);
+        CREATED.add(executor);
+        return executor;
+    }
+
+    /**
+     * Stops the blocking executor and every executor created by {@link #newExecutor(String, int)}.
+     * Running tasks get a few seconds to finish before they are interrupted. Called when the web
+     * application stops, so no pool thread keeps the old deployment's classes alive.
+     */
+    public static void shutdown() {
+        for (ExecutorService executor : CREATED) {
+            executor.shutdown();
+        }
+        for (ExecutorService executor : CREATED) {
+            try {
+                if (!executor.awaitTermination(5, TimeUnit.SECONDS)) {
+                    executor.shutdownNow();
+                }
+            } catch (InterruptedException e) {
+                executor.shutdownNow();
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Creates a fixed pool of daemon platform threads with a bounded queue. When the queue is
+     * full the submitting thread runs the task itself, which throttles producers instead of
+     * spawning ever more threads.
+     */
+    private static ExecutorService newPlatformExecutor(String name, int threads) {
+        AtomicInteger threadNumber = new AtomicInteger();
+        return new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(ServiceConfig.getInt("blocking.queueCapacity", 10000)),
+                runnable -> {
+                    Thread thread = new Thread(runnable, name + "-" + threadNumber.incrementAndGet());
+                    thread.setDaemon(true);
+                    return thread;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    /**
+     * Looks up Executors.newVirtualThreadPerTaskExecutor(), which exists from Java 21 on.
+     *
+     * @return The executor, or null if the running JVM has no virtual threads.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) factory.invoke(null);
+        } catch (ReflectiveOperationException e) {
+            System.err.println("Virtual threads are not available on this JVM, using platform threads: " + e);
+            return null;
+        }
+    }
+}
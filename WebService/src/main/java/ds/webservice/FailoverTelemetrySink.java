@@ -0,0 +1,121 @@
+package ds.webservice;
+
+import org.bson.Document;
+
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Telemetry sink writing to MongoDB while it is healthy and to local segment files while it is
+ * not. MongoDB counts as unhealthy after a failed write or a write slower than
+ * currency.telemetry.slowWriteMillis (2000); the failed batch and every later one go to the file
+ * sink. Every currency.telemetry.recoveryCheckSeconds (10) a recovery thread pings MongoDB, and
+ * once it answers, new batches go to MongoDB again while the spooled segments are replayed into
+ * it. Segments left by a previous run are replayed the same way.
+ *
+ * Author: Aditya Aayush
+ */
+public final class FailoverTelemetrySink implements TelemetrySink {
+
+    private final MongoTelemetrySink primary;
+    private final FileTelemetrySink fallback;
+    private final long slowWriteNanos = TimeUnit.MILLISECONDS.toNanos(ServiceConfig.getLong("telemetry.slowWriteMillis", 2000));
+
+    private volatile boolean failedOver;
+    private final AtomicLong failovers = new AtomicLong();
+    // Why MongoDB was last considered unhealthy, shown on the dashboard.
+    private volatile String lastFailover;
+
+    private final ScheduledExecutorService recovery = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "telemetry-recovery");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Starts the periodic recovery check.
+     *
+     * @param primary The MongoDB sink.
+     * @param fallback The local file sink.
+     */
+    public FailoverTelemetrySink(MongoTelemetrySink primary, FileTelemetrySink fallback) {
+        this.primary = primary;
+        this.fallback = fallback;
+        long checkSeconds = ServiceConfig.getLong("telemetry.recoveryCheckSeconds", 10);
+        recovery.scheduleWithFixedDelay(this::recover, checkSeconds, checkSeconds, TimeUnit.SECONDS);
+    }
+
+    @Override
+    public void write(String collection, List<Document> batch) {
+        if (!failedOver) {
+            long start = System.nanoTime();
+            try {
+                primary.write(collection, batch);
+                if (System.nanoTime() - start > slowWriteNanos) {
+                    failOver("insert into " + collection + " took " + TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start) + " ms");
+                }
+                return;
+            } catch (RuntimeException e) {
+                failOver(e.toString());
+            }
+        }
+        fallback.write(collection, batch);
+    }
+
+    /**
+     * Switches back to MongoDB once it answers and replays what was spooled in the meantime.
+     */
+    private void recover() {
+        if (!failedOver && !fallback.hasSegments()) {
+            return;
+        }
+        if (!primary.isReachable()) {
+            return;
+        }
+        failedOver = false;
+        // Replayed documents are counted by the file sink
+        try {
+            fallback.replay(primary);
+        } catch (RuntimeException e) {
+            failOver("replay failed: " + e);
+        }
+    }
+
+    private void failOver(String reason) {
+        if (!failedOver) {
+            failedOver = true;
+            failovers.incrementAndGet();
+            lastFailover = reason;
+        }
+    }
+
+    /**
+     * @return Whether batches currently go to the file sink.
+     */
+    public boolean isFailedOver() {
+        return failedOver;
+    }
+
+    public long getFailovers() {
+        return failovers.get();
+    }
+
+    public FileTelemetrySink getFallback() {
+        return fallback;
+    }
+
+    @Override
+    public String describe() {
+        return (failedOver ? "MongoDB unhealthy, " : "writing to MongoDB, ") + failovers.get() + " failovers"
+                + (lastFailover != null ? " (last: " + lastFailover + "), " : ", ") + fallback.describe();
+    }
+
+    @Override
+    public void close() {
+        recovery.shutdownNow();
+        fallback.close();
+    }
+}
@@ -0,0 +1,321 @@
+package ds.webservice;
+
+import org.bson.Document;
+import org.bson.RawBsonDocument;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DocumentCodec;
+import org.bson.types.ObjectId;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+
+/**
+ * Telemetry sink appending batches to local segment files through a FileChannel.
+ *
+ * Every document is one record: int length, int CRC32 of the payload, and the payload, a BSON
+ * document {c: collection, d: document}. BSON keeps the typed values of {@link TelemetrySchema}
+ * intact. Documents get their _id before they are written, so replaying a segment twice cannot
+ * create duplicates.
+ *
+ * Writes use group commit: concurrent writers append their records to a shared buffer, and
+ * whichever writer gets to commit first writes and forces the buffer for all of them, so the
+ * drainer threads share one fsync instead of queueing for one each.
+ *
+ * A segment is sealed once it reaches currency.telemetry.segmentMegabytes (64). Batches are
+ * refused once the segments on disk reach currency.telemetry.spoolMegabytes (1024).
+ * {@link #replay(TelemetrySink)} moves the sealed segments into another sink and deletes them.
+ * A torn record at the end of a segment, left by a crash during a write, ends its replay.
+ *
+ * Author: Aditya Aayush
+ */
+public final class FileTelemetrySink implements TelemetrySink {
+
+    private static final String SEGMENT_PREFIX = "telemetry-";
+    private static final String SEGMENT_SUFFIX = ".seg";
+    private static final Codec<Document> CODEC = new DocumentCodec();
+    // Length and CRC32 in front of every record.
+    private static final int RECORD_HEADER = 8;
+
+    /**
+     * Records of the writers that share one commit.
+     */
+    private static final class Group {
+        private ByteBuffer buffer;
+        private boolean committed;
+        private RuntimeException error;
+
+        Group(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+
+    private final Path directory;
+    private final long segmentBytes = ServiceConfig.getLong("telemetry.segmentMegabytes", 64) * 1024 * 1024;
+    private final long maxSpoolBytes = ServiceConfig.getLong("telemetry.spoolMegabytes", 1024) * 1024 * 1024;
+    private final int replayBatchSize = ServiceConfig.getInt("telemetry.batchSize", 500);
+
+    // Group collecting records for the next commit, guarded by this.
+    private Group open = new Group(ByteBuffer.allocate(64 * 1024));
+    // Everything below is guarded by commitLock.
+    private final Object commitLock = new Object();
+    private ByteBuffer spare = ByteBuffer.allocate(64 * 1024);
+    private FileChannel segment;
+    private long segmentSize;
+    private long nextSequence;
+
+    // Bytes in segment files on disk, committed or not yet replayed.
+    private final AtomicLong spoolBytes = new AtomicLong();
+    private final AtomicLong spooled = new AtomicLong();
+    private final AtomicLong replayed = new AtomicLong();
+
+    /**
+     * Opens the spool directory. Segments left by a previous run are kept for replay.
+     *
+     * @param directory Directory holding the segment files, created if missing.
+     */
+    public FileTelemetrySink(Path directory) {
+        this.directory = directory;
+        try {
+            Files.createDirectories(directory);
+            for (Path file : segments(Long.MAX_VALUE)) {
+                spoolBytes.addAndGet(Files.size(file));
+                nextSequence = Math.max(nextSequence, sequenceOf(file) + 1);
+            }
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+    }
+
+    @Override
+    public void write(String collection, List<Document> batch) {
+        // Encode outside of the locks
+        List<ByteBuffer> records = new ArrayList<>(batch.size());
+        int size = 0;
+        for (Document document : batch) {
+            if (!document.containsKey("_id")) {
+                document.put("_id", new ObjectId());
+            }
+            ByteBuffer payload = new RawBsonDocument(new Document("c", collection).append("d", document), CODEC)
+                    .getByteBuffer().asNIO();
+            records.add(payload);
+            size += RECORD_HEADER + payload.remaining();
+        }
+
+        Group group;
+        synchronized (this) {
+            if (spoolBytes.get() + open.buffer.position() + size > maxSpoolBytes) {
+                throw new IllegalStateException("Telemetry spool in " + directory + " is full");
+            }
+            group = open;
+            ByteBuffer buffer = ensure(group, size);
+            CRC32 crc = new CRC32();
+            for (ByteBuffer payload : records) {
+                crc.reset();
+                crc.update(payload.duplicate());
+                buffer.putInt(payload.remaining()).putInt((int) crc.getValue()).put(payload);
+            }
+        }
+        commit(group);
+        spooled.addAndGet(batch.size());
+    }
+
+    /**
+     * Writes and forces the group unless another writer already did, and reports its outcome.
+     */
+    private void commit(Group group) {
+        synchronized (commitLock) {
+            if (!group.committed) {
+                ByteBuffer buffer;
+                synchronized (this) {
+                    open = new Group(spare);
+                    buffer = group.buffer;
+                }
+                buffer.flip();
+                try {
+                    if (segment == null) {
+                        Path file = directory.resolve(String.format("%s%020d%s", SEGMENT_PREFIX, nextSequence++, SEGMENT_SUFFIX));
+                        segment = FileChannel.open(file, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+                        segmentSize = 0;
+                    }
+                    int written = 0;
+                    while (buffer.hasRemaining()) {
+                        written += segment.write(buffer);
+                    }
+                    segment.force(false);
+                    segmentSize += written;
+                    spoolBytes.addAndGet(written);
+                    if (segmentSize >= segmentBytes) {
+                        seal();
+                    }
+                } catch (IOException e) {
+                    group.error = new UncheckedIOException(e);
+                    seal();
+                } finally {
+                    group.committed = true;
+                    buffer.clear();
+                    spare = buffer;
+                }
+            }
+            if (group.error != null) {
+                throw group.error;
+            }
+        }
+    }
+
+    /**
+     * Replays every sealed segment into the target sink, oldest first, deleting each segment once
+     * all of its batches were written. The segment being written is sealed first. Stops at the
+     * first failure of the target, leaving the remaining segments for the next attempt.
+     *
+     * @param target The sink receiving the documents.
+     * @return The number of documents replayed.
+     * @throws RuntimeException If the target failed.
+     */
+    public long replay(TelemetrySink target) {
+        long limit;
+        synchronized (commitLock) {
+            seal();
+            limit = nextSequence;
+        }
+        long count = 0;
+        try {
+            for (Path file : segments(limit)) {
+                long size = Files.size(file);
+                count += replaySegment(Files.readAllBytes(file), target);
+                Files.delete(file);
+                spoolBytes.addAndGet(-size);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        } finally {
+            replayed.addAndGet(count);
+        }
+        return count;
+    }
+
+    private long replaySegment(byte[] bytes, TelemetrySink target) {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        Map<String, List<Document>> batches = new LinkedHashMap<>();
+        long count = 0;
+        CRC32 crc = new CRC32();
+        while (buffer.remaining() >= RECORD_HEADER) {
+            int length = buffer.getInt();
+            int checksum = buffer.getInt();
+            if (length <= 0 || length > buffer.remaining()) {
+                break;
+            }
+            crc.reset();
+            crc.update(bytes, buffer.position(), length);
+            if ((int) crc.getValue() != checksum) {
+                break;
+            }
+            Document record = new RawBsonDocument(bytes, buffer.position(), length).decode(CODEC);
+            buffer.position(buffer.position() + length);
+
+            String collection = record.getString("c");
+            List<Document> batch = batches.computeIfAbsent(collection, key -> new ArrayList<>(replayBatchSize));
+            batch.add(record.get("d", Document.class));
+            if (batch.size() >= replayBatchSize) {
+                target.write(collection, batch);
+                count += batch.size();
+                batch.clear();
+            }
+        }
+        for (Map.Entry<String, List<Document>> batch : batches.entrySet()) {
+            if (!batch.getValue().isEmpty()) {
+                target.write(batch.getKey(), batch.getValue());
+                count += batch.getValue().size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return Whether segments are waiting to be replayed.
+     */
+    public boolean hasSegments() {
+        return spoolBytes.get() > 0;
+    }
+
+    public long getSpoolBytes() {
+        return spoolBytes.get();
+    }
+
+    public long getSpooled() {
+        return spooled.get();
+    }
+
+    public long getReplayed() {
+        return replayed.get();
+    }
+
+    @Override
+    public String describe() {
+        return String.format("spooling to %s (%.1f MB on disk, %d documents spooled, %d replayed)",
+                directory, spoolBytes.get() / 1048576.0, spooled.get(), replayed.get());
+    }
+
+    @Override
+    public void close() {
+        synchronized (commitLock) {
+            seal();
+        }
+    }
+
+    // Closes the segment being written, the next commit starts a new one. Caller holds commitLock.
+    private void seal() {
+        if (segment != null) {
+            try {
+                segment.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            segment = null;
+        }
+    }
+
+    // Grows the group's buffer if the records do not fit. Caller holds the monitor of this.
+    private static ByteBuffer ensure(Group group, int size) {
+        if (group.buffer.remaining() < size) {
+            ByteBuffer larger = ByteBuffer.allocate(Math.max(group.buffer.capacity() * 2, group.buffer.position() + size));
+            group.buffer.flip();
+            group.buffer = larger.put(group.buffer);
+        }
+        return group.buffer;
+    }
+
+    // Segment files with a sequence number below the limit, oldest first.
+    private List<Path> segments(long limit) throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, SEGMENT_PREFIX + "*" + SEGMENT_SUFFIX)) {
+            for (Path file : stream) {
+                if (sequenceOf(file) < limit) {
+                    files.add(file);
+                }
+            }
+        }
+        files.sort(null);
+        return files;
+    }
+
+    private static long sequenceOf(Path file) {
+        String name = file.getFileName().toString();
+        try {
+            return Long.parseLong(name.substring(SEGMENT_PREFIX.length(), name.length() - SEGMENT_SUFFIX.length()));
+        } catch (NumberFormatException e) {
+            return Long.MAX_VALUE;
+        }
+    }
+}
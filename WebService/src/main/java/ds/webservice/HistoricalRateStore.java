@@ -0,0 +1,591 @@
+package ds.webservice;
+
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDate;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent local store of the daily EUR reference rates. Historical ECB rates never change,
+ * so the complete history is downloaded once and afterwards only the newly published days are
+ * appended. The file is a compact binary format with one fixed-width record per business day
+ * and is memory-mapped for reads, so single-date and range lookups never leave the machine.
+ *
+ * Range queries are served from a columnar copy of the same data, see {@link ColumnarSeriesFile}.
+ * Weekly and monthly aggregates come from per-pair rollups of that copy, see {@link SeriesRollup}.
+ *
+ * File layout (big-endian):
+ * header:  int magic, int version, int currencyCount, currencyCount x 3 ASCII bytes
+ * records: int epochDay, currencyCount x double EUR rate (NaN when not published that day)
+ *
+ * Author: Aditya Aayush
+ */
+public final class HistoricalRateStore {
+
+    /**
+     * A time series of cross rates between two currencies, one point per business day.
+     */
+    public static final class Series {
+        private final int[] epochDays;
+        private final double[] rates;
+        private final int length;
+
+        Series(int[] epochDays, double[] rates, int length) {
+            this.epochDays = epochDays;
+            this.rates = rates;
+            this.length = length;
+        }
+
+        public int[] getEpochDays() {
+            return epochDays;
+        }
+
+        public double[] getRates() {
+            return rates;
+        }
+
+        public int length() {
+            return length;
+        }
+    }
+
+    /**
+     * A precomputed rollup together with the columnar file it was computed from, so rollups of
+     * data that has since been extended are never served.
+     */
+    private static final class Rollup {
+        private final ColumnarSeriesFile source;
+        private final SeriesRollup rollup;
+
+        Rollup(ColumnarSeriesFile source, SeriesRollup rollup) {
+            this.source = source;
+            this.rollup = rollup;
+        }
+    }
+
+    /**
+     * Immutable snapshot of the mapped file together with its layout, so that readers never
+     * observe a record count that belongs to a different mapping.
+     */
+    private static final class View {
+        private final MappedByteBuffer buffer;
+        private final String[] codes;
+        private final Map<String, Integer> columns;
+        private final int headerSize;
+        private final int recordSize;
+        private final int recordCount;
+
+        View(MappedByteBuffer buffer, String[] codes, Map<String, Integer> columns, int headerSize, int recordSize, int recordCount) {
+            this.buffer = buffer;
+            this.codes = codes;
+            this.columns = columns;
+            this.headerSize = headerSize;
+            this.recordSize = recordSize;
+            this.recordCount = recordCount;
+        }
+
+        /**
+         * Maps a currency code to its column.
+         *
+         * @return The column index, -2 for EUR (constant 1.0), or -1 if unknown.
+         */
+        int column(String code) {
+            if (RateMatrix.EUR.equals(code)) {
+                return -2;
+            }
+            Integer column = code != null ? columns.get(code) : null;
+            return column != null ? column : -1;
+        }
+
+        int dayAt(int record) {
+            return buffer.getInt(headerSize + record * recordSize);
+        }
+
+        int lastDay() {
+            return dayAt(recordCount - 1);
+        }
+
+        double eurRate(int record, int column) {
+            if (column == -2) {
+                return 1.0;
+            }
+            return buffer.getDouble(headerSize + record * recordSize + 4 + column * 8);
+        }
+
+        /**
+         * Binary search for the last record whose date is on or before the given day.
+         *
+         * @return The record index, or -1 if every record is later than the day.
+         */
+        int floorRecord(int day) {
+            int low = 0;
+            int high = recordCount - 1;
+            int result = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                if (dayAt(mid) <= day) {
+                    result = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Checks whether the last record is the most recent publication that should exist.
+         */
+        boolean isCurrent() {
+            LocalDate expected = PublicationSchedule.latestPublishedDate(System.currentTimeMillis());
+            return recordCount > 0 && lastDay() >= expected.toEpochDay();
+        }
+    }
+
+    private static final int MAGIC = 0x43435253; // "CCRS"
+    private static final int VERSION = 1;
+    private static final String UPSTREAM = "https://api.frankfurter.app/";
+
+    private static final int ROLLUP_CACHE_SIZE = ServiceConfig.getInt("store.rollupCacheSize", 256);
+
+    // Singleton instance shared by every Model.
+    private static HistoricalRateStore instance = null;
+
+    private final Path file;
+    private final LocalDate seedStart;
+    private final long retryMillis;
+    private final UpstreamClient client = UpstreamClient.getInstance();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "historical-rate-store");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    // Read-only view of the whole file, replaced after every append.
+    private volatile View view;
+    // Columnar copy of the same records for range queries, rebuilt after every append.
+    private volatile ColumnarSeriesFile columnar;
+    // Weekly and monthly rollups of the whole history per pair, least recently used first. Guarded by itself.
+    private final Map<String, Rollup> rollups = new LinkedHashMap<String, Rollup>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Rollup> eldest) {
+            return size() > ROLLUP_CACHE_SIZE;
+        }
+    };
+
+    /**
+     * Private constructor to enforce the singleton. Opens the existing store, or seeds it in the
+     * background, and schedules the daily incremental update. The store lives in
+     * currency.store.dir, by default ~/.currency-converter rather than the temporary directory,
+     * which may be cleaned on reboot and would force a complete download of the history again.
+     */
+    private HistoricalRateStore() {
+        this.file = Paths.get(ServiceConfig.getString("store.dir",
+                Paths.get(System.getProperty("user.home"), ".currency-converter").toString()), "historical-rates.bin");
+        this.seedStart = LocalDate.parse(ServiceConfig.getString("store.seedStart", "1999-01-04"));
+        this.retryMillis = ServiceConfig.getLong("cache.staleRetrySeconds", 300) * 1000L;
+        scheduler.execute(this::update);
+    }
+
+    /**
+     * Thread-safe accessor for the single store instance.
+     *
+     * @return The shared historical rate store.
+     */
+    public static synchronized HistoricalRateStore getInstance() {
+        if (instance == null) {
+            instance = new HistoricalRateStore();
+        }
+        return instance;
+    }
+
+    /**
+     * Closes the shared store if it was ever opened, without creating it. Called when the web
+     * application stops, so the next deployment starts with a fresh instance.
+     */
+    public static synchronized void shutdown() {
+        if (instance != null) {
+            instance.close();
+            instance = null;
+        }
+    }
+
+    /**
+     * Stops the daily update and drops the mapped files. A mapping is released when its buffer
+     * is garbage collected; queries after closing return no data.
+     */
+    private void close() {
+        scheduler.shutdownNow();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        view = null;
+        columnar = null;
+        synchronized (rollups) {
+            rollups.clear();
+        }
+    }
+
+    /**
+     * @return True once the store has been seeded and can answer queries.
+     */
+    public boolean isReady() {
+        return view != null;
+    }
+
+    /**
+     * @param code An ISO currency code.
+     * @return True if the store has rates for the currency; false if it has not or is not open yet.
+     */
+    public boolean hasCurrency(String code) {
+        View current = view;
+        return current != null && current.column(code) != -1;
+    }
+
+    /**
+     * Looks up the cross rate for a single date. Like the upstream API, a date without
+     * a publication (weekend, holiday) resolves to the closest earlier business day.
+     *
+     * @param date The requested date.
+     * @param fromCurrency The ISO code of the source currency.
+     * @param toCurrency The ISO code of the target currency.
+     * @return The cross rate, or NaN if the store cannot answer the query.
+     */
+    public double rateOn(LocalDate date, String fromCurrency, String toCurrency) {
+        View current = view;
+        if (current == null || date == null) {
+            return Double.NaN;
+        }
+        int from = current.column(fromCurrency);
+        int to = current.column(toCurrency);
+        if (from == -1 || to == -1) {
+            return Double.NaN;
+        }
+        int day = (int) date.toEpochDay();
+        if (current.recordCount == 0 || day < current.dayAt(0)) {
+            return Double.NaN;
+        }
+        // Dates after the last record are only answerable once the store is current
+        if (day > current.lastDay() && !current.isCurrent()) {
+            return Double.NaN;
+        }
+        int record = current.floorRecord(day);
+        return current.eurRate(record, to) / current.eurRate(record, from);
+    }
+
+    /**
+     * Reads the cross rates between two currencies for every business day in a date range.
+     * The query is answered from the columnar copy of the store, which is laid out for range scans.
+     * Days on which either currency was not published are skipped.
+     *
+     * @param start The first date of the range (inclusive).
+     * @param end The last date of the range (inclusive).
+     * @param fromCurrency The ISO code of the source currency.
+     * @param toCurrency The ISO code of the target currency.
+     * @return The series, or null if the store cannot answer the query.
+     */
+    public Series range(LocalDate start, LocalDate end, String fromCurrency, String toCurrency) {
+        View current = view;
+        ColumnarSeriesFile series = columnar;
+        if (current == null || series == null || current.recordCount == 0) {
+            return null;
+        }
+        if (end.toEpochDay() > current.lastDay() && !current.isCurrent()) {
+            return null;
+        }
+        return series.range(start, end, fromCurrency, toCurrency);
+    }
+
+    /**
+     * Reads the weekly or monthly aggregates of the cross rate between two currencies for a date
+     * range. They come from the rollup of the pair's whole history, which is computed once from
+     * the columnar copy and kept until the next daily update recomputes it; only the periods cut by
+     * the range boundaries are aggregated from daily rates.
+     *
+     * @param start The first date of the range (inclusive).
+     * @param end The last date of the range (inclusive).
+     * @param fromCurrency The ISO code of the source currency.
+     * @param toCurrency The ISO code of the target currency.
+     * @param interval WEEK or MONTH.
+     * @return The aggregates, or null if the store cannot answer the query.
+     */
+    public SeriesRollup rollup(LocalDate start, LocalDate end, String fromCurrency, String toCurrency, SeriesRollup.Interval interval) {
+        View current = view;
+        ColumnarSeriesFile series = columnar;
+        if (current == null || series == null || current.recordCount == 0) {
+            return null;
+        }
+        if (end.toEpochDay() > current.lastDay() && !current.isCurrent()) {
+            return null;
+        }
+        SeriesRollup whole = wholeRollup(series, fromCurrency, toCurrency, interval);
+        if (whole == null) {
+            return null;
+        }
+        return whole.range((int) start.toEpochDay(), (int) end.toEpochDay(),
+                (startDay, endDay) -> series.range(startDay, endDay, fromCurrency, toCurrency));
+    }
+
+    /**
+     * @return The cached rollup of a pair's whole history, computed first if it is missing or stale,
+     *         or null if either currency is unknown.
+     */
+    private SeriesRollup wholeRollup(ColumnarSeriesFile series, String fromCurrency, String toCurrency, SeriesRollup.Interval interval) {
+        String key = fromCurrency + "/" + toCurrency + "/" + interval;
+        synchronized (rollups) {
+            Rollup cached = rollups.get(key);
+            if (cached != null && cached.source == series) {
+                return cached.rollup;
+            }
+        }
+        // Computed outside the lock; two requests racing for the same pair compute it twice
+        Series daily = series.range(Integer.MIN_VALUE, Integer.MAX_VALUE, fromCurrency, toCurrency);
+        if (daily == null) {
+            return null;
+        }
+        SeriesRollup rollup = SeriesRollup.of(daily, interval);
+        synchronized (rollups) {
+            rollups.put(key, new Rollup(series, rollup));
+        }
+        return rollup;
+    }
+
+    /**
+     * Recomputes the cached rollups from a new columnar copy, so requests after a daily update
+     * do not have to.
+     */
+    private void refreshRollups(ColumnarSeriesFile series) {
+        String[] keys;
+        synchronized (rollups) {
+            keys = rollups.keySet().toArray(new String[0]);
+        }
+        for (String key : keys) {
+            String[] parts = key.split("/");
+            wholeRollup(series, parts[0], parts[1], SeriesRollup.Interval.valueOf(parts[2]));
+        }
+    }
+
+    /**
+     * Brings the store up to date: seeds it when the file does not exist yet, otherwise appends
+     * the days published since the last record. Reschedules itself for the next publication,
+     * or for a short retry when upstream had nothing new or could not be reached.
+     */
+    private void update() {
+        long delay;
+        try {
+            if (view == null && Files.exists(file)) {
+                open();
+            }
+            if (view == null) {
+                seed();
+            } else {
+                appendNewDays();
+            }
+            long now = System.currentTimeMillis();
+            delay = view.isCurrent() ? PublicationSchedule.nextPublication(now) - now : retryMillis;
+        } catch (Exception e) {
+            e.printStackTrace();
+            delay = retryMillis;
+        }
+        // Not rescheduled once the store has been closed
+        if (!scheduler.isShutdown()) {
+            scheduler.schedule(this::update, delay, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Downloads the complete history year by year and writes a new store file atomically.
+     */
+    private void seed() throws IOException, InterruptedException {
+        LocalDate today = LocalDate.now();
+        TreeMap<LocalDate, JSONObject> days = new TreeMap<>();
+        for (LocalDate start = seedStart; !start.isAfter(today); start = start.plusYears(1)) {
+            LocalDate end = start.plusYears(1).minusDays(1);
+            days.putAll(fetchRange(start, end.isAfter(today) ? today : end));
+        }
+
+        // The column set is the union of every currency ever published
+        TreeSet<String> union = new TreeSet<>();
+        for (JSONObject rates : days.values()) {
+            union.addAll(rates.keySet());
+        }
+        union.remove(RateMatrix.EUR);
+        String[] seedCodes = union.toArray(new String[0]);
+
+        ByteBuffer header = ByteBuffer.allocate(12 + seedCodes.length * 3).order(ByteOrder.BIG_ENDIAN);
+        header.putInt(MAGIC).putInt(VERSION).putInt(seedCodes.length);
+        for (String code : seedCodes) {
+            header.put(code.getBytes(StandardCharsets.US_ASCII), 0, 3);
+        }
+        header.flip();
+
+        Files.createDirectories(file.getParent());
+        Path temporary = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            channel.write(header);
+            writeRecords(channel, seedCodes, days);
+            channel.force(true);
+        }
+        Files.move(temporary, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        open();
+    }
+
+    /**
+     * Appends every day published after the last record.
+     */
+    private synchronized void appendNewDays() throws IOException, InterruptedException {
+        View current = view;
+        LocalDate last = LocalDate.ofEpochDay(current.lastDay());
+        LocalDate today = LocalDate.now();
+        if (!last.isBefore(today)) {
+            return;
+        }
+        TreeMap<LocalDate, JSONObject> days = fetchRange(last.plusDays(1), today);
+        // Upstream answers a range without publications with the previous day, drop it
+        days.headMap(last, true).clear();
+        if (days.isEmpty()) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            // Write right after the last complete record, over any torn bytes a failed append left behind
+            long end = current.headerSize + (long) current.recordCount * current.recordSize;
+            channel.truncate(end);
+            channel.position(end);
+            writeRecords(channel, current.codes, days);
+            channel.force(true);
+        }
+        open();
+    }
+
+    /**
+     * Writes one fixed-width record per day. Currencies that are missing on a day are stored as NaN,
+     * currencies that appeared after the store was seeded are not stored.
+     */
+    private void writeRecords(FileChannel channel, String[] recordCodes, TreeMap<LocalDate, JSONObject> days) throws IOException {
+        ByteBuffer record = ByteBuffer.allocate(4 + recordCodes.length * 8).order(ByteOrder.BIG_ENDIAN);
+        for (Map.Entry<LocalDate, JSONObject> day : days.entrySet()) {
+            record.clear();
+            record.putInt((int) day.getKey().toEpochDay());
+            JSONObject rates = day.getValue();
+            for (String code : recordCodes) {
+                record.putDouble(rates.has(code) ? rates.getDouble(code) : Double.NaN);
+            }
+            record.flip();
+            while (record.hasRemaining()) {
+                channel.write(record);
+            }
+        }
+    }
+
+    /**
+     * Maps the store file and publishes its column layout and record count to readers. A torn
+     * trailing record left by an interrupted append is truncated away.
+     */
+    private void open() throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            if (buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+                throw new IOException("Unsupported historical rate store format: " + file);
+            }
+            int count = buffer.getInt(8);
+            String[] fileCodes = new String[count];
+            Map<String, Integer> fileColumns = new HashMap<>(count * 2);
+            byte[] code = new byte[3];
+            for (int i = 0; i < count; i++) {
+                for (int j = 0; j < 3; j++) {
+                    code[j] = buffer.get(12 + i * 3 + j);
+                }
+                fileCodes[i] = new String(code, StandardCharsets.US_ASCII);
+                fileColumns.put(fileCodes[i], i);
+            }
+            int headerSize = 12 + count * 3;
+            int recordSize = 4 + count * 8;
+            // Cut off a partially written trailing record, if any, so the next append starts on a record boundary
+            int recordCount = (int) ((channel.size() - headerSize) / recordSize);
+            long end = headerSize + (long) recordCount * recordSize;
+            if (channel.size() > end) {
+                channel.truncate(end);
+                channel.force(true);
+                buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, end);
+            }
+            view = new View(buffer, fileCodes, fileColumns, headerSize, recordSize, recordCount);
+        }
+        openColumnar(view);
+    }
+
+    /**
+     * Maps the columnar copy of the store, rebuilding it first when it is missing or
+     * does not contain every record of the row file.
+     */
+    private void openColumnar(View current) throws IOException {
+        Path columnarFile = file.resolveSibling("historical-rates.col");
+        if (Files.exists(columnarFile)) {
+            ColumnarSeriesFile existing = ColumnarSeriesFile.open(columnarFile);
+            if (existing.getRowCount() == current.recordCount) {
+                columnar = existing;
+                return;
+            }
+        }
+
+        // Transpose the fixed-width records into one array per currency
+        int rows = current.recordCount;
+        int[] epochDays = new int[rows];
+        double[][] columnData = new double[current.codes.length][rows];
+        for (int record = 0; record < rows; record++) {
+            epochDays[record] = current.dayAt(record);
+            for (int column = 0; column < columnData.length; column++) {
+                columnData[column][record] = current.eurRate(record, column);
+            }
+        }
+        ColumnarSeriesFile.write(columnarFile, current.codes, epochDays, columnData);
+        columnar = ColumnarSeriesFile.open(columnarFile);
+        refreshRollups(columnar);
+    }
+
+    /**
+     * Downloads the EUR-based rates of every currency for a date range.
+     *
+     * @return The rates of each published day, keyed by date.
+     */
+    private TreeMap<LocalDate, JSONObject> fetchRange(LocalDate start, LocalDate end) throws IOException, InterruptedException {
+        HttpResponse<String> response = client.send(client.get(UPSTREAM + start + ".." + end), HttpResponse.BodyHandlers.ofString());
+        TreeMap<LocalDate, JSONObject> days = new TreeMap<>();
+        if (response.statusCode() != 200) {
+            // Ranges without any publication (e.g. a weekend) are reported as not found
+            if (response.statusCode() == 404) {
+                return days;
+            }
+            throw new IOException("Failed to fetch historical rates: HTTP error code : " + response.statusCode());
+        }
+        JSONObject rates = new JSONObject(response.body()).getJSONObject("rates");
+        Iterator<String> dates = rates.keys();
+        while (dates.hasNext()) {
+            String date = dates.next();
+            days.put(LocalDate.parse(date), rates.getJSONObject(date));
+        }
+        return days;
+    }
+}
@@ -1,7 +1,14 @@
 /**
  * Servlet for fetching historical currency rates.
  * This servlet handles requests to retrieve historical exchange rates for a given date
- * or a time series of exchange rates between two dates.
+ * or a time series of exchange rates between two dates. Time series are sent as JSON or, to
+ * clients whose Accept header prefers it, in the binary form described in {@link RateSeriesFormat}.
+ * A time series covers start to end (yyyy-MM-dd, inclusive; toDate is accepted for end and start
+ * defaults to 2005-01-31). interval=week or interval=month returns the open, high, low, close and
+ * mean rate of each period from the precomputed rollups in {@link SeriesRollup} instead of daily
+ * rates. With points=N a daily series is reduced to at most N points by {@link SeriesDownsampler},
+ * using the method named by downsample=lttb (default), minmax or avg.
+ * Requests are processed asynchronously so that no container thread waits for the upstream API.
  *
  * Author: Aditya Aayush
  */
@@ -9,19 +16,23 @@
 package ds.webservice;
 
 // Importing necessary classes for servlet and JSON handling
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.io.IOException;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 
 // Define servlet URL pattern for API endpoint
-@WebServlet(urlPatterns = {"/api/historical"})
+@WebServlet(urlPatterns = {"/api/historical"}, asyncSupported = true)
 public class HistoricalRatesServlet extends HttpServlet {
+    // Start of a time series when the request does not give one
+    private static final String DEFAULT_START = "2005-01-31";
+
     // Model for data processing and business logic
     Model model = null;
 
@@ -38,52 +49,146 @@ public class HistoricalRatesServlet extends HttpServlet {
 
         // Extract query parameters for date and currency conversion
         String date = request.getParameter("date");
-        String toDate = request.getParameter("toDate");
+        // A time series covers start to end, both inclusive; older clients send only "toDate" as the end
+        String end = request.getParameter("end") != null ? request.getParameter("end") : request.getParameter("toDate");
+        String start = request.getParameter("start") != null ? request.getParameter("start") : DEFAULT_START;
+        SeriesRollup.Interval interval = SeriesRollup.Interval.of(request.getParameter("interval"));
         String fromCurrency = request.getParameter("from");
         String toCurrency = request.getParameter("to");
+        // Optional downsampling of time series for display, e.g. points=1000&downsample=minmax
+        int points = parsePoints(request.getParameter("points"));
+        SeriesDownsampler.Method method = SeriesDownsampler.Method.of(request.getParameter("downsample"));
 
         // Set response content type to JSON
         response.setContentType("application/json");
 
+        // Log client request
+        model.inductClientRequest(request);
+
+        // Response for invalid request format
+        if ((date == null) == (end == null) || points < 0 || method == null || interval == null
+                || (end != null && !isValidRange(start, end))) {
+            response.setStatus(HttpServletResponse.SC_BAD_REQUEST);
+            response.setContentType("text/plain");
+            response.getWriter().write("Invalid request format.");
+            return;
+        }
+
+        // Switch to async mode, or reject the request if too many are in flight
+        AsyncContext context = AsyncPipeline.start(request, response);
+        if (context == null) {
+            return;
+        }
+
+        long startTime = System.currentTimeMillis();
+
+        // Single date historical rate request
+        if (date != null) {
+            AsyncPipeline.finish(context, LatencyMetrics.HISTORICAL_RATE, model.fetchCurrencyRateAsync(date, fromCurrency, toCurrency),
+                    (historicalResult, asyncResponse) -> {
+                        AsyncPipeline.writeJson(asyncResponse, json -> json.value(historicalResult));
+                        // Log the service response for auditing or tracking
+                        long endTime = System.currentTimeMillis();
+                        model.inductServiceResponse((endTime - startTime), 200, "historical", historicalResult, null);
+                    }, HistoricalRatesServlet::writeError);
+        }
+        // Weekly or monthly aggregates of a date range
+        else if (interval != SeriesRollup.Interval.DAY) {
+            boolean binary = RateSeriesFormat.isPreferred(request.getHeader("Accept"));
+            response.setHeader("Vary", "Accept");
+            AsyncPipeline.finish(context, LatencyMetrics.HISTORICAL_SERIES, model.fetchCurrencyRollupAsync(start, end, fromCurrency, toCurrency, interval),
+                    (rollup, asyncResponse) -> {
+                        // The binary form carries the mean of each period
+                        if (binary) {
+                            AsyncPipeline.writeBinary(asyncResponse, RateSeriesFormat.MEDIA_TYPE, () -> RateSeriesFormat.encode(rollup.toMeanSeries()));
+                        } else {
+                            AsyncPipeline.writeJson(asyncResponse, json -> writeRollup(json, rollup));
+                        }
+                        // Log the service response for auditing or tracking
+                        long endTime = System.currentTimeMillis();
+                        model.inductServiceResponse((endTime - startTime), 200, rollup.toMeanSeries());
+                    }, HistoricalRatesServlet::writeError);
+        }
+        // Date range time series request
+        else {
+            // Content negotiation: compact binary series for clients that prefer it, JSON otherwise
+            boolean binary = RateSeriesFormat.isPreferred(request.getHeader("Accept"));
+            response.setHeader("Vary", "Accept");
+            AsyncPipeline.finish(context, LatencyMetrics.HISTORICAL_SERIES, model.fetchCurrencyRateAsync(start, end, fromCurrency, toCurrency),
+                    (fullSeries, asyncResponse) -> {
+                        HistoricalRateStore.Series series = points == 0 ? fullSeries : SeriesDownsampler.downsample(fullSeries, points, method);
+                        if (binary) {
+                            AsyncPipeline.writeBinary(asyncResponse, RateSeriesFormat.MEDIA_TYPE, () -> RateSeriesFormat.encode(series));
+                        } else {
+                            // Stream the days straight from the series, one {date: rate} object each
+                            AsyncPipeline.writeJson(asyncResponse, json -> writeSeries(json, series));
+                        }
+                        // Log the service response for auditing or tracking
+                        long endTime = System.currentTimeMillis();
+                        model.inductServiceResponse((endTime - startTime), 200, series);
+                    }, HistoricalRatesServlet::writeError);
+        }
+    }
+
+    // Both dates in ISO format, yyyy-MM-dd, and in order
+    private static boolean isValidRange(String start, String end) {
         try {
-            // Log client request
-            model.inductClientRequest(request);
-
-            // Variables for request processing
-            String requestType = "";
-            long startTime = System.currentTimeMillis();
-            JSONObject historicalResult = null;
-            JSONArray resultTimeSeries = null;
-
-            // Single date historical rate request
-            if (date != null && toDate == null) {
-                requestType = "historical";
-                historicalResult = model.fetchCurrencyRate(date, fromCurrency, toCurrency);
-                response.getWriter().write(historicalResult.toString());
-            }
-            // Date range time series request
-            else if (toDate != null && date == null) {
-                requestType = "timeSeries";
-                resultTimeSeries = model.fetchCurrencyRate("2005-01-31", toDate, fromCurrency, toCurrency);
-                response.getWriter().write(resultTimeSeries.toString());
-            } else {
-                // Response for invalid request format
-                response.getWriter().write("Invalid request format.");
-            }
-
-            long endTime = System.currentTimeMillis();
-
-            // Log the service response for auditing or tracking
-            if (requestType.equals("historical")) {
-                model.inductServiceResponse((endTime - startTime), 200, "historical", historicalResult, null);
-            }
-            else {
-                model.inductServiceResponse((endTime - startTime), 200, "timeSeries", null, resultTimeSeries);
-            }
-
-        } catch (Exception e) {
-            // Handle exceptions and errors
-            response.getWriter().write("Error processing request: " + e.getMessage());
+            return !LocalDate.parse(start).isAfter(LocalDate.parse(end));
+        } catch (DateTimeParseException e) {
+            return false;
         }
     }
+
+    // The "points" parameter: 0 when absent, -1 when not a number of at least 3
+    private static int parsePoints(String value) {
+        if (value == null) {
+            return 0;
+        }
+        try {
+            int points = Integer.parseInt(value.trim());
+            return points >= 3 ? points : -1;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    // Writes [{"yyyy-MM-dd": rate}, ...] without building JSON objects or date strings
+    private static void writeSeries(JsonWriter json, HistoricalRateStore.Series series) throws IOException {
+        int[] days = series.getEpochDays();
+        double[] rates = series.getRates();
+        json.beginArray();
+        for (int i = 0; i < series.length(); i++) {
+            json.beginObject().nameDate(days[i]).value(rates[i]).endObject();
+        }
+        json.endArray();
+    }
+
+    // Writes [{"yyyy-MM-dd": {"open": o, "high": h, "low": l, "close": c, "mean": m}}, ...], keyed by the first day of each period
+    private static void writeRollup(JsonWriter json, SeriesRollup rollup) throws IOException {
+        int[] days = rollup.getPeriodDays();
+        double[] open = rollup.getOpen();
+        double[] high = rollup.getHigh();
+        double[] low = rollup.getLow();
+        double[] close = rollup.getClose();
+        double[] mean = rollup.getMean();
+        json.beginArray();
+        for (int i = 0; i < rollup.length(); i++) {
+            json.beginObject().nameDate(days[i]).beginObject()
+                    .name("open").value(open[i])
+                    .name("high").value(high[i])
+                    .name("low").value(low[i])
+                    .name("close").value(close[i])
+                    .name("mean").value(mean[i])
+                    .endObject().endObject();
+        }
+        json.endArray();
+    }
+
+    // Report a failed lookup like LatestRatesServlet: 404 for an unknown currency, 502 when the upstream API failed
+    private static void writeError(Throwable error, HttpServletResponse response) throws IOException {
+        response.setStatus(error instanceof IllegalArgumentException
+                ? HttpServletResponse.SC_NOT_FOUND : HttpServletResponse.SC_BAD_GATEWAY);
+        response.setContentType("text/plain");
+        response.getWriter().write("Error processing request: " + error.getMessage());
+    }
 }
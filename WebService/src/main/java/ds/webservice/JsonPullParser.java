@@ -0,0 +1,370 @@
+package ds.webservice;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Minimal pull parser for UTF-8 JSON read from a stream. The caller asks for one token at a time
+ * and only materializes what it needs: names and strings stay in a reused char buffer that can be
+ * compared in place, and numbers are converted to double without creating a String in the common
+ * case of at most 15 significant digits. Values the caller is not interested in are skipped
+ * without being decoded into objects.
+ *
+ * It checks structure only as far as it needs to find tokens; malformed input ends in an
+ * IOException or in unexpected tokens, never in a partially valid result being reported as
+ * complete.
+ *
+ * Author: Aditya Aayush
+ */
+final class JsonPullParser implements Closeable {
+
+    /**
+     * Kinds of tokens returned by {@link #next()}.
+     */
+    enum Token {
+        START_OBJECT, END_OBJECT, START_ARRAY, END_ARRAY, FIELD_NAME, STRING, NUMBER, TRUE, FALSE, NULL, END
+    }
+
+    // Powers of ten that are exact as doubles, for the fast number path.
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9, 1e10, 1e11,
+            1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18, 1e19, 1e20, 1e21, 1e22};
+    private static final int MAX_DEPTH = 256;
+
+    private final InputStream in;
+    private final byte[] input = new byte[8192];
+    private int position;
+    private int limit;
+    private long consumed;
+
+    // Text of the current name, string or number.
+    private char[] text = new char[64];
+    private int textLength;
+
+    // Whether each open container is an object, and whether a name is expected next.
+    private final boolean[] objects = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean expectName;
+
+    JsonPullParser(InputStream in) {
+        this.in = in;
+    }
+
+    /**
+     * Reads the next token. Commas and colons are consumed silently.
+     *
+     * @return The token, or {@link Token#END} at the end of the input.
+     * @throws IOException If the stream fails or the input is not JSON.
+     */
+    Token next() throws IOException {
+        while (true) {
+            int c = read();
+            switch (c) {
+                case -1:
+                    return Token.END;
+                case ' ': case '\t': case '\n': case '\r': case ':':
+                    continue;
+                case ',':
+                    expectName = depth > 0 && objects[depth - 1];
+                    continue;
+                case '{':
+                    push(true);
+                    expectName = true;
+                    return Token.START_OBJECT;
+                case '}':
+                    pop();
+                    return Token.END_OBJECT;
+                case '[':
+                    push(false);
+                    expectName = false;
+                    return Token.START_ARRAY;
+                case ']':
+                    pop();
+                    return Token.END_ARRAY;
+                case '"':
+                    readString();
+                    if (expectName) {
+                        expectName = false;
+                        return Token.FIELD_NAME;
+                    }
+                    return Token.STRING;
+                case 't':
+                    expectLiteral("rue");
+                    return Token.TRUE;
+                case 'f':
+                    expectLiteral("alse");
+                    return Token.FALSE;
+                case 'n':
+                    expectLiteral("ull");
+                    return Token.NULL;
+                default:
+                    if (c == '-' || c >= '0' && c <= '9') {
+                        readNumber(c);
+                        return Token.NUMBER;
+                    }
+                    throw new IOException("Unexpected character '" + (char) c + "' at byte " + (consumed - limit + position - 1));
+            }
+        }
+    }
+
+    /**
+     * Skips the value that follows the current field name, or the rest of the container whose
+     * start token was just returned. Scalars need no skipping.
+     *
+     * @param current The token last returned by {@link #next()}.
+     */
+    void skip(Token current) throws IOException {
+        Token token = current == Token.FIELD_NAME ? next() : current;
+        if (token != Token.START_OBJECT && token != Token.START_ARRAY) {
+            return;
+        }
+        int target = depth - 1;
+        while (depth > target) {
+            if (next() == Token.END) {
+                throw new IOException("Unexpected end of JSON input");
+            }
+        }
+    }
+
+    /**
+     * @return Whether the current name or string equals the given ASCII text, compared in place.
+     */
+    boolean textEquals(String value) {
+        if (value.length() != textLength) {
+            return false;
+        }
+        for (int i = 0; i < textLength; i++) {
+            if (text[i] != value.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    int textLength() {
+        return textLength;
+    }
+
+    char textAt(int index) {
+        return text[index];
+    }
+
+    /**
+     * @return The current name, string or number as a new String.
+     */
+    String getText() {
+        return new String(text, 0, textLength);
+    }
+
+    /**
+     * @return The current number. Up to 15 significant digits and a decimal exponent of at most
+     *         22 are converted exactly without allocating; longer numbers fall back to Double.parseDouble.
+     */
+    double getDouble() {
+        long mantissa = 0;
+        int digits = 0;
+        int exponent = 0;
+        int i = 0;
+        boolean negative = text[0] == '-';
+        if (negative) {
+            i++;
+        }
+        boolean fraction = false;
+        for (; i < textLength; i++) {
+            char c = text[i];
+            if (c >= '0' && c <= '9') {
+                if (mantissa != 0 || c != '0') {
+                    digits++;
+                }
+                mantissa = mantissa * 10 + (c - '0');
+                if (fraction) {
+                    exponent--;
+                }
+            } else if (c == '.' && !fraction) {
+                fraction = true;
+            } else {
+                break;
+            }
+        }
+        if (i < textLength) {
+            // Explicit exponent
+            if (text[i] != 'e' && text[i] != 'E' || i + 1 >= textLength) {
+                return Double.parseDouble(getText());
+            }
+            int j = i + 1;
+            boolean negativeExponent = text[j] == '-';
+            if (text[j] == '-' || text[j] == '+') {
+                j++;
+            }
+            int value = 0;
+            for (; j < textLength && value < 1000; j++) {
+                if (text[j] < '0' || text[j] > '9') {
+                    return Double.parseDouble(getText());
+                }
+                value = value * 10 + (text[j] - '0');
+            }
+            exponent += negativeExponent ? -value : value;
+        }
+        if (digits > 15 || exponent < -22 || exponent > 22) {
+            return Double.parseDouble(getText());
+        }
+        double result = exponent < 0 ? mantissa / POWERS_OF_TEN[-exponent] : mantissa * POWERS_OF_TEN[exponent];
+        return negative ? -result : result;
+    }
+
+    /**
+     * @return The number of bytes read from the stream so far.
+     */
+    long getByteCount() {
+        return consumed;
+    }
+
+    @Override
+    public void close() throws IOException {
+        in.close();
+    }
+
+    private void push(boolean object) throws IOException {
+        if (depth == MAX_DEPTH) {
+            throw new IOException("JSON nested deeper than " + MAX_DEPTH + " levels");
+        }
+        objects[depth++] = object;
+    }
+
+    private void pop() throws IOException {
+        if (depth == 0) {
+            throw new IOException("Unbalanced JSON brackets");
+        }
+        depth--;
+        expectName = false;
+    }
+
+    private void expectLiteral(String rest) throws IOException {
+        for (int i = 0; i < rest.length(); i++) {
+            if (read() != rest.charAt(i)) {
+                throw new IOException("Invalid JSON literal");
+            }
+        }
+    }
+
+    private void readNumber(int first) throws IOException {
+        textLength = 0;
+        append((char) first);
+        while (true) {
+            if (position == limit && !fill()) {
+                return;
+            }
+            int c = input[position];
+            if (c >= '0' && c <= '9' || c == '.' || c == 'e' || c == 'E' || c == '-' || c == '+') {
+                append((char) c);
+                position++;
+            } else {
+                return;
+            }
+        }
+    }
+
+    private void readString() throws IOException {
+        textLength = 0;
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            }
+            if (c == -1) {
+                throw new IOException("Unterminated JSON string");
+            }
+            if (c == '\\') {
+                readEscape();
+            } else if (c < 0x80) {
+                append((char) c);
+            } else {
+                readMultiByte(c);
+            }
+        }
+    }
+
+    private void readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"': case '\\': case '/':
+                append((char) c);
+                break;
+            case 'b':
+                append('\b');
+                break;
+            case 'f':
+                append('\f');
+                break;
+            case 'n':
+                append('\n');
+                break;
+            case 'r':
+                append('\r');
+                break;
+            case 't':
+                append('\t');
+                break;
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw new IOException("Invalid \\u escape in JSON string");
+                    }
+                    value = value << 4 | digit;
+                }
+                append((char) value);
+                break;
+            default:
+                throw new IOException("Invalid escape in JSON string");
+        }
+    }
+
+    // Decodes a 2, 3 or 4 byte UTF-8 sequence whose first byte was already read
+    private void readMultiByte(int first) throws IOException {
+        int extra = first >= 0xF0 ? 3 : first >= 0xE0 ? 2 : 1;
+        int codePoint = first & (0x3F >> extra);
+        for (int i = 0; i < extra; i++) {
+            int c = read();
+            if (c < 0x80 || c > 0xBF) {
+                throw new IOException("Invalid UTF-8 in JSON string");
+            }
+            codePoint = codePoint << 6 | (c & 0x3F);
+        }
+        if (codePoint >= 0x10000) {
+            append(Character.highSurrogate(codePoint));
+            append(Character.lowSurrogate(codePoint));
+        } else {
+            append((char) codePoint);
+        }
+    }
+
+    private void append(char c) {
+        if (textLength == text.length) {
+            char[] larger = new char[text.length * 2];
+            System.arraycopy(text, 0, larger, 0, textLength);
+            text = larger;
+        }
+        text[textLength++] = c;
+    }
+
+    private int read() throws IOException {
+        if (position == limit && !fill()) {
+            return -1;
+        }
+        return input[position++] & 0xFF;
+    }
+
+    private boolean fill() throws IOException {
+        int count = in.read(input, 0, input.length);
+        if (count <= 0) {
+            return false;
+        }
+        position = 0;
+        limit = count;
+        consumed += count;
+        return true;
+    }
+}
@@ -0,0 +1,374 @@
+package ds.webservice;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Streaming JSON writer for API responses. Output is encoded as UTF-8 into a byte buffer taken
+ * from a shared pool and handed to the output stream whenever the buffer is full, so a response
+ * never exists in memory as a whole, neither as a tree nor as a String. Numbers are formatted
+ * digit by digit without boxing; a double is written with the fewest decimals (up to 9) that read
+ * back as the same value, which covers every published exchange rate, and only falls back to
+ * Double.toString beyond that.
+ *
+ * The pool holds currency.json.bufferPool (64) buffers of currency.json.bufferSize (8192)
+ * bytes. A writer returns its buffer on {@link #close()}. Not thread-safe.
+ *
+ * Author: Aditya Aayush
+ */
+public final class JsonWriter implements Closeable {
+
+    private static final int BUFFER_SIZE = ServiceConfig.getInt("json.bufferSize", 8192);
+    private static final BlockingQueue<byte[]> POOL = new ArrayBlockingQueue<>(ServiceConfig.getInt("json.bufferPool", 64));
+    private static final int MAX_DEPTH = 64;
+    private static final int MAX_DECIMALS = 9;
+    private static final double[] POWERS_OF_TEN = {1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9};
+    // Largest magnitude whose scaled value is still an exact long.
+    private static final double MAX_EXACT = 9007199254740992.0;
+    private static final byte[] HEX = "0123456789abcdef".getBytes();
+
+    private final OutputStream out;
+    private byte[] buffer;
+    private int size;
+    // Scratch space for the digits of one number.
+    private final byte[] digits = new byte[20];
+
+    // Whether the container at each depth already holds a value, and whether a name was just written.
+    private final boolean[] hasValue = new boolean[MAX_DEPTH];
+    private int depth;
+    private boolean afterName;
+    // Time spent handing bytes to the output stream.
+    private long ioNanos;
+
+    /**
+     * @param out The stream receiving the UTF-8 encoded JSON. It is flushed but not closed by {@link #close()}.
+     */
+    public JsonWriter(OutputStream out) {
+        this.out = out;
+        byte[] pooled = POOL.poll();
+        this.buffer = pooled != null ? pooled : new byte[BUFFER_SIZE];
+    }
+
+    public JsonWriter beginObject() throws IOException {
+        separator();
+        put((byte) '{');
+        push();
+        return this;
+    }
+
+    public JsonWriter endObject() throws IOException {
+        pop();
+        put((byte) '}');
+        return this;
+    }
+
+    public JsonWriter beginArray() throws IOException {
+        separator();
+        put((byte) '[');
+        push();
+        return this;
+    }
+
+    public JsonWriter endArray() throws IOException {
+        pop();
+        put((byte) ']');
+        return this;
+    }
+
+    /**
+     * Writes the name of the next object member.
+     */
+    public JsonWriter name(String name) throws IOException {
+        separator();
+        string(name);
+        put((byte) ':');
+        afterName = true;
+        return this;
+    }
+
+    /**
+     * Writes a day as an object member name in ISO format, "yyyy-MM-dd", without creating a date object.
+     *
+     * @param epochDay Days since 1970-01-01, for a year between 0 and 9999.
+     */
+    public JsonWriter nameDate(int epochDay) throws IOException {
+        separator();
+        // Civil date from days, proleptic Gregorian calendar (H. Hinnant's algorithm)
+        int z = epochDay + 719468;
+        int era = Math.floorDiv(z, 146097);
+        int dayOfEra = z - era * 146097;
+        int yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        int dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        int monthPart = (5 * dayOfYear + 2) / 153;
+        int day = dayOfYear - (153 * monthPart + 2) / 5 + 1;
+        int month = monthPart < 10 ? monthPart + 3 : monthPart - 9;
+        int year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        ensure(13);
+        buffer[size++] = '"';
+        buffer[size++] = (byte) ('0' + year / 1000 % 10);
+        buffer[size++] = (byte) ('0' + year / 100 % 10);
+        buffer[size++] = (byte) ('0' + year / 10 % 10);
+        buffer[size++] = (byte) ('0' + year % 10);
+        buffer[size++] = '-';
+        buffer[size++] = (byte) ('0' + month / 10);
+        buffer[size++] = (byte) ('0' + month % 10);
+        buffer[size++] = '-';
+        buffer[size++] = (byte) ('0' + day / 10);
+        buffer[size++] = (byte) ('0' + day % 10);
+        buffer[size++] = '"';
+        buffer[size++] = ':';
+        afterName = true;
+        return this;
+    }
+
+    public JsonWriter value(String value) throws IOException {
+        if (value == null) {
+            return nullValue();
+        }
+        separator();
+        string(value);
+        return this;
+    }
+
+    public JsonWriter value(boolean value) throws IOException {
+        separator();
+        ascii(value ? "true" : "false");
+        return this;
+    }
+
+    public JsonWriter nullValue() throws IOException {
+        separator();
+        ascii("null");
+        return this;
+    }
+
+    public JsonWriter value(long value) throws IOException {
+        separator();
+        number(value);
+        return this;
+    }
+
+    /**
+     * Writes a double with the fewest decimals that read back as the same value. NaN and
+     * infinities have no JSON form and are written as null.
+     */
+    public JsonWriter value(double value) throws IOException {
+        separator();
+        if (!Double.isFinite(value)) {
+            ascii("null");
+            return this;
+        }
+        for (int decimals = 0; decimals <= MAX_DECIMALS; decimals++) {
+            double scaled = Math.rint(value * POWERS_OF_TEN[decimals]);
+            if (Math.abs(scaled) >= MAX_EXACT) {
+                break;
+            }
+            if (scaled / POWERS_OF_TEN[decimals] == value) {
+                decimal((long) scaled, decimals);
+                return this;
+            }
+        }
+        ascii(Double.toString(value));
+        return this;
+    }
+
+    /**
+     * Writes an org.json value: a JSONObject or JSONArray is walked member by member, other
+     * values are written as the matching JSON scalar.
+     */
+    public JsonWriter value(Object value) throws IOException {
+        if (value == null || value == JSONObject.NULL) {
+            return nullValue();
+        }
+        if (value instanceof JSONObject) {
+            JSONObject object = (JSONObject) value;
+            beginObject();
+            for (String key : object.keySet()) {
+                name(key);
+                value(object.opt(key));
+            }
+            return endObject();
+        }
+        if (value instanceof JSONArray) {
+            JSONArray array = (JSONArray) value;
+            beginArray();
+            for (int i = 0; i < array.length(); i++) {
+                value(array.opt(i));
+            }
+            return endArray();
+        }
+        if (value instanceof Integer || value instanceof Long || value instanceof Short || value instanceof Byte) {
+            return value(((Number) value).longValue());
+        }
+        if (value instanceof Number) {
+            return value(((Number) value).doubleValue());
+        }
+        if (value instanceof Boolean) {
+            return value(((Boolean) value).booleanValue());
+        }
+        return value(value.toString());
+    }
+
+    /**
+     * @return The nanoseconds spent handing bytes to the output stream, i.e. the I/O part of the writing time.
+     */
+    public long getIoNanos() {
+        return ioNanos;
+    }
+
+    /**
+     * Writes what is still buffered and returns the buffer to the pool. The output stream stays open.
+     */
+    @Override
+    public void close() throws IOException {
+        if (buffer == null) {
+            return;
+        }
+        try {
+            flushBuffer();
+            long start = System.nanoTime();
+            out.flush();
+            ioNanos += System.nanoTime() - start;
+        } finally {
+            if (buffer.length == BUFFER_SIZE) {
+                POOL.offer(buffer);
+            }
+            buffer = null;
+        }
+    }
+
+    // Comma before every value except the first of its container and the value after a name
+    private void separator() throws IOException {
+        if (afterName) {
+            afterName = false;
+            return;
+        }
+        if (depth > 0) {
+            if (hasValue[depth - 1]) {
+                put((byte) ',');
+            }
+            hasValue[depth - 1] = true;
+        }
+    }
+
+    private void push() {
+        if (depth == MAX_DEPTH) {
+            throw new IllegalStateException("JSON nested deeper than " + MAX_DEPTH + " levels");
+        }
+        hasValue[depth++] = false;
+    }
+
+    private void pop() {
+        if (depth == 0) {
+            throw new IllegalStateException("No JSON container to close");
+        }
+        depth--;
+        afterName = false;
+    }
+
+    private void string(String value) throws IOException {
+        put((byte) '"');
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c == '"' || c == '\\') {
+                ensure(2);
+                buffer[size++] = '\\';
+                buffer[size++] = (byte) c;
+            } else if (c == '\n' || c == '\r' || c == '\t' || c == '\b' || c == '\f') {
+                ensure(2);
+                buffer[size++] = '\\';
+                buffer[size++] = (byte) (c == '\n' ? 'n' : c == '\r' ? 'r' : c == '\t' ? 't' : c == '\b' ? 'b' : 'f');
+            } else if (c < 0x20) {
+                ensure(6);
+                buffer[size++] = '\\';
+                buffer[size++] = 'u';
+                buffer[size++] = '0';
+                buffer[size++] = '0';
+                buffer[size++] = HEX[c >> 4];
+                buffer[size++] = HEX[c & 0xF];
+            } else if (c < 0x80) {
+                put((byte) c);
+            } else if (c < 0x800) {
+                ensure(2);
+                buffer[size++] = (byte) (0xC0 | c >> 6);
+                buffer[size++] = (byte) (0x80 | c & 0x3F);
+            } else if (Character.isHighSurrogate(c) && i + 1 < value.length() && Character.isLowSurrogate(value.charAt(i + 1))) {
+                int codePoint = Character.toCodePoint(c, value.charAt(++i));
+                ensure(4);
+                buffer[size++] = (byte) (0xF0 | codePoint >> 18);
+                buffer[size++] = (byte) (0x80 | codePoint >> 12 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | codePoint & 0x3F);
+            } else {
+                ensure(3);
+                buffer[size++] = (byte) (0xE0 | c >> 12);
+                buffer[size++] = (byte) (0x80 | c >> 6 & 0x3F);
+                buffer[size++] = (byte) (0x80 | c & 0x3F);
+            }
+        }
+        put((byte) '"');
+    }
+
+    // Writes unscaled / 10^decimals, e.g. (10849, 4) as 1.0849
+    private void decimal(long unscaled, int decimals) throws IOException {
+        if (unscaled < 0) {
+            put((byte) '-');
+            unscaled = -unscaled;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + unscaled % 10);
+            unscaled /= 10;
+        } while (unscaled != 0 || count <= decimals);
+        ensure(count + 1);
+        while (count > 0) {
+            if (count == decimals) {
+                buffer[size++] = '.';
+            }
+            buffer[size++] = digits[--count];
+        }
+    }
+
+    private void number(long value) throws IOException {
+        if (value == Long.MIN_VALUE) {
+            ascii("-9223372036854775808");
+            return;
+        }
+        decimal(value, 0);
+    }
+
+    private void ascii(String value) throws IOException {
+        ensure(value.length());
+        for (int i = 0; i < value.length(); i++) {
+            buffer[size++] = (byte) value.charAt(i);
+        }
+    }
+
+    private void put(byte b) throws IOException {
+        ensure(1);
+        buffer[size++] = b;
+    }
+
+    // Makes room for the given number of bytes, handing the buffered bytes to the stream if needed
+    private void ensure(int count) throws IOException {
+        if (size + count > buffer.length) {
+            flushBuffer();
+        }
+    }
+
+    private void flushBuffer() throws IOException {
+        if (size > 0) {
+            long start = System.nanoTime();
+            out.write(buffer, 0, size);
+            ioNanos += System.nanoTime() - start;
+            size = 0;
+        }
+    }
+}
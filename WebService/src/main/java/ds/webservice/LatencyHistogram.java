@@ -0,0 +1,291 @@
+package ds.webservice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Supplier;
+
+/**
+ * Lock-free latency histogram over sliding time windows. Values are recorded in microseconds
+ * into log-linear buckets in the style of HdrHistogram: every power of two is split into 32
+ * linear sub-buckets, so any percentile is reported within about 3% of the true value while a
+ * whole histogram is a fixed array of under a thousand counters.
+ *
+ * Recording is a couple of atomic increments. The last five minutes are kept in 10-second slots
+ * and the last hour in 1-minute slots; a slot is cleared by the first thread that records into it
+ * after it has expired. A value recorded by another thread at that exact moment may be lost,
+ * which is accepted for monitoring data. Cumulative counts since startup are kept as well, for
+ * scrapers that compute their own rates.
+ *
+ * Author: Aditya Aayush
+ */
+public final class LatencyHistogram {
+
+    /**
+     * The sliding windows a summary can be taken over.
+     */
+    public enum Window {
+        ONE_MINUTE("1m", 60),
+        FIVE_MINUTES("5m", 300),
+        ONE_HOUR("1h", 3600);
+
+        private final String label;
+        private final long seconds;
+
+        Window(String label, long seconds) {
+            this.label = label;
+            this.seconds = seconds;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    /**
+     * Count and percentiles of one window, in milliseconds.
+     */
+    public static final class Summary {
+        private final long count;
+        private final double p50;
+        private final double p95;
+        private final double p99;
+        private final double max;
+
+        Summary(long count, double p50, double p95, double p99, double max) {
+            this.count = count;
+            this.p50 = p50;
+            this.p95 = p95;
+            this.p99 = p99;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public double getP50() {
+            return p50;
+        }
+
+        public double getP95() {
+            return p95;
+        }
+
+        public double getP99() {
+            return p99;
+        }
+
+        public double getMax() {
+            return max;
+        }
+    }
+
+    // 2^5 = 32 linear sub-buckets per power of two.
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    // Values are capped at 2^32 microseconds (over an hour), far beyond any request timeout.
+    private static final int MAX_EXPONENT = 32;
+    static final int BUCKETS = (MAX_EXPONENT - SUB_BUCKET_BITS) * SUB_BUCKETS + 2 * SUB_BUCKETS;
+    private static final long MAX_VALUE = (1L << MAX_EXPONENT) - 1;
+
+    /**
+     * Counters of one time slot. The epoch is the index of the interval the counts belong to.
+     */
+    private static final class Slot {
+        private final AtomicLong epoch = new AtomicLong(Long.MIN_VALUE);
+        private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+        private final AtomicLong max = new AtomicLong();
+    }
+
+    /**
+     * A ring of slots covering a fixed span of time.
+     */
+    private static final class Ring {
+        private final long slotNanos;
+        private final Slot[] slots;
+
+        Ring(long slotSeconds, int slotCount) {
+            this.slotNanos = TimeUnit.SECONDS.toNanos(slotSeconds);
+            this.slots = new Slot[slotCount];
+            for (int i = 0; i < slotCount; i++) {
+                slots[i] = new Slot();
+            }
+        }
+
+        void record(long now, int bucket, long micros) {
+            // System.nanoTime() may be negative, so use floor division
+            long interval = Math.floorDiv(now, slotNanos);
+            Slot slot = slots[(int) Math.floorMod(interval, (long) slots.length)];
+            long epoch = slot.epoch.get();
+            if (epoch != interval && slot.epoch.compareAndSet(epoch, interval)) {
+                // This thread moved the slot into the new interval, drop what it held before
+                for (int i = 0; i < BUCKETS; i++) {
+                    slot.counts.set(i, 0);
+                }
+                slot.max.set(0);
+            }
+            slot.counts.incrementAndGet(bucket);
+            slot.max.accumulateAndGet(micros, Math::max);
+        }
+
+        /**
+         * Adds the slots of the most recent intervals that cover the given span.
+         *
+         * @return The largest value recorded in those slots.
+         */
+        long collect(long now, long spanNanos, long[] into) {
+            long current = Math.floorDiv(now, slotNanos);
+            long oldest = current - Math.max(1, spanNanos / slotNanos) + 1;
+            long max = 0;
+            for (Slot slot : slots) {
+                long epoch = slot.epoch.get();
+                if (epoch >= oldest && epoch <= current) {
+                    for (int i = 0; i < BUCKETS; i++) {
+                        into[i] += slot.counts.get(i);
+                    }
+                    max = Math.max(max, slot.max.get());
+                }
+            }
+            return max;
+        }
+    }
+
+    private final String name;
+    // 30 x 10 s for the 1 and 5 minute windows, 60 x 1 min for the hour.
+    private final Ring seconds = new Ring(10, 30);
+    private final Ring minutes = new Ring(60, 60);
+    // Since startup, never reset.
+    private final AtomicLongArray totals = new AtomicLongArray(BUCKETS);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalMicros = new AtomicLong();
+
+    /**
+     * @param name The metric name, e.g. "api.latest.getRate".
+     */
+    public LatencyHistogram(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     * Records one latency.
+     *
+     * @param nanos The latency in nanoseconds.
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.min(Math.max(nanos / 1000, 0), MAX_VALUE);
+        int bucket = bucketOf(micros);
+        long now = System.nanoTime();
+        seconds.record(now, bucket, micros);
+        minutes.record(now, bucket, micros);
+        totals.incrementAndGet(bucket);
+        totalCount.incrementAndGet();
+        totalMicros.addAndGet(micros);
+    }
+
+    /**
+     * Records the time from the call until the future produced by the task completes, whether
+     * it succeeds or fails.
+     *
+     * @param task Starts the asynchronous operation.
+     * @return The future of the operation.
+     */
+    public <T> CompletableFuture<T> time(Supplier<CompletableFuture<T>> task) {
+        long start = System.nanoTime();
+        return task.get().whenComplete((value, error) -> recordNanos(System.nanoTime() - start));
+    }
+
+    /**
+     * @return The number of values recorded since startup.
+     */
+    public long getTotalCount() {
+        return totalCount.get();
+    }
+
+    /**
+     * @return The sum of the values recorded since startup, in microseconds.
+     */
+    public long getTotalMicros() {
+        return totalMicros.get();
+    }
+
+    /**
+     * @param bucket A bucket index below {@link #BUCKETS}.
+     * @return The number of values recorded into the bucket since startup.
+     */
+    long getTotal(int bucket) {
+        return totals.get(bucket);
+    }
+
+    /**
+     * Computes the count and percentiles of a window.
+     *
+     * @param window The window.
+     * @return The summary, with all values 0 if nothing was recorded.
+     */
+    public Summary summary(Window window) {
+        long[] counts = new long[BUCKETS];
+        long now = System.nanoTime();
+        long spanNanos = TimeUnit.SECONDS.toNanos(window.seconds);
+        long max = window == Window.ONE_HOUR
+                ? minutes.collect(now, spanNanos, counts)
+                : seconds.collect(now, spanNanos, counts);
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return new Summary(total,
+                percentile(counts, total, 0.50, max),
+                percentile(counts, total, 0.95, max),
+                percentile(counts, total, 0.99, max),
+                max / 1000.0);
+    }
+
+    /**
+     * @return The value at the given quantile in milliseconds, never above the recorded maximum.
+     */
+    private static double percentile(long[] counts, long total, double quantile, long max) {
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(quantile * total);
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= rank) {
+                return Math.min(highestValueIn(i), max) / 1000.0;
+            }
+        }
+        return max / 1000.0;
+    }
+
+    /**
+     * Maps a value to its bucket. Values below 64 get a bucket each; above that, the value's
+     * highest set bit selects the power of two and the next five bits the sub-bucket.
+     */
+    static int bucketOf(long micros) {
+        if (micros < 2 * SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        return shift * SUB_BUCKETS + (int) (micros >>> shift);
+    }
+
+    /**
+     * @return The largest value that falls into the bucket.
+     */
+    static long highestValueIn(int bucket) {
+        if (bucket < 2 * SUB_BUCKETS) {
+            return bucket;
+        }
+        int shift = bucket / SUB_BUCKETS - 1;
+        long subBucket = bucket % SUB_BUCKETS + SUB_BUCKETS;
+        return ((subBucket + 1) << shift) - 1;
+    }
+}
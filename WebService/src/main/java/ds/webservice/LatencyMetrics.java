@@ -0,0 +1,99 @@
+package ds.webservice;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * The latency histograms of the service: one per API operation, measured from admission until
+ * the response is written, and one per kind of upstream call, measured from sending the request
+ * until its response (or failure) arrives. The Mongo writes of the background writers are timed too.
+ * API operations also count responses by status code and upstream calls count the payload size.
+ *
+ * Author: Aditya Aayush
+ */
+public final class LatencyMetrics {
+
+    // API operations, recorded by the servlets through AsyncPipeline.
+    public static final LatencyHistogram LATEST_RATE = new LatencyHistogram("api.latest.getRate");
+    public static final LatencyHistogram LATEST_CURRENCIES = new LatencyHistogram("api.latest.getCurrencies");
+    public static final LatencyHistogram HISTORICAL_RATE = new LatencyHistogram("api.historical.date");
+    public static final LatencyHistogram HISTORICAL_SERIES = new LatencyHistogram("api.historical.timeSeries");
+
+    // Upstream calls to the Frankfurter API, recorded by the Model.
+    public static final LatencyHistogram UPSTREAM_LATEST = new LatencyHistogram("upstream.latest");
+    public static final LatencyHistogram UPSTREAM_HISTORICAL_RATE = new LatencyHistogram("upstream.historical.date");
+    public static final LatencyHistogram UPSTREAM_HISTORICAL_SERIES = new LatencyHistogram("upstream.historical.timeSeries");
+
+    // MongoDB writes done off the request path.
+    public static final LatencyHistogram MONGO_INSERT_MANY = new LatencyHistogram("mongo.insertMany");
+    public static final LatencyHistogram MONGO_UPSERT = new LatencyHistogram("mongo.upsert");
+
+    private static final List<LatencyHistogram> ALL = Collections.unmodifiableList(Arrays.asList(
+            LATEST_RATE, LATEST_CURRENCIES, HISTORICAL_RATE, HISTORICAL_SERIES,
+            UPSTREAM_LATEST, UPSTREAM_HISTORICAL_RATE, UPSTREAM_HISTORICAL_SERIES,
+            MONGO_INSERT_MANY, MONGO_UPSERT));
+
+    // Highest status code that is counted individually, larger ones are counted as 599.
+    static final int MAX_STATUS = 599;
+    // Per histogram in ALL: responses by status code, and payload bytes of upstream responses.
+    private static final AtomicLongArray[] STATUS_COUNTS = new AtomicLongArray[ALL.size()];
+    private static final AtomicLong[] PAYLOAD_SIZES = new AtomicLong[ALL.size()];
+
+    static {
+        for (int i = 0; i < ALL.size(); i++) {
+            STATUS_COUNTS[i] = new AtomicLongArray(MAX_STATUS + 1);
+            PAYLOAD_SIZES[i] = new AtomicLong();
+        }
+    }
+
+    // Constants only, no instances.
+    private LatencyMetrics() {
+    }
+
+    /**
+     * @return Every histogram, API operations first.
+     */
+    public static List<LatencyHistogram> all() {
+        return ALL;
+    }
+
+    /**
+     * Counts a response of an API operation.
+     *
+     * @param operation The histogram of the operation.
+     * @param status The HTTP status code sent.
+     */
+    public static void countStatus(LatencyHistogram operation, int status) {
+        STATUS_COUNTS[ALL.indexOf(operation)].incrementAndGet(Math.min(Math.max(status, 0), MAX_STATUS));
+    }
+
+    /**
+     * Adds the payload size of an upstream response.
+     *
+     * @param call The histogram of the upstream call.
+     * @param size The length of the response body in bytes.
+     */
+    public static void countPayload(LatencyHistogram call, long size) {
+        PAYLOAD_SIZES[ALL.indexOf(call)].addAndGet(size);
+    }
+
+    /**
+     * @param index The position of the histogram in {@link #all()}.
+     * @param status An HTTP status code up to {@link #MAX_STATUS}.
+     * @return The number of responses with that status.
+     */
+    static long getStatusCount(int index, int status) {
+        return STATUS_COUNTS[index].get(status);
+    }
+
+    /**
+     * @param index The position of the histogram in {@link #all()}.
+     * @return The total payload size of the upstream responses.
+     */
+    static long getPayloadSize(int index) {
+        return PAYLOAD_SIZES[index].get();
+    }
+}
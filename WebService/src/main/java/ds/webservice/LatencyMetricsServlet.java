@@ -0,0 +1,48 @@
+/**
+ * Servlet exposing the latency histograms in machine-readable form.
+ * For every API operation and upstream call it returns the request count and the
+ * p50/p95/p99/max latency in milliseconds over the last minute, five minutes and hour.
+ *
+ * Author: Aditya Aayush
+ */
+
+package ds.webservice;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.json.JSONObject;
+
+import java.io.IOException;
+
+// Define the servlet URL pattern for the latency metrics endpoint
+@WebServlet("/metrics/latency")
+public class LatencyMetricsServlet extends HttpServlet {
+
+    // Handle GET requests for the current latency summaries
+    @Override
+    protected void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        // One object per histogram, with one summary per window
+        JSONObject metrics = new JSONObject();
+        for (LatencyHistogram histogram : LatencyMetrics.all()) {
+            JSONObject windows = new JSONObject();
+            for (LatencyHistogram.Window window : LatencyHistogram.Window.values()) {
+                LatencyHistogram.Summary summary = histogram.summary(window);
+                windows.put(window.getLabel(), new JSONObject()
+                        .put("count", summary.getCount())
+                        .put("p50", summary.getP50())
+                        .put("p95", summary.getP95())
+                        .put("p99", summary.getP99())
+                        .put("max", summary.getMax()));
+            }
+            metrics.put(histogram.getName(), windows);
+        }
+
+        // Respond with the metrics in JSON format
+        response.setContentType("application/json");
+        response.getWriter().write(metrics.toString());
+    }
+}
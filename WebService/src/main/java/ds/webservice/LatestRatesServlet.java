@@ -1,6 +1,7 @@
 /**
  * Servlet for fetching the latest currency rates.
  * Handles requests for converting between currencies and retrieving available currencies.
+ * Requests are processed asynchronously so that no container thread waits for the upstream API.
  *
  * Author: Aditya Aayush
  */
@@ -8,18 +9,17 @@
 package ds.webservice;
 
 // Import necessary classes for handling servlets and JSON
+import jakarta.servlet.AsyncContext;
 import jakarta.servlet.ServletException;
 import jakarta.servlet.annotation.WebServlet;
 import jakarta.servlet.http.HttpServlet;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.json.JSONArray;
-import org.json.JSONObject;
 
 import java.io.IOException;
 
 // Define the servlet and its mapping URL for API endpoint
-@WebServlet("/api/latest/*")
+@WebServlet(urlPatterns = {"/api/latest/*"}, asyncSupported = true)
 public class LatestRatesServlet extends HttpServlet {
 
     // Define a model variable to interact with the data layer or business logic
@@ -46,37 +46,46 @@ public class LatestRatesServlet extends HttpServlet {
         // Log the incoming request for tracking or debugging purposes
         model.inductClientRequest(request);
 
-        // Variables to track the type of request and its duration
-        String requestType = "";
+        // Switch to async mode, or reject the request if too many are in flight
+        AsyncContext context = AsyncPipeline.start(request, response);
+        if (context == null) {
+            return;
+        }
+
+        // Track the duration of the request
         long startTime = System.currentTimeMillis();
-        JSONObject currencyValue = null;
-        JSONArray currencies = null;
 
         // Check if both 'from' and 'to' currency parameters are provided
         if (fromCurrency != null && toCurrency != null) {
-            requestType = "getRate"; // This is a currency conversion rate request
-            // Fetch the conversion rate between the specified currencies
-            currencyValue = model.fetchCurrencies(fromCurrency, toCurrency);
-            // Respond with a 200 OK status and the conversion rate in JSON format
-            response.setStatus(HttpServletResponse.SC_OK);
-            response.getWriter().write(currencyValue.toString());
+            // This is a currency conversion rate request
+            AsyncPipeline.finish(context, LatencyMetrics.LATEST_RATE, model.fetchCurrenciesAsync(fromCurrency, toCurrency),
+                    (currencyValue, asyncResponse) -> {
+                        // Respond with a 200 OK status and the conversion rate in JSON format
+                        asyncResponse.setStatus(HttpServletResponse.SC_OK);
+                        AsyncPipeline.writeJson(asyncResponse, json -> json.value(currencyValue));
+                        // Log the response details for tracking or auditing purposes
+                        long endTime = System.currentTimeMillis();
+                        model.inductServiceResponse((endTime - startTime), HttpServletResponse.SC_OK, "getRate", currencyValue, null);
+                    }, LatestRatesServlet::writeError);
         } else {
             // If one or both currency parameters are missing, return a list of available currencies
-            requestType = "getCurrencies"; // This is a request for available currencies
-            currencies = model.fetchCurrencies();
-            // Respond with a 200 OK status and the list of currencies in JSON format
-            response.setStatus(HttpServletResponse.SC_OK);
-            response.getWriter().write(currencies.toString());
+            AsyncPipeline.finish(context, LatencyMetrics.LATEST_CURRENCIES, model.fetchCurrenciesAsync(),
+                    (currencyList, asyncResponse) -> {
+                        // Respond with a 200 OK status and the list of currencies in JSON format
+                        asyncResponse.setStatus(HttpServletResponse.SC_OK);
+                        AsyncPipeline.writeJson(asyncResponse, json -> json.value(currencyList));
+                        // Log the response details for tracking or auditing purposes
+                        long endTime = System.currentTimeMillis();
+                        model.inductServiceResponse((endTime - startTime), HttpServletResponse.SC_OK, "getCurrencies", null, currencyList);
+                    }, LatestRatesServlet::writeError);
         }
+    }
 
-        // Calculate the time taken to process the request
-        long endTime = System.currentTimeMillis();
-
-        // Log the response details for tracking or auditing purposes
-        if (requestType.equals("getRate")) {
-            model.inductServiceResponse((endTime - startTime), HttpServletResponse.SC_OK, "getRate", currencyValue, null);
-        } else {
-            model.inductServiceResponse((endTime - startTime), HttpServletResponse.SC_OK, "getCurrencies", null, currencies);
-        }
+    // Report a failed lookup, e.g. an unknown currency or an unreachable upstream API
+    private static void writeError(Throwable error, HttpServletResponse response) throws IOException {
+        response.setStatus(error instanceof IllegalArgumentException
+                ? HttpServletResponse.SC_NOT_FOUND : HttpServletResponse.SC_BAD_GATEWAY);
+        response.setContentType("text/plain");
+        response.getWriter().write("Error processing request: " + error.getMessage());
     }
 }
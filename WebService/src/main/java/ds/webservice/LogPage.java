@@ -0,0 +1,207 @@
+package ds.webservice;
+
+import com.mongodb.client.FindIterable;
+import com.mongodb.client.MongoCursor;
+import jakarta.servlet.http.HttpServletRequest;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Date;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.function.Function;
+
+/**
+ * One page of a log collection for the dashboard. Documents are read newest first and keyed on
+ * _id, so the next page is simply everything older than the last _id shown (keyset pagination):
+ * no page ever skips over the rows before it, and the time window maps onto the timestamp that
+ * is embedded in every ObjectId. The page is a lazy cursor rather than a list, so the JSP writes
+ * each row as it arrives and only one cursor batch is held in memory. The cursor is closed once
+ * the last row has been read, or by {@link #close()} if rendering stops early.
+ *
+ * Author: Aditya Aayush
+ */
+public final class LogPage implements Iterable<Document>, AutoCloseable {
+
+    /**
+     * Paging parameters shared by every table on one dashboard view.
+     */
+    public static final class Window {
+        // Rows per table and upper bound on what a request may ask for.
+        private static final int DEFAULT_PAGE_SIZE = ServiceConfig.getInt("dashboard.pageSize", 50);
+        private static final int MAX_PAGE_SIZE = ServiceConfig.getInt("dashboard.maxPageSize", 500);
+
+        private final int pageSize;
+        private final int windowHours;
+        private final ObjectId since;
+
+        private Window(int pageSize, int windowHours) {
+            this.pageSize = pageSize;
+            this.windowHours = windowHours;
+            // The smallest ObjectId generated at the start of the window
+            this.since = windowHours > 0
+                    ? new ObjectId(new Date(System.currentTimeMillis() - windowHours * 3_600_000L)) : null;
+        }
+
+        /**
+         * Reads the pageSize and windowHours query parameters. Missing or malformed values fall back
+         * to the configured page size and an unbounded window.
+         *
+         * @param request The dashboard request.
+         * @return The paging parameters.
+         */
+        public static Window from(HttpServletRequest request) {
+            int pageSize = Math.min(parseInt(request.getParameter("pageSize"), DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE);
+            int windowHours = parseInt(request.getParameter("windowHours"), 0);
+            return new Window(pageSize > 0 ? pageSize : DEFAULT_PAGE_SIZE, Math.max(windowHours, 0));
+        }
+
+        public int getPageSize() {
+            return pageSize;
+        }
+
+        public int getWindowHours() {
+            return windowHours;
+        }
+
+        ObjectId getSince() {
+            return since;
+        }
+
+        private static int parseInt(String value, int fallback) {
+            if (value == null) {
+                return fallback;
+            }
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return fallback;
+            }
+        }
+    }
+
+    private final String cursorParameter;
+    private final FindIterable<Document> documents;
+    private final Function<Document, Document> transform;
+    private final int pageSize;
+
+    // Open cursor of the current iteration, or null once it is exhausted or closed.
+    private MongoCursor<Document> cursor;
+    // Progress of the iteration, used to build the link to the next page.
+    private ObjectId lastId;
+    private int rows;
+
+    /**
+     * Wraps a query that is already filtered, sorted by descending _id and limited to one page.
+     *
+     * @param cursorParameter The query parameter that carries this table's cursor.
+     * @param documents The query.
+     * @param transform Turns a stored document into the row shown on the dashboard.
+     * @param pageSize The page size the query was limited to.
+     */
+    LogPage(String cursorParameter, FindIterable<Document> documents, Function<Document, Document> transform, int pageSize) {
+        this.cursorParameter = cursorParameter;
+        this.documents = documents;
+        this.transform = transform;
+        this.pageSize = pageSize;
+    }
+
+    /**
+     * Parses the cursor of a table from the dashboard request.
+     *
+     * @param request The dashboard request.
+     * @param cursorParameter The query parameter that carries the table's cursor.
+     * @return The _id to continue before, or null for the first page.
+     */
+    public static ObjectId cursor(HttpServletRequest request, String cursorParameter) {
+        String value = request.getParameter(cursorParameter);
+        return value != null && ObjectId.isValid(value) ? new ObjectId(value) : null;
+    }
+
+    /**
+     * Iterates over the rows of the page. Each page should be iterated once; the cursor is closed
+     * when hasNext() first returns false.
+     */
+    @Override
+    public Iterator<Document> iterator() {
+        close();
+        MongoCursor<Document> opened = documents.iterator();
+        cursor = opened;
+        return new Iterator<Document>() {
+            @Override
+            public boolean hasNext() {
+                if (cursor != opened) {
+                    return false;
+                }
+                if (opened.hasNext()) {
+                    return true;
+                }
+                close();
+                return false;
+            }
+
+            @Override
+            public Document next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                Document document = opened.next();
+                lastId = document.getObjectId("_id");
+                rows++;
+                return transform.apply(document);
+            }
+        };
+    }
+
+    /**
+     * Releases the cursor of an iteration that did not reach the last row. Does nothing otherwise.
+     */
+    @Override
+    public void close() {
+        if (cursor != null) {
+            cursor.close();
+            cursor = null;
+        }
+    }
+
+    /**
+     * @return True if the page was full, so older rows may follow.
+     */
+    public boolean hasMore() {
+        return rows == pageSize && lastId != null;
+    }
+
+    /**
+     * @return The number of rows iterated so far.
+     */
+    public int getRows() {
+        return rows;
+    }
+
+    /**
+     * Builds the query string of the link to the next page of this table. Every other parameter,
+     * including the cursors of the other tables, is kept as it is.
+     *
+     * @param request The dashboard request.
+     * @return The query string, starting with "?".
+     */
+    public String nextPageQuery(HttpServletRequest request) {
+        StringBuilder query = new StringBuilder("?");
+        for (Map.Entry<String, String[]> parameter : request.getParameterMap().entrySet()) {
+            if (parameter.getKey().equals(cursorParameter)) {
+                continue;
+            }
+            for (String value : parameter.getValue()) {
+                query.append(encode(parameter.getKey())).append('=').append(encode(value)).append('&');
+            }
+        }
+        return query.append(encode(cursorParameter)).append('=').append(lastId.toHexString()).toString();
+    }
+
+    private static String encode(String value) {
+        return URLEncoder.encode(value, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,102 @@
+package ds.webservice;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Reusable ASCII output buffer for the metrics exposition. Names, labels and numbers are written
+ * byte by byte into one growing array, so rendering a scrape creates no strings or boxed numbers.
+ * Not thread-safe; the owner serializes access.
+ *
+ * Author: Aditya Aayush
+ */
+final class MetricsBuffer {
+
+    // Fractional values are written with six decimal places.
+    private static final long FRACTION_SCALE = 1_000_000L;
+
+    private byte[] bytes = new byte[16 * 1024];
+    private int size;
+    // Scratch space for the digits of one number.
+    private final byte[] digits = new byte[20];
+
+    void reset() {
+        size = 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    void writeTo(OutputStream out) throws IOException {
+        out.write(bytes, 0, size);
+    }
+
+    /**
+     * Appends a string that only contains ASCII characters, such as a metric or label name.
+     */
+    MetricsBuffer append(String ascii) {
+        int length = ascii.length();
+        ensure(length);
+        for (int i = 0; i < length; i++) {
+            bytes[size++] = (byte) ascii.charAt(i);
+        }
+        return this;
+    }
+
+    MetricsBuffer append(char c) {
+        ensure(1);
+        bytes[size++] = (byte) c;
+        return this;
+    }
+
+    MetricsBuffer append(long value) {
+        if (value == Long.MIN_VALUE) {
+            return append("-9223372036854775808");
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int count = 0;
+        do {
+            digits[count++] = (byte) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        ensure(count);
+        while (count > 0) {
+            bytes[size++] = digits[--count];
+        }
+        return this;
+    }
+
+    /**
+     * Appends a value with six decimal places, or NaN/+Inf/-Inf as the exposition format spells them.
+     */
+    MetricsBuffer append(double value) {
+        if (Double.isNaN(value)) {
+            return append("NaN");
+        }
+        if (Double.isInfinite(value) || Math.abs(value) >= Long.MAX_VALUE / FRACTION_SCALE) {
+            return append(value > 0 ? "+Inf" : "-Inf");
+        }
+        long scaled = Math.round(value * FRACTION_SCALE);
+        if (scaled < 0) {
+            append('-');
+            scaled = -scaled;
+        }
+        append(scaled / FRACTION_SCALE).append('.');
+        long fraction = scaled % FRACTION_SCALE;
+        for (long place = FRACTION_SCALE / 10; place > 0; place /= 10) {
+            append((char) ('0' + fraction / place % 10));
+        }
+        return this;
+    }
+
+    private void ensure(int extra) {
+        if (size + extra > bytes.length) {
+            bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+    }
+}
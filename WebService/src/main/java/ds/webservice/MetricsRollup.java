@@ -0,0 +1,336 @@
+package ds.webservice;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.Accumulators;
+import com.mongodb.client.model.Aggregates;
+import com.mongodb.client.model.UpdateOptions;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Incremental dashboard metrics. Device counts, conversion pair counts and response times are
+ * counted in memory when a request is logged, and every few seconds the counts collected since
+ * the last flush are added ($inc) to one document per hour in the "metrics_rollup" collection.
+ * The all-time device and response time totals are rebuilt from those hourly documents at startup
+ * and kept in memory, so the dashboard reads a precomputed snapshot instead of aggregating the log
+ * collections. Pair counts are only kept per hour here; the all-time pair ranking is served by
+ * {@link PairPopularity}.
+ *
+ * Rollup document: _id = start of the hour, devices.{name}, pairs.{from/to}, responseCount,
+ * responseTimeSum. Names are escaped so that they are valid field names.
+ *
+ * Author: Aditya Aayush
+ */
+public final class MetricsRollup {
+
+    /**
+     * Immutable view of the totals, replaced after every flush.
+     */
+    public static final class Snapshot {
+        private final List<String> topDevices;
+        private final long responseCount;
+        private final long responseTimeSum;
+
+        Snapshot(List<String> topDevices, long responseCount, long responseTimeSum) {
+            this.topDevices = topDevices;
+            this.responseCount = responseCount;
+            this.responseTimeSum = responseTimeSum;
+        }
+
+        public List<String> getTopDevices() {
+            return topDevices;
+        }
+
+        public long getResponseCount() {
+            return responseCount;
+        }
+
+        /**
+         * @return The mean service response time in milliseconds, or NaN before the first response.
+         */
+        public double getAverageResponseTime() {
+            return responseCount == 0 ? Double.NaN : (double) responseTimeSum / responseCount;
+        }
+    }
+
+    private static final String COLLECTION = "metrics_rollup";
+    private static final long HOUR_MILLIS = TimeUnit.HOURS.toMillis(1);
+    // The rollup of the log rows that were written before the rollup existed.
+    private static final Date BACKFILL_ID = new Date(0);
+    private static final int TOP_DEVICES = 5;
+    // Failed hourly updates kept for the next flush while MongoDB is unreachable.
+    private static final int MAX_PENDING_UPDATES = 720;
+
+    // Singleton instance shared by every Model.
+    private static MetricsRollup instance = null;
+
+    // Counts since the last flush. Only the flush takes them out, with getAndSet, so none is lost.
+    private final Map<String, AtomicLong> deviceDeltas = new ConcurrentHashMap<>();
+    private final Map<String, AtomicLong> pairDeltas = new ConcurrentHashMap<>();
+    private final AtomicLong responseCountDelta = new AtomicLong();
+    private final AtomicLong responseTimeDelta = new AtomicLong();
+
+    // All-time totals, only touched by the flush thread.
+    private final Map<String, Long> deviceTotals = new HashMap<>();
+    private long responseCountTotal;
+    private long responseTimeTotal;
+
+    private final List<Document[]> pendingUpdates = new ArrayList<>();
+    // Whether the totals include the stored documents. Nothing is written before that.
+    private boolean loaded;
+    private volatile Snapshot snapshot = new Snapshot(Collections.emptyList(), 0, 0);
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "metrics-rollup");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Private constructor to enforce the singleton. Schedules the periodic flush, whose first
+     * run loads the totals.
+     */
+    private MetricsRollup() {
+        long flushSeconds = ServiceConfig.getLong("metrics.flushSeconds", 10);
+        scheduler.scheduleWithFixedDelay(this::flush, 0, flushSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Thread-safe accessor for the shared rollup.
+     *
+     * @return The shared rollup.
+     */
+    public static synchronized MetricsRollup getInstance() {
+        if (instance == null) {
+            instance = new MetricsRollup();
+        }
+        return instance;
+    }
+
+    /**
+     * Counts a client request.
+     *
+     * @param deviceName The device name parsed from the User-Agent header.
+     * @param fromCurrency The source currency, or null if the request was not a conversion.
+     * @param toCurrency The target currency, or null if the request was not a conversion.
+     */
+    public void recordClientRequest(String deviceName, String fromCurrency, String toCurrency) {
+        increment(deviceDeltas, escape(deviceName == null ? "Unknown" : deviceName), 1);
+        if (fromCurrency != null && toCurrency != null) {
+            increment(pairDeltas, escape(fromCurrency) + "/" + escape(toCurrency), 1);
+        }
+    }
+
+    /**
+     * Counts a service response.
+     *
+     * @param responseTime The response time in milliseconds.
+     */
+    public void recordServiceResponse(long responseTime) {
+        responseCountDelta.incrementAndGet();
+        responseTimeDelta.addAndGet(responseTime);
+    }
+
+    /**
+     * @return The totals as of the last flush.
+     */
+    public Snapshot snapshot() {
+        return snapshot;
+    }
+
+    /**
+     * Writes what is still counted in memory. Called when the web application stops.
+     */
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Rebuilds the totals from the hourly documents. On the first start the existing log rows are
+     * aggregated once into a backfill document, so the totals include the data from before the rollup.
+     * Retried on every flush until MongoDB is reachable.
+     */
+    private void load() {
+        try {
+            MongoCollection<Document> rollup = database().getCollection(COLLECTION);
+            if (rollup.countDocuments() == 0) {
+                rollup.insertOne(backfill());
+            }
+            // Sum into local maps first, so that a failed attempt leaves the totals untouched
+            Map<String, Long> devices = new HashMap<>();
+            long responseCount = 0;
+            long responseTime = 0;
+            for (Document hour : rollup.find()) {
+                addAll(devices, hour.get("devices", Document.class));
+                responseCount += number(hour.get("responseCount"));
+                responseTime += number(hour.get("responseTimeSum"));
+            }
+            devices.forEach((name, count) -> deviceTotals.merge(name, count, Long::sum));
+            responseCountTotal += responseCount;
+            responseTimeTotal += responseTime;
+            loaded = true;
+            publish();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Aggregates the existing log collections with the queries the dashboard used to run on every view.
+     */
+    private Document backfill() {
+        MongoDatabase database = database();
+        Document devices = new Document();
+        for (Document group : database.getCollection("client_request").aggregate(Arrays.asList(
+                Aggregates.group("$deviceName", Accumulators.sum("count", 1))))) {
+            String name = group.getString("_id");
+            devices.append(escape(name == null ? "Unknown" : name), group.getInteger("count"));
+        }
+        Document pairs = new Document();
+        for (Document pair : database.getCollection("conversion_requests").find()) {
+            String from = pair.getString("fromCurrency");
+            String to = pair.getString("toCurrency");
+            if (from != null && to != null) {
+                pairs.append(escape(from) + "/" + escape(to), number(pair.get("Count")));
+            }
+        }
+        Document responses = database.getCollection("service_response").aggregate(Arrays.asList(
+                Aggregates.group(null, Accumulators.sum("count", 1), Accumulators.sum("sum", "$responseTime")))).first();
+        return new Document("_id", BACKFILL_ID)
+                .append("devices", devices)
+                .append("pairs", pairs)
+                .append("responseCount", responses == null ? 0L : number(responses.get("count")))
+                .append("responseTimeSum", responses == null ? 0L : number(responses.get("sum")));
+    }
+
+    /**
+     * Moves the counts collected since the last flush into the totals and adds them to the
+     * document of the current hour.
+     */
+    private synchronized void flush() {
+        try {
+            if (!loaded) {
+                load();
+            }
+            Document inc = new Document();
+            drain(deviceDeltas, deviceTotals, "devices.", inc);
+            drain(pairDeltas, null, "pairs.", inc);
+            long count = responseCountDelta.getAndSet(0);
+            long time = responseTimeDelta.getAndSet(0);
+            if (count > 0) {
+                responseCountTotal += count;
+                responseTimeTotal += time;
+                inc.append("responseCount", count).append("responseTimeSum", time);
+            }
+            if (!inc.isEmpty()) {
+                long hour = System.currentTimeMillis() / HOUR_MILLIS * HOUR_MILLIS;
+                pendingUpdates.add(new Document[]{new Document("_id", new Date(hour)), new Document("$inc", inc)});
+                publish();
+            }
+            if (loaded) {
+                writePending();
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled flush
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Upserts the hourly updates that have not been written yet, oldest first.
+     */
+    private void writePending() {
+        MongoCollection<Document> rollup = database().getCollection(COLLECTION);
+        while (!pendingUpdates.isEmpty()) {
+            Document[] update = pendingUpdates.get(0);
+            try {
+                long start = System.nanoTime();
+                rollup.updateOne(update[0], update[1], new UpdateOptions().upsert(true));
+                LatencyMetrics.MONGO_UPSERT.recordNanos(System.nanoTime() - start);
+            } catch (RuntimeException e) {
+                // Keep the update for the next flush, dropping the oldest ones if MongoDB stays away
+                while (pendingUpdates.size() > MAX_PENDING_UPDATES) {
+                    pendingUpdates.remove(0);
+                }
+                e.printStackTrace();
+                return;
+            }
+            pendingUpdates.remove(0);
+        }
+    }
+
+    /**
+     * Recomputes the snapshot from the totals. Only the few distinct devices are scanned.
+     */
+    private void publish() {
+        List<Map.Entry<String, Long>> devices = new ArrayList<>(deviceTotals.entrySet());
+        devices.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        List<String> topDevices = new ArrayList<>();
+        for (int i = 0; i < devices.size() && i < TOP_DEVICES; i++) {
+            topDevices.add(unescape(devices.get(i).getKey()));
+        }
+        snapshot = new Snapshot(Collections.unmodifiableList(topDevices), responseCountTotal, responseTimeTotal);
+    }
+
+    private static void increment(Map<String, AtomicLong> deltas, String key, long amount) {
+        deltas.computeIfAbsent(key, k -> new AtomicLong()).addAndGet(amount);
+    }
+
+    private static void drain(Map<String, AtomicLong> deltas, Map<String, Long> totals, String prefix, Document inc) {
+        for (Map.Entry<String, AtomicLong> delta : deltas.entrySet()) {
+            long amount = delta.getValue().getAndSet(0);
+            if (amount > 0) {
+                if (totals != null) {
+                    totals.merge(delta.getKey(), amount, Long::sum);
+                }
+                inc.append(prefix + delta.getKey(), amount);
+            }
+        }
+    }
+
+    private static void addAll(Map<String, Long> totals, Document counts) {
+        if (counts != null) {
+            for (Map.Entry<String, Object> count : counts.entrySet()) {
+                totals.merge(count.getKey(), number(count.getValue()), Long::sum);
+            }
+        }
+    }
+
+    private static long number(Object value) {
+        return value instanceof Number ? ((Number) value).longValue() : 0L;
+    }
+
+    /**
+     * Escapes the characters that may not appear in a field name or that separate a pair.
+     */
+    private static String escape(String name) {
+        return name.replace("%", "%25").replace(".", "%2E").replace("$", "%24").replace("/", "%2F");
+    }
+
+    private static String unescape(String name) {
+        return name.replace("%2F", "/").replace("%24", "$").replace("%2E", ".").replace("%25", "%");
+    }
+
+    private static MongoDatabase database() {
+        return MongoConnectionInstance.getInstance().getDatabase("Project4");
+    }
+}
@@ -0,0 +1,215 @@
+/**
+ * Servlet exporting the service metrics in the Prometheus text exposition format.
+ * Covers requests by operation and status, request/upstream/Mongo latency histograms, upstream
+ * payload sizes and connection reuse, cache hit counts and the telemetry queues.
+ * A scrape reads the live counters and renders them into one reused buffer, so apart from that
+ * buffer growing on the first scrapes it allocates nothing.
+ *
+ * Author: Aditya Aayush
+ */
+
+package ds.webservice;
+
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebServlet;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+import java.util.List;
+
+// Define the servlet URL pattern for the scrape endpoint
+@WebServlet("/metrics")
+public class MetricsServlet extends HttpServlet {
+
+    // Histogram bucket bounds in seconds, with the matching bound in microseconds.
+    private static final String[] BOUND_LABELS = {"0.001", "0.0025", "0.005", "0.01", "0.025", "0.05",
+            "0.1", "0.25", "0.5", "1", "2.5", "5", "10", "30"};
+    private static final long[] BOUND_MICROS = {1_000, 2_500, 5_000, 10_000, 25_000, 50_000,
+            100_000, 250_000, 500_000, 1_000_000, 2_500_000, 5_000_000, 10_000_000, 30_000_000};
+
+    // Model giving access to the shared caches and clients
+    Model model = null;
+    // Output buffer reused by every scrape, guarded by the servlet monitor
+    private final MetricsBuffer buffer = new MetricsBuffer();
+
+    // Initialize the servlet and the model object
+    public void init() throws ServletException {
+        super.init();
+        model = new Model();
+    }
+
+    // Handle GET requests from the scraper
+    @Override
+    protected synchronized void doGet(HttpServletRequest request, HttpServletResponse response)
+            throws ServletException, IOException {
+        buffer.reset();
+        writeRequests();
+        writeHistograms("currency_request_duration_seconds", "Time from admission until the API response is written.", "api.", "operation");
+        writeHistograms("currency_upstream_duration_seconds", "Time until an upstream response or failure arrives.", "upstream.", "call");
+        writeHistograms("currency_mongo_write_duration_seconds", "Duration of MongoDB writes done off the request path.", "mongo.", "operation");
+        writeUpstream();
+        writeCaches();
+        writeTelemetry();
+        writeSchema();
+
+        response.setContentType("text/plain; version=0.0.4; charset=utf-8");
+        response.setContentLength(buffer.size());
+        buffer.writeTo(response.getOutputStream());
+    }
+
+    // Responses by operation and status, plus admission control
+    private void writeRequests() {
+        header("currency_http_requests_total", "counter", "API responses by operation and status code.");
+        List<LatencyHistogram> histograms = LatencyMetrics.all();
+        for (int i = 0; i < histograms.size(); i++) {
+            for (int status = 0; status <= LatencyMetrics.MAX_STATUS; status++) {
+                long count = LatencyMetrics.getStatusCount(i, status);
+                if (count > 0) {
+                    buffer.append("currency_http_requests_total{operation=\"").append(histograms.get(i).getName())
+                            .append("\",status=\"").append(status).append("\"} ").append(count).append('\n');
+                }
+            }
+        }
+        header("currency_http_rejected_total", "counter", "API requests rejected with 503 because of the in-flight limit.");
+        sample("currency_http_rejected_total", AsyncPipeline.getRejected());
+        header("currency_http_in_flight", "gauge", "API requests currently being processed.");
+        sample("currency_http_in_flight", AsyncPipeline.getInFlight());
+    }
+
+    // One histogram series per latency histogram whose name starts with the prefix
+    private void writeHistograms(String family, String help, String prefix, String label) {
+        header(family, "histogram", help);
+        List<LatencyHistogram> histograms = LatencyMetrics.all();
+        for (int i = 0; i < histograms.size(); i++) {
+            LatencyHistogram histogram = histograms.get(i);
+            if (!histogram.getName().startsWith(prefix)) {
+                continue;
+            }
+            // Buckets are cumulative: walk the fine buckets once and emit at every bound
+            long cumulative = 0;
+            int bucket = 0;
+            for (int b = 0; b < BOUND_MICROS.length; b++) {
+                while (bucket < LatencyHistogram.BUCKETS && LatencyHistogram.highestValueIn(bucket) <= BOUND_MICROS[b]) {
+                    cumulative += histogram.getTotal(bucket++);
+                }
+                series(family, "_bucket", label, histogram.getName()).append(",le=\"").append(BOUND_LABELS[b])
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            long count = histogram.getTotalCount();
+            series(family, "_bucket", label, histogram.getName()).append(",le=\"+Inf\"} ").append(count).append('\n');
+            series(family, "_sum", label, histogram.getName()).append("} ").append(histogram.getTotalMicros() / 1e6).append('\n');
+            series(family, "_count", label, histogram.getName()).append("} ").append(count).append('\n');
+        }
+    }
+
+    // Upstream payload sizes, connection reuse and request coalescing
+    private void writeUpstream() {
+        header("currency_upstream_response_bytes_total", "counter", "Bytes received in upstream response bodies.");
+        List<LatencyHistogram> histograms = LatencyMetrics.all();
+        for (int i = 0; i < histograms.size(); i++) {
+            if (histograms.get(i).getName().startsWith("upstream.")) {
+                series("currency_upstream_response_bytes_total", "", "call", histograms.get(i).getName())
+                        .append("} ").append(LatencyMetrics.getPayloadSize(i)).append('\n');
+            }
+        }
+        UpstreamClient upstream = model.getUpstreamClient();
+        header("currency_upstream_requests_total", "counter", "Requests sent to the upstream API.");
+        sample("currency_upstream_requests_total", upstream.getRequests());
+        header("currency_upstream_tls_handshakes_total", "counter", "TLS handshakes with the upstream API.");
+        sample("currency_upstream_tls_handshakes_total", upstream.getHandshakes());
+        header("currency_upstream_http2_responses_total", "counter", "Upstream responses received over HTTP/2.");
+        sample("currency_upstream_http2_responses_total", upstream.getHttp2Responses());
+        SingleFlight flights = model.getUpstreamFlights();
+        header("currency_upstream_coalesced_total", "counter", "Requests that joined an identical upstream request already in flight.");
+        sample("currency_upstream_coalesced_total", flights.getCoalesced());
+    }
+
+    // Hit and miss counts of the in-memory caches
+    private void writeCaches() {
+        RateCache rates = model.getLatestRateCache();
+        UserAgentParser userAgents = model.getUserAgentParser();
+        header("currency_cache_hits_total", "counter", "Cache lookups answered from memory.");
+        cacheSample("currency_cache_hits_total", "latest_rates", rates.getHits());
+        cacheSample("currency_cache_hits_total", "user_agent", userAgents.getHits());
+        header("currency_cache_misses_total", "counter", "Cache lookups that had to compute or fetch the value.");
+        cacheSample("currency_cache_misses_total", "latest_rates", rates.getMisses());
+        cacheSample("currency_cache_misses_total", "user_agent", userAgents.getMisses());
+        header("currency_cache_entries", "gauge", "Entries currently held by the cache.");
+        cacheSample("currency_cache_entries", "latest_rates", rates.size());
+        cacheSample("currency_cache_entries", "user_agent", userAgents.size());
+    }
+
+    // Queue depth and outcome counts of the telemetry writer
+    private void writeTelemetry() {
+        TelemetryWriter telemetry = model.getTelemetry();
+        String[] collections = TelemetryWriter.COLLECTIONS;
+        header("currency_telemetry_queue_depth", "gauge", "Telemetry documents waiting to be written.");
+        for (String collection : collections) {
+            telemetrySample("currency_telemetry_queue_depth", collection, telemetry.getQueueDepth(collection));
+        }
+        header("currency_telemetry_written_total", "counter", "Telemetry documents written to the telemetry sink.");
+        for (String collection : collections) {
+            telemetrySample("currency_telemetry_written_total", collection, telemetry.getWritten(collection));
+        }
+        header("currency_telemetry_dropped_total", "counter", "Telemetry documents dropped because the queue was full.");
+        for (String collection : collections) {
+            telemetrySample("currency_telemetry_dropped_total", collection, telemetry.getDropped(collection));
+        }
+        header("currency_telemetry_sampled_out_total", "counter", "Telemetry documents discarded because their request was not sampled.");
+        for (String collection : collections) {
+            telemetrySample("currency_telemetry_sampled_out_total", collection, telemetry.getSampledOut(collection));
+        }
+        header("currency_telemetry_failed_total", "counter", "Telemetry documents lost because the write failed.");
+        for (String collection : collections) {
+            telemetrySample("currency_telemetry_failed_total", collection, telemetry.getFailed(collection));
+        }
+        // State of the MongoDB failover, when the failover sink is configured
+        TelemetrySink sink = telemetry.getSink();
+        if (sink instanceof FailoverTelemetrySink) {
+            FailoverTelemetrySink failover = (FailoverTelemetrySink) sink;
+            header("currency_telemetry_failed_over", "gauge", "1 while telemetry is written to local segment files instead of MongoDB.");
+            sample("currency_telemetry_failed_over", failover.isFailedOver() ? 1 : 0);
+            header("currency_telemetry_failovers_total", "counter", "Switches from MongoDB to the local segment files.");
+            sample("currency_telemetry_failovers_total", failover.getFailovers());
+            FileTelemetrySink spool = failover.getFallback();
+            header("currency_telemetry_spool_bytes", "gauge", "Bytes of spooled telemetry waiting to be replayed.");
+            sample("currency_telemetry_spool_bytes", spool.getSpoolBytes());
+            header("currency_telemetry_replayed_total", "counter", "Spooled telemetry documents replayed into MongoDB.");
+            sample("currency_telemetry_replayed_total", spool.getReplayed());
+        }
+    }
+
+    // Outcome of the startup index creation
+    private void writeSchema() {
+        header("currency_schema_bootstrap_finished", "gauge", "1 once the startup index creation has ended.");
+        sample("currency_schema_bootstrap_finished", SchemaBootstrap.isFinished() ? 1 : 0);
+        header("currency_schema_bootstrap_failures", "gauge", "Indexes or collections the startup run could not create.");
+        sample("currency_schema_bootstrap_failures", SchemaBootstrap.getFailures().size());
+        header("currency_schema_pair_index_ready", "gauge", "1 if the unique conversion pair index exists; without it pair counts can be duplicated.");
+        sample("currency_schema_pair_index_ready", SchemaBootstrap.isPairIndexReady() ? 1 : 0);
+    }
+
+    private void header(String name, String type, String help) {
+        buffer.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        buffer.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+    }
+
+    private void sample(String name, long value) {
+        buffer.append(name).append(' ').append(value).append('\n');
+    }
+
+    // Starts a labelled sample, leaving the label set open for more labels
+    private MetricsBuffer series(String family, String suffix, String label, String value) {
+        return buffer.append(family).append(suffix).append('{').append(label).append("=\"").append(value).append('"');
+    }
+
+    private void cacheSample(String name, String cache, long value) {
+        series(name, "", "cache", cache).append("} ").append(value).append('\n');
+    }
+
+    private void telemetrySample(String name, String collection, long value) {
+        series(name, "", "collection", collection).append("} ").append(value).append('\n');
+    }
+}
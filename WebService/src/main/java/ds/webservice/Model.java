@@ -8,37 +8,60 @@
 
 package ds.webservice;
 
+import com.mongodb.client.FindIterable;
 import com.mongodb.client.MongoCollection;
-import com.mongodb.client.model.Accumulators;
-import com.mongodb.client.model.Aggregates;
-import com.mongodb.client.model.Sorts;
+import com.mongodb.client.model.Filters;
 import jakarta.servlet.http.HttpServletRequest;
 import org.bson.Document;
 import org.bson.conversions.Bson;
+import org.bson.types.ObjectId;
 import org.json.JSONArray;
 import org.json.JSONObject;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.InetAddress;
-import java.net.URI;
-import java.net.URISyntaxException;
 import java.net.UnknownHostException;
-import java.net.http.HttpClient;
-import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.time.format.DateTimeParseException;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
 
 
 import com.mongodb.client.MongoClient;
 import com.mongodb.client.MongoDatabase;
 
-import nl.basjes.parse.useragent.UserAgent;
-import nl.basjes.parse.useragent.UserAgentAnalyzer;
-
 import static com.mongodb.client.model.Indexes.descending;
 
 public final class Model {
 
+    // Latest rate tables keyed by base currency, shared by every Model instance
+    private static final RateCache latestRateCache = new RateCache(ServiceConfig.getInt("cache.maxEntries", 64));
+    // Cross-rate matrix derived from the cached EUR table, replaced on every new publication
+    private static volatile RateMatrix rateMatrix;
+    // Local copy of all published historical rates
+    private static final HistoricalRateStore historicalStore = HistoricalRateStore.getInstance();
+    // Coalesces concurrent identical upstream requests, keyed by URL
+    private static final SingleFlight upstreamFlights = new SingleFlight();
+    // Pooled HTTP/2 client shared by every upstream request
+    private static final UpstreamClient upstreamClient = UpstreamClient.getInstance();
+    // Batching writer for the telemetry collections
+    private static final TelemetryWriter telemetry = TelemetryWriter.getInstance();
+    // User-Agent analyzer built once, with a cache of parsed header strings
+    private static final UserAgentParser userAgentParser = UserAgentParser.getInstance();
+    // Dashboard metrics counted at ingest time
+    private static final MetricsRollup metrics = MetricsRollup.getInstance();
+    // Request counts per conversion pair, flushed to MongoDB in bulk
+    private static final PairPopularity pairPopularity = PairPopularity.getInstance();
+    // Address of this host, resolved once instead of on every upstream response
+    private static final String localAddress = resolveLocalAddress();
+    // Longest currency and value lists stored in a telemetry document, the averages still cover every value
+    private static final int MAX_STORED_VALUES = ServiceConfig.getInt("telemetry.maxArrayLength", 50);
+
     private MongoDatabase database;
 
     /**
@@ -61,7 +84,8 @@ public final class Model {
     public void inductClientRequest(HttpServletRequest request) {
         // Extract request parameters for logging
         String date = request.getParameter("date");
-        String toDate = request.getParameter("toDate");
+        // The end of a range may be given as "end" or, by older clients, as "toDate"
+        String toDate = request.getParameter("end") != null ? request.getParameter("end") : request.getParameter("toDate");
         String fromCurrency = request.getParameter("from");
         String toCurrency = request.getParameter("to");
 
@@ -70,27 +94,24 @@ public final class Model {
         String httpMethod = request.getMethod();
         String ipAddress = request.getRemoteAddr();
 
-        // Extract user agent details using UserAgentAnalyzer
-        String userAgent = request.getHeader("User-Agent");
-        UserAgentAnalyzer userAgentAnalyzer = UserAgentAnalyzer.newBuilder().build();
-        UserAgent agent = userAgentAnalyzer.parse(userAgent);
-        String deviceName = agent.getValue("DeviceName");
-        String operatingSystem = agent.getValue("OperatingSystemNameVersionMajor");
-
-        // Perform logging in a separate thread to not block the main request processing thread
-        new Thread(() -> {
-            // Log currency conversion pairs if applicable
-            if (toCurrency != null && fromCurrency != null) {
-                addConversionPair(fromCurrency, toCurrency);
-            }
-            // Register the client request details in MongoDB
-            registerClientRequest(endPoint, httpMethod, fromCurrency, toCurrency, date, toDate, deviceName, operatingSystem, ipAddress);
-        }).start();
+        // Extract user agent details using the shared, memoizing parser
+        UserAgentParser.Result agent = userAgentParser.parse(request.getHeader("User-Agent"));
+        String deviceName = agent.getDeviceName();
+        String operatingSystem = agent.getOperatingSystem();
+
+        // Count the device and pair for the dashboard metrics
+        metrics.recordClientRequest(deviceName, fromCurrency, toCurrency);
+        // Count currency conversion pairs in memory, they are written to MongoDB in bulk
+        if (toCurrency != null && fromCurrency != null) {
+            pairPopularity.increment(fromCurrency, toCurrency);
+        }
+        // Queue the client request details for the batching telemetry writer
+        registerClientRequest(endPoint, httpMethod, fromCurrency, toCurrency, date, toDate, deviceName, operatingSystem, ipAddress);
     }
 
     /**
      * Logs details of the client request into the MongoDB collection "client_request".
-     * This method is called within a separate thread initiated by inductClientRequest.
+     * The document is only queued here, the telemetry writer inserts it with the next batch.
      *
      * @param endPoint The request endpoint.
      * @param httpMethod The HTTP method used for the request (e.g., GET, POST).
@@ -103,9 +124,6 @@ public final class Model {
      * @param ipAddress The IP address from which the request originated.
      */
     private void registerClientRequest(String endPoint, String httpMethod, String fromCurrency, String toCurrency, String date, String toDate, String deviceName, String operatingSystem, String ipAddress) {
-        // Access the "client_request" collection
-        MongoCollection<Document> collection = database.getCollection("client_request");
-
         // Create and populate the document to log
         Document doc = new Document()
                 .append("endPoint", endPoint)
@@ -119,24 +137,24 @@ public final class Model {
                         .append("date", date)
                         .append("toDate", toDate));
 
-        // Insert the document into the collection
-        collection.insertOne(doc);
+        // Queue the document for the "client_request" collection
+        telemetry.write("client_request", doc);
     }
 
     /**
-     * Retrieves all client requests logged in the MongoDB collection "client_request".
+     * Retrieves one page of the client requests logged in the MongoDB collection "client_request",
+     * newest first.
      *
-     * @return A list of Document objects, each representing a logged client request.
+     * @param window The page size and time window of the dashboard view.
+     * @param before The _id to continue before, or null for the first page.
+     * @return A lazy page of Document objects, each representing a logged client request.
      */
-    public List<Document> getAllClientRequests() {
-        // Access the "client_request" collection
-        MongoCollection<Document> collection = database.getCollection("client_request");
-        List<Document> clientRequests = new ArrayList<>();
-
-        // Iterate over the collection, extracting and transforming each document
-        for (Document doc : collection.find()) {
+    public LogPage getClientRequests(LogPage.Window window, ObjectId before) {
+        // Flatten each stored document into one dashboard row
+        return page("client_request", window, before, doc -> {
             Document requestData = (Document) doc.get("requestData");
-            Document row = new Document()
+            return new Document()
+                    .append("requestId", doc.getString("requestId"))
                     .append("endPoint", doc.getString("endPoint"))
                     .append("httpMethod", doc.getString("httpMethod"))
                     .append("deviceName", doc.getString("deviceName"))
@@ -146,12 +164,7 @@ public final class Model {
                     .append("toCurrency", requestData != null ? requestData.getString("toCurrency") : null)
                     .append("date", requestData != null ? requestData.getString("date") : null)
                     .append("toDate", requestData != null ? requestData.getString("toDate") : null);
-
-            // Add the transformed document to the results list
-            clientRequests.add(row);
-        }
-
-        return clientRequests;
+        });
     }
 
 
@@ -161,38 +174,37 @@ public final class Model {
      * the endpoint accessed, timestamps, query parameters including any currency conversion
      * parameters, and the IP address of the requester.
      *
+     * @param requestContext The API request that caused the upstream request, or null.
      * @param httpRequest The HTTP method of the request (e.g., GET, POST).
      * @param endPoint The endpoint URI accessed by the request.
-     * @param timeStamp The timestamp when the request was received.
+     * @param timeStamp The time the request was sent, in epoch milliseconds.
      * @param toDate The end date parameter for queries that require a date range, if applicable.
      * @param from The source currency code for currency conversion requests, if applicable.
      * @param to The target currency code for currency conversion requests, if applicable.
      * @param ipAddress The IP address from which the request originated.
      */
-    private void registerServerRequest(String httpRequest, String endPoint, String timeStamp, String toDate, String from, String to, String ipAddress) {
-        MongoCollection<Document> collection = database.getCollection("server_request");
-        Document doc = new Document("timestamp", timeStamp)
+    private void registerServerRequest(RequestContext requestContext, String httpRequest, String endPoint, long timeStamp, String toDate, String from, String to, String ipAddress) {
+        Document doc = new Document("timestamp", new Date(timeStamp))
                 .append("endpoint", endPoint)
                 .append("httpMethod", httpRequest)
                 .append("queryParameters", new Document()
-                        .append("toDate", toDate)
+                        .append("toDate", TelemetrySchema.toDate(toDate))
                         .append("from", from)
                         .append("to", to))
                 .append("ipAddress", ipAddress);
-        collection.insertOne(doc);
+        telemetry.write("server_request", doc, requestContext);
     }
 
     /**
-     * Retrieves all server requests logged in the MongoDB collection. This can be used for
-     * analytical purposes or to generate reports on server activity.
+     * Retrieves one page of the server requests logged in the MongoDB collection, newest first.
+     * This can be used for analytical purposes or to generate reports on server activity.
      *
-     * @return A list of Document objects where each Document represents a logged server request.
+     * @param window The page size and time window of the dashboard view.
+     * @param before The _id to continue before, or null for the first page.
+     * @return A lazy page of Document objects where each Document represents a logged server request.
      */
-    public List<Document> getAllServerRequests() {
-        MongoCollection<Document> collection = database.getCollection("server_request");
-        List<Document> serverRequests = new ArrayList<>();
-        collection.find().into(serverRequests);
-        return serverRequests;
+    public LogPage getServerRequests(LogPage.Window window, ObjectId before) {
+        return page("server_request", window, before, doc -> doc);
     }
 
     /**
@@ -201,87 +213,65 @@ public final class Model {
      * the responses generated by the server, including response time, HTTP status codes, and
      * payload sizes among other data.
      *
+     * @param requestContext The API request that caused the upstream request, or null.
      * @param responseTime The time taken by the server to respond, measured in milliseconds.
      * @param statusCode The HTTP status code of the response.
      * @param payloadSize The size of the response payload, in bytes.
      * @param base The base currency for requests involving currency conversion.
-     * @param startDate The starting date for requests that involve a range of dates.
-     * @param endDate The ending date for date range requests.
+     * @param startDate The starting date (yyyy-MM-dd) for requests that involve a range of dates.
+     * @param endDate The ending date (yyyy-MM-dd) for date range requests.
      * @param numberOfValues The number of currency values returned in the response, applicable to currency conversion requests.
-     * @param averageRate The average currency conversion rate, if applicable.
-     * @param toCurrencies A list of target currencies in the response, for conversion requests.
-     * @param currencyValues A list of conversion values corresponding to the 'toCurrencies' list.
+     * @param averageRate The average currency conversion rate, or NaN if not applicable.
+     * @param toCurrencies A list of target currencies in the response, for conversion requests. Stored up to the length cap.
+     * @param currencyValues A list of conversion values corresponding to the 'toCurrencies' list. Stored up to the length cap.
      */
-    private void registerServerResponse(String responseTime, String statusCode, String payloadSize, String base, String startDate, String endDate, String numberOfValues, String averageRate, List<String> toCurrencies, List<String> currencyValues) {
-        MongoCollection<Document> collection = database.getCollection("server_response");
+    private void registerServerResponse(RequestContext requestContext, long responseTime, int statusCode, int payloadSize, String base, String startDate, String endDate, int numberOfValues, double averageRate, List<String> toCurrencies, List<Double> currencyValues) {
         Document responseData = new Document("base", base)
-                .append("start_Date", startDate)
-                .append("end_Date", endDate)
+                .append("start_Date", TelemetrySchema.toDate(startDate))
+                .append("end_Date", TelemetrySchema.toDate(endDate))
                 .append("NumberOfRateValues", numberOfValues)
-                .append("AverageRate", averageRate)
-                .append("toCurrencies", toCurrencies)
-                .append("toCurrencyValues", currencyValues);
+                .append("AverageRate", TelemetrySchema.toDouble(averageRate))
+                .append("toCurrencies", capped(toCurrencies))
+                .append("toCurrencyValues", capped(currencyValues));
         Document doc = new Document("responseTime", responseTime)
                 .append("statusCode", statusCode)
                 .append("payloadSize", payloadSize)
                 .append("responseData", responseData);
-        collection.insertOne(doc);
+        telemetry.write("server_response", doc, requestContext);
     }
 
 
     /**
-     * Retrieves all server responses stored in MongoDB. This method is key for analyzing
-     * the server's response patterns, efficiency, and to detect any anomalies or issues
-     * in server behavior and performance.
+     * Retrieves one page of the server responses stored in MongoDB, newest first. This method is
+     * key for analyzing the server's response patterns, efficiency, and to detect any anomalies
+     * or issues in server behavior and performance.
      *
-     * @return A List of Document objects, each encapsulating a server response.
+     * @param window The page size and time window of the dashboard view.
+     * @param before The _id to continue before, or null for the first page.
+     * @return A lazy page of Document objects, each encapsulating a server response.
      */
-    public List<Document> getAllServerResponses() {
-        // Access the 'server_response' collection within the database.
-        MongoCollection<Document> collection = database.getCollection("server_response");
-        List<Document> serverResponses = new ArrayList<>();
-
-        // Iterate over each document (server response) in the collection.
-        for (Document doc : collection.find()) {
-            // Extract the 'responseData' sub-document, which contains detailed response metrics.
-            Document responseData = doc.get("responseData", Document.class);
-            if (responseData != null) {
-                // Extract lists of 'toCurrencies' and 'currencyValues' from the responseData.
-                List<String> toCurrencies = responseData.getList("toCurrencies", String.class);
-                List<String> currencyValues = responseData.getList("toCurrencyValues", String.class);
-
-                // Join the lists into comma-separated strings for easier presentation and analysis.
-                String toCurrenciesStr = String.join(", ", toCurrencies);
-                String currencyValuesStr = String.join(", ", currencyValues);
-
-                // Update the 'responseData' document with the comma-separated strings.
-                responseData.append("toCurrencies", toCurrenciesStr)
-                        .append("toCurrencyValues", currencyValuesStr);
-            }
-            // Add the enhanced document to the list of server responses.
-            serverResponses.add(doc);
-        }
-
-        return serverResponses;
+    public LogPage getServerResponses(LogPage.Window window, ObjectId before) {
+        return page("server_response", window, before, Model::joinCurrencyLists);
     }
 
     /**
      * Processes and logs the details of service responses into MongoDB asynchronously.
      * This includes a variety of metrics such as response time, status code, and specifics
-     * of the request type (e.g., rate queries, currency list queries).
+     * of the request type (e.g., rate queries, currency list queries). Time series use the
+     * overload taking the series itself.
      *
      * @param responseTime The duration (in milliseconds) it took to process the request and generate a response.
      * @param statusCode The HTTP status code of the response.
      * @param requestType The type of request being processed (e.g., "getRate", "getCurrencies").
      * @param jsonObject The response data in JSON format for single response scenarios.
-     * @param jsonArray The response data in JSON format for multiple response scenarios, such as time series data.
+     * @param jsonArray The response data in JSON format for multiple response scenarios, such as the currency list.
      */
     public void inductServiceResponse(long responseTime, int statusCode, String requestType, JSONObject jsonObject, JSONArray jsonArray) {
         // Initialize metrics for analysis.
         int numberOfValues = 0;
         double averageValue = 0;
         List<String> toCurrencies = new ArrayList<>();
-        List<String> currencyValues = new ArrayList<>();
+        List<Double> currencyValues = new ArrayList<>();
 
         // Process the response based on the request type.
         switch (requestType) {
@@ -292,7 +282,7 @@ public final class Model {
                 String firstKey = rates.keys().next();
                 averageValue = rates.getDouble(firstKey);
                 toCurrencies.add(firstKey);
-                currencyValues.add(String.valueOf(rates.getDouble(firstKey)));
+                currencyValues.add(averageValue);
                 break;
             case "getCurrencies":
                 // For currency list queries, populate the 'toCurrencies' list.
@@ -302,36 +292,44 @@ public final class Model {
                 // No specific currency values to log for this request type.
                 currencyValues = null;
                 break;
-            case "timeSeries":
-                // For time series data, aggregate and compute the average of the rates provided.
-                double sum = 0;
-                for (int i = 0; i < jsonArray.length(); i++) {
-                    double rate = jsonArray.getDouble(i);
-                    sum += rate;
-                    currencyValues.add(String.valueOf(rate));
-                }
-                numberOfValues = jsonArray.length();
-                averageValue = sum / numberOfValues;
-                break;
             case "historical":
                 // For historical rate queries, simply log the rate provided.
                 numberOfValues = 1;
                 averageValue = jsonObject.getDouble("rate");
-                currencyValues.add(String.valueOf(averageValue));
+                currencyValues.add(averageValue);
                 // No specific currencies to log for this request type.
                 toCurrencies = null;
                 break;
         }
 
-        // Asynchronously log the processed response details into MongoDB for future analysis.
-        int finalNumberOfValues = numberOfValues;
-        double finalAverageValue = averageValue;
-        List<String> finalToCurrencies = toCurrencies;
-        List<String> finalCurrencyValues = currencyValues;
-        new Thread(() -> {
-            registerServiceResponse(responseTime, String.valueOf(statusCode), String.valueOf(finalNumberOfValues),
-                    String.valueOf(finalAverageValue), finalToCurrencies, finalCurrencyValues);
-        }).start();
+        // Count the response time for the dashboard metrics and queue the details for MongoDB for future analysis.
+        metrics.recordServiceResponse(responseTime);
+        registerServiceResponse(responseTime, statusCode, numberOfValues, averageValue, toCurrencies, currencyValues);
+    }
+
+    /**
+     * Logs the service response of a time series request. The average is computed over the
+     * primitive rates directly; only the stored values, at most MAX_STORED_VALUES, are boxed.
+     *
+     * @param responseTime The duration (in milliseconds) it took to process the request and generate a response.
+     * @param statusCode The HTTP status code of the response.
+     * @param series The rates sent to the client.
+     */
+    public void inductServiceResponse(long responseTime, int statusCode, HistoricalRateStore.Series series) {
+        double[] rates = series.getRates();
+        int numberOfValues = series.length();
+        double sum = 0;
+        List<Double> currencyValues = new ArrayList<>(Math.min(numberOfValues, MAX_STORED_VALUES));
+        for (int i = 0; i < numberOfValues; i++) {
+            sum += rates[i];
+            if (i < MAX_STORED_VALUES) {
+                currencyValues.add(rates[i]);
+            }
+        }
+        double averageValue = numberOfValues == 0 ? Double.NaN : sum / numberOfValues;
+
+        metrics.recordServiceResponse(responseTime);
+        registerServiceResponse(responseTime, statusCode, numberOfValues, averageValue, new ArrayList<>(), currencyValues);
     }
 
     /**
@@ -343,323 +341,536 @@ public final class Model {
      * @param responseTime The time taken by the server to respond, in milliseconds.
      * @param statusCode The HTTP status code of the response.
      * @param numberOfValues The number of currency conversion rates returned, if applicable.
-     * @param averageRate The average rate of currency conversion calculated, if applicable.
-     * @param toCurrencies A list of target currencies for the request, useful for currency conversion requests.
-     * @param currencyValues A list of currency conversion values corresponding to each target currency, if applicable.
+     * @param averageRate The average rate of currency conversion calculated, or NaN if not applicable.
+     * @param toCurrencies A list of target currencies for the request, useful for currency conversion requests. Stored up to the length cap.
+     * @param currencyValues A list of currency conversion values corresponding to each target currency, if applicable. Stored up to the length cap.
      */
-    private void registerServiceResponse(long responseTime, String statusCode, String numberOfValues, String averageRate, List<String> toCurrencies, List<String> currencyValues) {
-        MongoCollection<Document> collection = database.getCollection("service_response");
+    private void registerServiceResponse(long responseTime, int statusCode, int numberOfValues, double averageRate, List<String> toCurrencies, List<Double> currencyValues) {
         Document responseData = new Document("NumberOfRateValues", numberOfValues)
-                .append("AverageRate", averageRate)
-                .append("toCurrencies", toCurrencies)
-                .append("toCurrencyValues", currencyValues);
+                .append("AverageRate", TelemetrySchema.toDouble(averageRate))
+                .append("toCurrencies", capped(toCurrencies))
+                .append("toCurrencyValues", capped(currencyValues));
         Document doc = new Document("responseTime", responseTime)
                 .append("statusCode", statusCode)
                 .append("responseData", responseData);
-        collection.insertOne(doc);
+        // Attach the trace of the request, complete now that the response has been written
+        RequestContext requestContext = RequestContext.current();
+        if (requestContext != null) {
+            doc.append("spans", requestContext.getSpans());
+        }
+        telemetry.write("service_response", doc, requestContext);
     }
 
     /**
-     * Fetches and compiles a list of all service response logs stored in MongoDB.
+     * Fetches one page of the service response logs stored in MongoDB, newest first.
      * This is essential for performing detailed performance analysis and for conducting
      * audits of the service's historical response data. Each document retrieved represents
      * a unique response log entry, including metrics such as response time, status code, and
      * specific data related to currency conversion responses.
      *
-     * @return A List of Document objects, each representing a detailed record of a service response.
+     * @param window The page size and time window of the dashboard view.
+     * @param before The _id to continue before, or null for the first page.
+     * @return A lazy page of Document objects, each representing a detailed record of a service response.
      */
-    public List<Document> getAllServiceResponses() {
-        MongoCollection<Document> collection = database.getCollection("service_response");
-        List<Document> serviceResponses = new ArrayList<>();
+    public LogPage getServiceResponses(LogPage.Window window, ObjectId before) {
+        return page("service_response", window, before, doc -> formatSpans(joinCurrencyLists(doc)));
+    }
 
-        for (Document doc : collection.find()) {
-            Document responseData = doc.get("responseData", Document.class);
-            if (responseData != null) {
-                // Prepare and format lists of currencies and conversion values for readability
-                List<String> toCurrencies = responseData.getList("toCurrencies", String.class, Collections.emptyList());
-                List<String> currencyValues = responseData.getList("toCurrencyValues", String.class, Collections.emptyList());
+    /**
+     * Builds the keyset-paginated query behind one dashboard table. Rows are sorted by descending
+     * _id, restricted to ids older than the cursor and newer than the start of the time window,
+     * and limited to one page, so the cost does not depend on how large the collection is.
+     *
+     * @param collectionName The log collection, also used as the name of the cursor parameter.
+     * @param window The page size and time window of the dashboard view.
+     * @param before The _id to continue before, or null for the first page.
+     * @param transform Turns a stored document into the row shown on the dashboard.
+     * @return The lazy page.
+     */
+    private LogPage page(String collectionName, LogPage.Window window, ObjectId before, Function<Document, Document> transform) {
+        List<Bson> filters = new ArrayList<>();
+        if (before != null) {
+            filters.add(Filters.lt("_id", before));
+        }
+        if (window.getSince() != null) {
+            filters.add(Filters.gte("_id", window.getSince()));
+        }
+        Bson filter = filters.isEmpty() ? new Document() : Filters.and(filters);
+        FindIterable<Document> documents = database.getCollection(collectionName).find(filter)
+                .sort(descending("_id"))
+                .limit(window.getPageSize())
+                .batchSize(window.getPageSize());
+        return new LogPage(collectionName, documents, transform, window.getPageSize());
+    }
+
+    /**
+     * Joins the currency lists of a response log into comma-separated strings for easier
+     * presentation on the dashboard. Works for both the string values of schema version 1 and
+     * the numbers of version 2.
+     *
+     * @param doc The stored response document.
+     * @return The same document with its lists replaced by strings.
+     */
+    private static Document joinCurrencyLists(Document doc) {
+        // Extract the 'responseData' sub-document, which contains detailed response metrics.
+        Document responseData = doc.get("responseData", Document.class);
+        if (responseData != null) {
+            responseData.append("toCurrencies", joinList(responseData.get("toCurrencies")))
+                    .append("toCurrencyValues", joinList(responseData.get("toCurrencyValues")));
+        }
+        return doc;
+    }
 
-                String toCurrenciesStr = String.join(", ", toCurrencies);
-                String currencyValuesStr = String.join(", ", currencyValues);
+    /**
+     * Cuts a list down to the stored length cap. NumberOfRateValues keeps the full count.
+     *
+     * @param values The list to store, or null.
+     * @return The list itself, or its first MAX_STORED_VALUES elements.
+     */
+    private static <T> List<T> capped(List<T> values) {
+        return values == null || values.size() <= MAX_STORED_VALUES ? values : values.subList(0, MAX_STORED_VALUES);
+    }
 
-                // Append formatted strings back into the responseData Document
-                responseData.append("toCurrencies", toCurrenciesStr)
-                        .append("toCurrencyValues", currencyValuesStr);
-            }
-            serviceResponses.add(doc);
+    /**
+     * Replaces the trace spans of a service response with a compact "name start+duration" list
+     * in microseconds, e.g. "parse 0+85, upstream 120+41230".
+     *
+     * @param doc The stored service response document.
+     * @return The same document with its spans as a string.
+     */
+    private static Document formatSpans(Document doc) {
+        StringJoiner spans = new StringJoiner(", ");
+        for (Document span : doc.getList("spans", Document.class, Collections.emptyList())) {
+            spans.add(span.getString("name") + " " + ((Number) span.get("startNanos")).longValue() / 1000
+                    + "+" + ((Number) span.get("durationNanos")).longValue() / 1000);
         }
+        return doc.append("spans", spans.toString());
+    }
 
-        return serviceResponses;
+    private static String joinList(Object list) {
+        if (!(list instanceof List)) {
+            return "";
+        }
+        StringJoiner joined = new StringJoiner(", ");
+        for (Object value : (List<?>) list) {
+            joined.add(String.valueOf(value));
+        }
+        return joined.toString();
     }
 
 
     /**
-     * Aggregates data to identify the top 5 most frequently used devices from client requests.
-     * This method leverages MongoDB's aggregation pipeline to group, sort, and limit the results
-     * to achieve the desired outcome without parameters.
+     * Returns the top 5 most frequently used devices from client requests. The counts are kept
+     * up to date at ingest time by {@link MetricsRollup}, so no aggregation runs here.
      *
      * @return A list of Strings representing the top 5 devices by request count.
      */
     public List<String> getTop5Devices() {
-        MongoCollection<Document> collection = database.getCollection("client_request");
-        // Aggregate the data with a pipeline: group by deviceName, count occurrences, sort by count descendingly, and limit to top 5
-        List<Document> topDevices = collection.aggregate(
-                Arrays.asList(
-                        Aggregates.group("$deviceName", Accumulators.sum("count", 1)),
-                        Aggregates.sort(Sorts.descending("count")),
-                        Aggregates.limit(5)
-                )
-        ).into(new ArrayList<>());
-
-        // Extract the device names from the aggregation result
-        List<String> topDeviceNames = new ArrayList<>();
-        for (Document doc : topDevices) {
-            topDeviceNames.add(doc.getString("_id")); // "_id" is the grouped field, here it's the deviceName
-        }
-        return topDeviceNames;
+        return metrics.snapshot().getTopDevices();
     }
 
     /**
-     * Calculates the average response time of all service responses logged in MongoDB.
-     * This is used for performance monitoring by providing insights into the overall speed
-     * of the server's response times.
+     * Returns the average response time of all service responses. This is used for performance
+     * monitoring by providing insights into the overall speed of the server's response times.
+     * The sum and count are maintained by {@link MetricsRollup}.
      *
      * @return A formatted string representing the average response time in milliseconds.
      */
     public String getAverageResponseTime() {
-        MongoCollection<Document> collection = database.getCollection("service_response");
-        // Aggregate to calculate the average response time
-        Bson groupStage = Aggregates.group(null, Accumulators.avg("averageResponseTime", "$responseTime"));
-        Document result = collection.aggregate(Arrays.asList(groupStage)).first();
-
-        if (result == null) {
+        double averageResponseTimeMs = metrics.snapshot().getAverageResponseTime();
+        if (Double.isNaN(averageResponseTimeMs)) {
             return "No data available";
-        } else {
-            Double averageResponseTimeMs = result.getDouble("averageResponseTime");
-            return String.format(Locale.US, "%.2f ms", averageResponseTimeMs);
         }
+        return String.format(Locale.US, "%.2f ms", averageResponseTimeMs);
     }
 
     /**
-     * Increments the count for a specific currency conversion pair in MongoDB. This helps
-     * in tracking the frequency of requests for each currency pair conversion.
+     * Identifies and returns the currency conversion pair with the highest number of requests,
+     * providing insight into the most popular conversion requests. The pair counts are maintained
+     * in memory by {@link PairPopularity}.
      *
-     * @param fromCurrency The source currency code.
-     * @param toCurrency The target currency code.
+     * @return A list containing the source and target currency codes of the most requested conversion pair,
+     * or null if no conversion pairs are found.
      */
-    private void addConversionPair(String fromCurrency, String toCurrency) {
-        MongoCollection<Document> collection = database.getCollection("conversion_requests");
-        Document filter = new Document("fromCurrency", fromCurrency).append("toCurrency", toCurrency);
-        Document update = new Document("$inc", new Document("Count", 1));
-        collection.updateOne(filter, update, new com.mongodb.client.model.UpdateOptions().upsert(true));
+    public List<String> fetchHighestCurrencyPair() {
+        List<PairPopularity.RankedPair> ranking = pairPopularity.getRanking();
+        if (ranking.isEmpty()) {
+            return null;
+        }
+        return Arrays.asList(ranking.get(0).getFromCurrency(), ranking.get(0).getToCurrency());
     }
 
     /**
-     * Identifies and returns the currency conversion pair with the highest number of requests.
-     * This method sorts the conversion request counts in descending order and retrieves the
-     * pair with the highest count, providing insight into the most popular conversion requests.
+     * Returns the names of all currencies in the latest EUR rate table. The table is downloaded
+     * from the Frankfurter API at most once per publication and shared with the rate matrix.
      *
-     * @return A list containing the source and target currency codes of the most requested conversion pair.
+     * @return A future with a JSONArray containing the names of the currencies for which rates are available.
      */
-    public List<String> fetchHighestCurrencyPair() {
-        MongoCollection<Document> collection = database.getCollection("conversion_requests");
-        Document highestPair = collection.find().sort(descending("Count")).first();
-        if (highestPair != null) {
-            return Arrays.asList(highestPair.getString("fromCurrency"), highestPair.getString("toCurrency"));
-        }
-        return null; // Return null if no conversion pairs are found
+    public CompletableFuture<JSONArray> fetchCurrenciesAsync() {
+        return currentRateMatrixAsync().thenApply(matrix -> {
+            JSONArray currencyNames = new JSONArray();
+            // Ordinal 0 is the EUR base itself, which upstream does not list as a rate
+            for (int i = 1; i < matrix.size(); i++) {
+                currencyNames.put(matrix.code(i));
+            }
+            return currencyNames;
+        });
     }
 
+
     /**
-     * Fetches the latest currency rates from an external API and logs the request and response.
-     * This method makes a GET request to the Frankfurter API to retrieve current exchange rates
-     * for all available currencies against a base currency. The response, including the rates and
-     * currency names, is logged asynchronously for performance monitoring and analysis.
+     * Returns the current exchange rate for a specific currency pair. The rate is computed locally
+     * as a ratio of two entries of the EUR rate matrix, which is rebuilt only when a new rate table
+     * is published, so no upstream request is made per pair.
      *
-     * @return A JSONArray containing the names of the currencies for which rates were fetched.
-     * @throws UnknownHostException If the DNS lookup fails for the API's hostname.
+     * @param fromCurrency The ISO currency code for the source currency.
+     * @param toCurrency The ISO currency code for the target currency.
+     * @return A future with a JSONObject containing the currency rate between the specified pair,
+     *         completed exceptionally if either currency is unknown or the rates are unavailable.
      */
-    public JSONArray fetchCurrencies() throws UnknownHostException {
-        List<String> toCurrencies = new ArrayList<>();
-        List<String> currencyValues = new ArrayList<>();
-        double currencySum = 0;
-        JSONArray currencyNames = new JSONArray();
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("https://api.frankfurter.app/latest"))
-                .build();
-        try {
-            long startTime = System.currentTimeMillis();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            long endTime = System.currentTimeMillis();
-
-            String responseBody = response.body();
-            JSONObject jsonObject = new JSONObject(responseBody);
-            String baseCurrency = jsonObject.getString("base");
-            String date = jsonObject.getString("date");
-
-            JSONObject rates = jsonObject.getJSONObject("rates");
-            Iterator<String> keys = rates.keys();
-            while (keys.hasNext()) {
-                String key = keys.next();
-                currencyNames.put(key);
-                toCurrencies.add(key);
-                double rate = rates.getDouble(key);
-                currencySum += rate;
-                currencyValues.add(String.valueOf(rate));
+    public CompletableFuture<JSONObject> fetchCurrenciesAsync(String fromCurrency, String toCurrency) {
+        return currentRateMatrixAsync().thenApply(matrix -> {
+            int from = matrix.ordinal(fromCurrency);
+            int to = matrix.ordinal(toCurrency);
+            if (from < 0 || to < 0) {
+                throw new IllegalArgumentException("Unknown currency pair: " + fromCurrency + " to " + toCurrency);
             }
 
-            double finalCurrencySum = currencySum;
-            new Thread(new Runnable() {
-                @Override
-                public void run() {
-                    try {
-                        registerServerRequest("GET", "latest", String.valueOf(startTime), null, null, null, InetAddress.getLocalHost().getHostAddress());
-                        registerServerResponse(String.valueOf(endTime - startTime), String.valueOf(response.statusCode()), String.valueOf(responseBody.length()), baseCurrency, null, date, String.valueOf(rates.length()), String.valueOf(finalCurrencySum / rates.length()), toCurrencies, currencyValues);
-                    } catch (UnknownHostException e) {
-                        e.printStackTrace();
-                    }
-                }
-            }).start();
-        } catch (Exception e) {
-            e.printStackTrace();
-        }
-        return currencyNames;
+            JSONObject rates = new JSONObject().put(toCurrency, matrix.rate(from, to));
+            return new JSONObject()
+                    .put("base", fromCurrency)
+                    .put("rates", rates);
+        });
     }
 
+    /**
+     * Returns the rate matrix for the latest EUR table, downloading the table when the cached
+     * copy has expired and rebuilding the matrix whenever the table changes.
+     *
+     * @return A future with the current rate matrix.
+     */
+    private CompletableFuture<RateMatrix> currentRateMatrixAsync() {
+        RateCache.RateTable cached = latestRateCache.get(RateMatrix.EUR);
+        CompletableFuture<RateCache.RateTable> table = cached != null
+                ? CompletableFuture.completedFuture(cached)
+                : fetchLatestRateTableAsync(RateMatrix.EUR);
+        return table.thenApply(current -> {
+            RateMatrix matrix = rateMatrix;
+            if (matrix == null || !matrix.isBuiltFrom(current)) {
+                matrix = new RateMatrix(current);
+                rateMatrix = matrix;
+            }
+            return matrix;
+        });
+    }
 
     /**
-     * Fetches current exchange rates for a specific currency pair from an external API and logs
-     * the request/response details. This involves making a GET request to the Frankfurter API,
-     * specifying the source and target currencies. The method logs the interaction asynchronously,
-     * including metrics such as request duration and the size of the response payload.
+     * Downloads the complete latest rate table for a base currency, stores it in the rate cache
+     * and logs the upstream request/response details asynchronously. Concurrent cache misses
+     * share a single upstream request.
      *
-     * @param fromCurrency The ISO currency code for the source currency.
-     * @param toCurrency The ISO currency code for the target currency.
-     * @return A JSONObject containing the fetched currency rate between the specified pair.
-     * @throws UnknownHostException If the DNS lookup fails for the API's hostname.
+     * @param baseCurrency The ISO currency code of the base currency.
+     * @return A future with the cached rate table.
      */
-    public JSONObject fetchCurrencies(String fromCurrency, String toCurrency) throws UnknownHostException {
-        HttpClient client = HttpClient.newHttpClient();
-        JSONObject result = null;
-        try {
-            HttpRequest request = HttpRequest.newBuilder()
-                    .uri(new URI("https://api.frankfurter.app/latest?from=" + fromCurrency + "&to=" + toCurrency))
-                    .build();
+    private CompletableFuture<RateCache.RateTable> fetchLatestRateTableAsync(String baseCurrency) {
+        String url = "https://api.frankfurter.app/latest?from=" + baseCurrency;
+        return upstreamFlights.call(url, () -> {
             long startTime = System.currentTimeMillis();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            long endTime = System.currentTimeMillis();
+            RequestContext requestContext = RequestContext.current();
+            long upstreamStart = System.nanoTime();
+            return LatencyMetrics.UPSTREAM_LATEST.time(() -> upstreamClient.sendAsync(upstreamClient.get(url), HttpResponse.BodyHandlers.ofString()))
+                    .thenApply(response -> {
+                        long endTime = System.currentTimeMillis();
+                        if (requestContext != null) {
+                            requestContext.end(RequestContext.Span.UPSTREAM, upstreamStart);
+                        }
+
+                        JSONObject jsonObject = new JSONObject(response.body());
+                        String base = jsonObject.getString("base");
+                        String date = jsonObject.getString("date");
+                        JSONObject rates = jsonObject.getJSONObject("rates");
+
+                        // Copy the rates into the cache, keeping the upstream ordering
+                        Map<String, Double> rateMap = new LinkedHashMap<>();
+                        List<String> toCurrencies = new ArrayList<>();
+                        List<Double> currencyValues = new ArrayList<>();
+                        double currencySum = 0;
+                        Iterator<String> keys = rates.keys();
+                        while (keys.hasNext()) {
+                            String key = keys.next();
+                            double rate = rates.getDouble(key);
+                            rateMap.put(key, rate);
+                            toCurrencies.add(key);
+                            currencyValues.add(rate);
+                            currencySum += rate;
+                        }
+                        RateCache.RateTable table = latestRateCache.put(base, date, rateMap);
+
+                        double averageRate = currencySum / rates.length();
+                        int payloadSize = response.body().getBytes(StandardCharsets.UTF_8).length;
+                        registerServerRequest(requestContext, "GET", "latest", startTime, null, baseCurrency, null, localAddress);
+                        LatencyMetrics.countPayload(LatencyMetrics.UPSTREAM_LATEST, payloadSize);
+                        registerServerResponse(requestContext, endTime - startTime, response.statusCode(), payloadSize, base, null, date, rates.length(), averageRate, toCurrencies, currencyValues);
+                        return table;
+                    });
+        });
+    }
 
-            JSONObject jsonObject = new JSONObject(response.body());
-            String baseCurrency = jsonObject.getString("base");
-            JSONObject rates = jsonObject.getJSONObject("rates");
-            String firstKey = rates.keys().next();
-            double firstRate = rates.getDouble(firstKey);
+    /**
+     * Exposes the shared latest rate cache so its counters can be reported.
+     *
+     * @return The cache of latest rate tables keyed by base currency.
+     */
+    public RateCache getLatestRateCache() {
+        return latestRateCache;
+    }
 
-            result = new JSONObject()
-                    .put("base", baseCurrency)
-                    .put("rates", rates);
+    /**
+     * Exposes the shared upstream request coalescer so its counters can be reported.
+     *
+     * @return The single-flight layer in front of the upstream API.
+     */
+    public SingleFlight getUpstreamFlights() {
+        return upstreamFlights;
+    }
 
-            new Thread(() -> {
-                try {
-                    registerServerRequest("GET", "latest", String.valueOf(startTime), null, fromCurrency, toCurrency, InetAddress.getLocalHost().getHostAddress());
-                    registerServerResponse(String.valueOf(endTime - startTime), String.valueOf(response.statusCode()), String.valueOf(response.body().length()), baseCurrency, null, jsonObject.getString("date"), "1", String.valueOf(firstRate), List.of(firstKey), List.of(String.valueOf(firstRate)));
-                } catch (UnknownHostException e) {
-                    throw new RuntimeException(e);
-                }
-            }).start();
-        } catch (URISyntaxException | IOException | InterruptedException e) {
-            e.printStackTrace();
-        }
-        return result;
+    /**
+     * Exposes the shared upstream client so its connection metrics can be reported.
+     *
+     * @return The pooled client used for every upstream request.
+     */
+    public UpstreamClient getUpstreamClient() {
+        return upstreamClient;
     }
 
     /**
-     * Fetches the historical currency exchange rate for a given date and currency pair from an external API.
-     * This method also logs the request and response details asynchronously for performance monitoring and analysis.
+     * Fetches the historical currency exchange rate for a given date and currency pair. The rate is read from the
+     * local historical rate store; only dates the store does not cover yet are requested from the external API,
+     * in which case concurrent identical lookups share one request and its details are logged asynchronously.
      *
      * @param date The specific date for which the currency rate is requested.
      * @param fromCurrency The ISO currency code for the source currency.
      * @param toCurrency The ISO currency code for the target currency.
-     * @return A JSONObject containing the exchange rate for the specified currency pair on the specified date.
-     * @throws UnknownHostException If the API's hostname could not be resolved.
-     */
-    public JSONObject fetchCurrencyRate(String date, String fromCurrency, String toCurrency) throws UnknownHostException {
-        HttpClient client = HttpClient.newHttpClient();
-        HttpRequest request = HttpRequest.newBuilder()
-                .uri(URI.create("https://api.frankfurter.app/" + date + "?from=" + fromCurrency + "&to=" + toCurrency))
-                .build();
-        JSONObject rateObject = new JSONObject();
-        try {
-            long startTime = System.currentTimeMillis();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            long endTime = System.currentTimeMillis();
-
-            JSONObject jsonObject = new JSONObject(response.body());
-            if (jsonObject.has("rates")) {
-                double rate = jsonObject.getJSONObject("rates").getDouble(toCurrency);
-                rateObject.put("rate", rate);
-            }
-
-            // Logging the request and response details asynchronously
-            new Thread(() -> {
-                try {
-                    registerServerRequest("GET", "historical", String.valueOf(startTime), date, fromCurrency, toCurrency, InetAddress.getLocalHost().getHostAddress());
-                    registerServerResponse(String.valueOf(endTime - startTime), String.valueOf(response.statusCode()), String.valueOf(response.body().length()), jsonObject.getString("base"), date, date, "1", String.valueOf(rateObject.getDouble("rate")), List.of(toCurrency), List.of(String.valueOf(rateObject.getDouble("rate"))));
-                } catch (UnknownHostException e) {
-                    throw new RuntimeException(e);
-                }
-            }).start();
-        } catch (Exception e) {
-            e.printStackTrace();
+     * @return A future with a JSONObject containing the exchange rate for the specified currency pair on the specified date,
+     *         completed with an IllegalArgumentException if either currency or the date is unknown.
+     */
+    public CompletableFuture<JSONObject> fetchCurrencyRateAsync(String date, String fromCurrency, String toCurrency) {
+        // Past rates never change, so answer from the local store whenever it covers the date
+        double storedRate = historicalStore.rateOn(parseDate(date), fromCurrency, toCurrency);
+        if (!Double.isNaN(storedRate)) {
+            return CompletableFuture.completedFuture(new JSONObject().put("rate", storedRate));
         }
-        return rateObject;
+        if (isUnknownCurrency(fromCurrency) || isUnknownCurrency(toCurrency)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown currency pair: " + fromCurrency + " to " + toCurrency));
+        }
+
+        String url = "https://api.frankfurter.app/" + date + "?from=" + fromCurrency + "&to=" + toCurrency;
+        return upstreamFlights.call(url, () -> {
+            long startTime = System.currentTimeMillis();
+            RequestContext requestContext = RequestContext.current();
+            long upstreamStart = System.nanoTime();
+            return LatencyMetrics.UPSTREAM_HISTORICAL_RATE.time(() -> upstreamClient.sendAsync(upstreamClient.get(url), HttpResponse.BodyHandlers.ofString()))
+                    .thenApply(response -> {
+                        long endTime = System.currentTimeMillis();
+                        if (requestContext != null) {
+                            requestContext.end(RequestContext.Span.UPSTREAM, upstreamStart);
+                        }
+
+                        // Upstream rejects unknown currencies and malformed dates, which are client errors
+                        if (isClientError(response.statusCode())) {
+                            throw new IllegalArgumentException("Unknown currency pair or date: " + fromCurrency + " to " + toCurrency + " on " + date);
+                        }
+                        JSONObject jsonObject = new JSONObject(response.body());
+                        if (!jsonObject.has("rates")) {
+                            throw new IllegalStateException("Failed to fetch currency rate: HTTP error code : " + response.statusCode());
+                        }
+                        if (!jsonObject.getJSONObject("rates").has(toCurrency)) {
+                            throw new IllegalArgumentException("Unknown currency pair: " + fromCurrency + " to " + toCurrency);
+                        }
+                        double rate = jsonObject.getJSONObject("rates").getDouble(toCurrency);
+                        JSONObject rateObject = new JSONObject().put("rate", rate);
+
+                        // Queue the request and response details for the telemetry writer
+                        int payloadSize = response.body().getBytes(StandardCharsets.UTF_8).length;
+                        registerServerRequest(requestContext, "GET", "historical", startTime, date, fromCurrency, toCurrency, localAddress);
+                        LatencyMetrics.countPayload(LatencyMetrics.UPSTREAM_HISTORICAL_RATE, payloadSize);
+                        registerServerResponse(requestContext, endTime - startTime, response.statusCode(), payloadSize, jsonObject.getString("base"), date, date, 1, rate, List.of(toCurrency), List.of(rate));
+                        return rateObject;
+                    });
+        });
     }
 
     /**
-     * Fetches a time series of currency exchange rates between two dates for a specified currency pair from an external API.
-     * The request and response details are logged asynchronously. This method is useful for analyzing currency value trends over a period.
+     * Fetches a time series of currency exchange rates between two dates for a specified currency pair. The series is
+     * read from the local historical rate store when it covers the range, otherwise it is requested from the external API
+     * (one request for concurrent identical calls) and the request and response details are logged asynchronously.
+     * This method is useful for analyzing currency value trends over a period. Upstream responses are parsed as they
+     * stream in, keeping only the target currency's rates in primitive arrays.
      *
      * @param fromDate The start date of the period for which currency rates are requested.
      * @param toDate The end date of the period.
      * @param fromCurrency The ISO currency code for the source currency.
      * @param toCurrency The ISO currency code for the target currency.
-     * @return A JSONArray containing exchange rates for each day in the specified period.
-     * @throws Exception If an error occurs during the request or processing the response.
+     * @return A future with the exchange rate of each day in the specified period, in ascending date order,
+     *         completed with an IllegalArgumentException if either currency or a date is unknown.
      */
-    public JSONArray fetchCurrencyRate(String fromDate, String toDate, String fromCurrency, String toCurrency) throws Exception {
-        HttpClient client = HttpClient.newHttpClient();
+    public CompletableFuture<HistoricalRateStore.Series> fetchCurrencyRateAsync(String fromDate, String toDate, String fromCurrency, String toCurrency) {
+        // Serve the series from the local store whenever it covers the range
+        LocalDate start = parseDate(fromDate);
+        LocalDate end = parseDate(toDate);
+        HistoricalRateStore.Series series = (start != null && end != null)
+                ? historicalStore.range(start, end, fromCurrency, toCurrency) : null;
+        if (series != null) {
+            return CompletableFuture.completedFuture(series);
+        }
+        if (isUnknownCurrency(fromCurrency) || isUnknownCurrency(toCurrency)) {
+            return CompletableFuture.failedFuture(new IllegalArgumentException("Unknown currency pair: " + fromCurrency + " to " + toCurrency));
+        }
+
         String url = String.format("https://api.frankfurter.app/%s..%s?from=%s&to=%s", fromDate, toDate, fromCurrency, toCurrency);
-        HttpRequest request = HttpRequest.newBuilder().uri(URI.create(url)).GET().build();
-        JSONArray resultArray = new JSONArray();
-        try {
+        return upstreamFlights.call(url, () -> {
             long startTime = System.currentTimeMillis();
-            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
-            long endTime = System.currentTimeMillis();
-
-            if (response.statusCode() == 200) {
-                JSONObject jsonResponse = new JSONObject(response.body());
-                JSONObject rates = jsonResponse.getJSONObject("rates");
-                rates.keys().forEachRemaining(date -> {
-                    double rate = rates.getJSONObject(date).getDouble(toCurrency);
-                    resultArray.put(new JSONObject().put(date, rate));
-                });
-
-                // Asynchronously log the request and response details
-                new Thread(() -> {
-                    try {
-                        registerServerRequest("GET", "historical", String.valueOf(startTime), toDate, fromCurrency, toCurrency, InetAddress.getLocalHost().getHostAddress());
-                        registerServerResponse(String.valueOf(endTime - startTime), String.valueOf(response.statusCode()), String.valueOf(response.body().length()), jsonResponse.getString("base"), fromDate, toDate, String.valueOf(rates.length()), "N/A", List.of(toCurrency), null); // Note: Average rate and currency values might be adjusted based on actual needs
-                    } catch (UnknownHostException e) {
-                        throw new RuntimeException(e);
-                    }
-                }).start();
-                return resultArray;
-            } else {
-                throw new Exception("Failed to fetch currency rates: HTTP error code : " + response.statusCode());
-            }
-        } catch (URISyntaxException | IOException | InterruptedException e) {
-            throw new Exception("Error fetching currency rates", e);
+            RequestContext requestContext = RequestContext.current();
+            long upstreamStart = System.nanoTime();
+            // Reading the body blocks until it has arrived, so it is parsed on the blocking executor
+            return LatencyMetrics.UPSTREAM_HISTORICAL_SERIES.time(() -> upstreamClient.sendAsync(upstreamClient.get(url), HttpResponse.BodyHandlers.ofInputStream())
+                    .thenApplyAsync(response -> {
+                        UpstreamSeriesParser.Result parsed;
+                        try (InputStream body = response.body()) {
+                            if (isClientError(response.statusCode())) {
+                                throw new IllegalArgumentException("Unknown currency pair or date: " + fromCurrency + " to " + toCurrency + " from " + fromDate + " to " + toDate);
+                            }
+                            if (response.statusCode() != 200) {
+                                throw new IllegalStateException("Failed to fetch currency rates: HTTP error code : " + response.statusCode());
+                            }
+                            parsed = UpstreamSeriesParser.parse(body, toCurrency);
+                        } catch (IOException e) {
+                            throw new UncheckedIOException(e);
+                        }
+                        long endTime = System.currentTimeMillis();
+                        if (requestContext != null) {
+                            requestContext.end(RequestContext.Span.UPSTREAM, upstreamStart);
+                        }
+
+                        // Only the first values are logged, the average covers all of them
+                        HistoricalRateStore.Series result = parsed.getSeries();
+                        double[] rates = result.getRates();
+                        List<Double> loggedValues = new ArrayList<>(Math.min(result.length(), MAX_STORED_VALUES));
+                        double seriesSum = 0;
+                        for (int i = 0; i < result.length(); i++) {
+                            seriesSum += rates[i];
+                            if (i < MAX_STORED_VALUES) {
+                                loggedValues.add(rates[i]);
+                            }
+                        }
+
+                        // Queue the request and response details for the telemetry writer
+                        double averageRate = result.length() == 0 ? Double.NaN : seriesSum / result.length();
+                        int payloadSize = (int) parsed.getByteCount();
+                        registerServerRequest(requestContext, "GET", "historical", startTime, toDate, fromCurrency, toCurrency, localAddress);
+                        LatencyMetrics.countPayload(LatencyMetrics.UPSTREAM_HISTORICAL_SERIES, payloadSize);
+                        registerServerResponse(requestContext, endTime - startTime, response.statusCode(), payloadSize, parsed.getBase(), fromDate, toDate, result.length(), averageRate, List.of(toCurrency), loggedValues);
+                        return result;
+                    }, ExecutionMode.blocking()));
+        });
+    }
+
+    /**
+     * Fetches the weekly or monthly aggregates (open, high, low, close, mean) of a currency pair for a date range.
+     * They are read from the precomputed rollups of the local historical rate store when it covers the range;
+     * otherwise the daily series is fetched as by {@link #fetchCurrencyRateAsync(String, String, String, String)}
+     * and aggregated on the fly.
+     *
+     * @param fromDate The start date of the period.
+     * @param toDate The end date of the period.
+     * @param fromCurrency The ISO currency code for the source currency.
+     * @param toCurrency The ISO currency code for the target currency.
+     * @param interval WEEK or MONTH.
+     * @return A future with the aggregates of each period, in ascending date order.
+     */
+    public CompletableFuture<SeriesRollup> fetchCurrencyRollupAsync(String fromDate, String toDate, String fromCurrency, String toCurrency, SeriesRollup.Interval interval) {
+        LocalDate start = parseDate(fromDate);
+        LocalDate end = parseDate(toDate);
+        SeriesRollup rollup = (start != null && end != null)
+                ? historicalStore.rollup(start, end, fromCurrency, toCurrency, interval) : null;
+        if (rollup != null) {
+            return CompletableFuture.completedFuture(rollup);
+        }
+        return fetchCurrencyRateAsync(fromDate, toDate, fromCurrency, toCurrency)
+                .thenApply(series -> SeriesRollup.of(series, interval));
+    }
+
+    /**
+     * Checks a currency code against the currencies known locally, so a mistyped code is answered
+     * as a client error without an upstream request. A code is only rejected once the historical
+     * store is open and the latest rate matrix is built, and neither of them has the currency.
+     */
+    private static boolean isUnknownCurrency(String code) {
+        RateMatrix matrix = rateMatrix;
+        return matrix != null && historicalStore.isReady()
+                && matrix.ordinal(code) < 0 && !historicalStore.hasCurrency(code);
+    }
+
+    // Upstream answers 404 for an unknown currency and 422 for a malformed date
+    private static boolean isClientError(int statusCode) {
+        return statusCode == 404 || statusCode == 422;
+    }
+
+    /**
+     * Resolves the address of this host for the server_request log.
+     *
+     * @return The host address, or "unknown" if it cannot be resolved.
+     */
+    private static String resolveLocalAddress() {
+        try {
+            return InetAddress.getLocalHost().getHostAddress();
+        } catch (UnknownHostException e) {
+            e.printStackTrace();
+            return "unknown";
+        }
+    }
+
+    /**
+     * Exposes the User-Agent parser so its cache counters can be reported.
+     *
+     * @return The shared User-Agent parser.
+     */
+    public UserAgentParser getUserAgentParser() {
+        return userAgentParser;
+    }
+
+    /**
+     * Exposes the pair counter so the most requested pairs can be reported.
+     *
+     * @return The shared pair counter.
+     */
+    public PairPopularity getPairPopularity() {
+        return pairPopularity;
+    }
+
+    /**
+     * Exposes the telemetry writer so its queue counters can be reported.
+     *
+     * @return The shared telemetry writer.
+     */
+    public TelemetryWriter getTelemetry() {
+        return telemetry;
+    }
+
+    /**
+     * Parses an ISO date (yyyy-MM-dd) from a request parameter.
+     *
+     * @param date The date string.
+     * @return The parsed date, or null if the string is missing or malformed.
+     */
+    private static LocalDate parseDate(String date) {
+        if (date == null) {
+            return null;
+        }
+        try {
+            return LocalDate.parse(date);
+        } catch (DateTimeParseException e) {
+            return null;
         }
     }
 }
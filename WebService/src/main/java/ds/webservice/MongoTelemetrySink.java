@@ -0,0 +1,71 @@
+package ds.webservice;
+
+import com.mongodb.ErrorCategory;
+import com.mongodb.MongoBulkWriteException;
+import com.mongodb.bulk.BulkWriteError;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.InsertManyOptions;
+import org.bson.Document;
+
+import java.util.List;
+
+/**
+ * Telemetry sink inserting each batch into its MongoDB collection with one unordered insertMany.
+ * Duplicate key errors are ignored: they only occur when a batch that was partly written before
+ * is written again, e.g. when spooled batches are replayed.
+ *
+ * Author: Aditya Aayush
+ */
+public final class MongoTelemetrySink implements TelemetrySink {
+
+    private volatile MongoDatabase database;
+
+    @Override
+    public void write(String collection, List<Document> batch) {
+        long start = System.nanoTime();
+        try {
+            database().getCollection(collection).insertMany(batch, new InsertManyOptions().ordered(false));
+        } catch (MongoBulkWriteException e) {
+            if (e.getWriteConcernError() != null) {
+                throw e;
+            }
+            for (BulkWriteError error : e.getWriteErrors()) {
+                if (ErrorCategory.fromErrorCode(error.getCode()) != ErrorCategory.DUPLICATE_KEY) {
+                    throw e;
+                }
+            }
+        }
+        LatencyMetrics.MONGO_INSERT_MANY.recordNanos(System.nanoTime() - start);
+    }
+
+    /**
+     * Checks that MongoDB answers a ping within the configured timeouts.
+     *
+     * @return Whether MongoDB is reachable.
+     */
+    public boolean isReachable() {
+        try {
+            database().runCommand(new Document("ping", 1));
+            return true;
+        } catch (RuntimeException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public String describe() {
+        return "writing to MongoDB";
+    }
+
+    /**
+     * Resolves the database lazily so that creating the sink never waits for Mongo.
+     */
+    private MongoDatabase database() {
+        MongoDatabase current = database;
+        if (current == null) {
+            current = MongoConnectionInstance.getInstance().getDatabase("Project4");
+            database = current;
+        }
+        return current;
+    }
+}
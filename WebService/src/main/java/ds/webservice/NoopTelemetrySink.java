@@ -0,0 +1,22 @@
+package ds.webservice;
+
+import org.bson.Document;
+
+import java.util.List;
+
+/**
+ * Telemetry sink that discards every batch, for deployments that do not keep telemetry.
+ *
+ * Author: Aditya Aayush
+ */
+public final class NoopTelemetrySink implements TelemetrySink {
+
+    @Override
+    public void write(String collection, List<Document> batch) {
+    }
+
+    @Override
+    public String describe() {
+        return "discarding telemetry";
+    }
+}
@@ -0,0 +1,262 @@
+package ds.webservice;
+
+import com.mongodb.bulk.BulkWriteResult;
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.UpdateOneModel;
+import com.mongodb.client.model.UpdateOptions;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Request counts per conversion pair. A request only increments a striped LongAdder, so hot pairs
+ * such as USD to EUR no longer contend on one MongoDB document. Every few seconds the increments
+ * collected since the last flush are written to "conversion_requests" with a single unordered
+ * bulkWrite of $inc upserts, and the in-memory top-K ranking is recomputed.
+ *
+ * A pair is identified by an int: each of the two 3-letter codes takes 15 bits (5 per letter).
+ * Requests whose codes are not three ASCII letters are not counted.
+ *
+ * Author: Aditya Aayush
+ */
+public final class PairPopularity {
+
+    /**
+     * A pair with its all-time request count.
+     */
+    public static final class RankedPair {
+        private final String fromCurrency;
+        private final String toCurrency;
+        private final long count;
+
+        RankedPair(String fromCurrency, String toCurrency, long count) {
+            this.fromCurrency = fromCurrency;
+            this.toCurrency = toCurrency;
+            this.count = count;
+        }
+
+        public String getFromCurrency() {
+            return fromCurrency;
+        }
+
+        public String getToCurrency() {
+            return toCurrency;
+        }
+
+        public long getCount() {
+            return count;
+        }
+    }
+
+    private static final String COLLECTION = "conversion_requests";
+    private static final int TOP_K = ServiceConfig.getInt("pairs.topK", 10);
+
+    // Singleton instance shared by every Model.
+    private static PairPopularity instance = null;
+
+    // Increments since the last flush, taken out with sumThenReset.
+    private final Map<Integer, LongAdder> deltas = new ConcurrentHashMap<>();
+    // All-time counts and increments that could not be written yet, only touched by the flush thread.
+    private final Map<Integer, Long> totals = new HashMap<>();
+    private final Map<Integer, Long> pending = new HashMap<>();
+    // Whether the totals include the stored counts. Nothing is written before that.
+    private boolean loaded;
+    private volatile List<RankedPair> ranking = Collections.emptyList();
+
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "pair-popularity");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Private constructor to enforce the singleton. Schedules the periodic flush, whose first
+     * run loads the stored counts.
+     */
+    private PairPopularity() {
+        long flushSeconds = ServiceConfig.getLong("pairs.flushSeconds", 5);
+        scheduler.scheduleWithFixedDelay(this::flush, 0, flushSeconds, TimeUnit.SECONDS);
+    }
+
+    /**
+     * Thread-safe accessor for the shared counter.
+     *
+     * @return The shared counter.
+     */
+    public static synchronized PairPopularity getInstance() {
+        if (instance == null) {
+            instance = new PairPopularity();
+        }
+        return instance;
+    }
+
+    /**
+     * Counts one request for a conversion pair.
+     *
+     * @param fromCurrency The source currency code.
+     * @param toCurrency The target currency code.
+     */
+    public void increment(String fromCurrency, String toCurrency) {
+        int pair = pack(fromCurrency, toCurrency);
+        if (pair >= 0) {
+            deltas.computeIfAbsent(pair, key -> new LongAdder()).increment();
+        }
+    }
+
+    /**
+     * @return The most requested pairs as of the last flush, most requested first.
+     */
+    public List<RankedPair> getRanking() {
+        return ranking;
+    }
+
+    /**
+     * Writes the increments still held in memory. Called when the web application stops.
+     */
+    public void close() {
+        scheduler.shutdown();
+        try {
+            scheduler.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        flush();
+    }
+
+    /**
+     * Moves the increments into the totals, republishes the ranking and writes the increments.
+     */
+    private synchronized void flush() {
+        try {
+            if (!loaded) {
+                load();
+            }
+            boolean changed = false;
+            for (Map.Entry<Integer, LongAdder> delta : deltas.entrySet()) {
+                long amount = delta.getValue().sumThenReset();
+                if (amount > 0) {
+                    totals.merge(delta.getKey(), amount, Long::sum);
+                    pending.merge(delta.getKey(), amount, Long::sum);
+                    changed = true;
+                }
+            }
+            if (changed) {
+                publish();
+            }
+            if (loaded && !pending.isEmpty()) {
+                write();
+            }
+        } catch (RuntimeException e) {
+            // Never let an exception cancel the scheduled flush
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Reads the stored counts. Retried on every flush until MongoDB is reachable.
+     */
+    private void load() {
+        try {
+            Map<Integer, Long> stored = new HashMap<>();
+            for (Document pair : collection().find()) {
+                Object count = pair.get("Count");
+                int id = pack(pair.getString("fromCurrency"), pair.getString("toCurrency"));
+                if (id >= 0 && count instanceof Number) {
+                    stored.merge(id, ((Number) count).longValue(), Long::sum);
+                }
+            }
+            stored.forEach((id, count) -> totals.merge(id, count, Long::sum));
+            loaded = true;
+            publish();
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Upserts all pending increments with one unordered bulk write. On failure they stay pending.
+     */
+    private void write() {
+        List<WriteModel<Document>> updates = new ArrayList<>(pending.size());
+        for (Map.Entry<Integer, Long> increment : pending.entrySet()) {
+            int id = increment.getKey();
+            updates.add(new UpdateOneModel<>(
+                    new Document("fromCurrency", decode(id >>> 15)).append("toCurrency", decode(id & 0x7FFF)),
+                    new Document("$inc", new Document("Count", increment.getValue())),
+                    new UpdateOptions().upsert(true)));
+        }
+        long start = System.nanoTime();
+        try {
+            BulkWriteResult result = collection().bulkWrite(updates, new BulkWriteOptions().ordered(false));
+            LatencyMetrics.MONGO_UPSERT.recordNanos(System.nanoTime() - start);
+            if (result.wasAcknowledged()) {
+                pending.clear();
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     * Recomputes the top-K ranking. Only the distinct pairs seen so far are scanned.
+     */
+    private void publish() {
+        List<Map.Entry<Integer, Long>> pairs = new ArrayList<>(totals.entrySet());
+        pairs.sort(Map.Entry.<Integer, Long>comparingByValue().reversed());
+        RankedPair[] top = new RankedPair[Math.min(TOP_K, pairs.size())];
+        for (int i = 0; i < top.length; i++) {
+            int id = pairs.get(i).getKey();
+            top[i] = new RankedPair(decode(id >>> 15), decode(id & 0x7FFF), pairs.get(i).getValue());
+        }
+        ranking = Collections.unmodifiableList(Arrays.asList(top));
+    }
+
+    /**
+     * Packs two 3-letter codes into one int, case-insensitively.
+     *
+     * @return The pair id, or -1 if a code is not three ASCII letters.
+     */
+    static int pack(String fromCurrency, String toCurrency) {
+        int from = encode(fromCurrency);
+        int to = encode(toCurrency);
+        return from < 0 || to < 0 ? -1 : from << 15 | to;
+    }
+
+    private static int encode(String code) {
+        if (code == null || code.length() != 3) {
+            return -1;
+        }
+        int packed = 0;
+        for (int i = 0; i < 3; i++) {
+            char c = Character.toUpperCase(code.charAt(i));
+            if (c < 'A' || c > 'Z') {
+                return -1;
+            }
+            packed = packed << 5 | (c - 'A');
+        }
+        return packed;
+    }
+
+    private static String decode(int packed) {
+        return new String(new char[]{
+                (char) ('A' + (packed >>> 10 & 0x1F)),
+                (char) ('A' + (packed >>> 5 & 0x1F)),
+                (char) ('A' + (packed & 0x1F))});
+    }
+
+    private static MongoCollection<Document> collection() {
+        return MongoConnectionInstance.getInstance().getDatabase("Project4").getCollection(COLLECTION);
+    }
+}
@@ -0,0 +1,133 @@
+package ds.webservice;
+
+import java.time.DayOfWeek;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+
+/**
+ * Describes when the upstream reference rates change. The ECB publishes one rate table per
+ * business day in the afternoon (Central European Time), and api.frankfurter.app picks it up
+ * shortly afterwards. Anything derived from the latest table stays valid until the next boundary.
+ * No table is published on weekends or on the TARGET closing days: New Year's Day, Good Friday,
+ * Easter Monday, 1 May and 25/26 December.
+ *
+ * Author: Aditya Aayush
+ */
+public final class PublicationSchedule {
+
+    // Time zone in which the ECB publishes its reference rates.
+    private static final ZoneId ZONE = ZoneId.of(ServiceConfig.getString("publication.zone", "Europe/Berlin"));
+    // Local time after which the new table is expected to be available upstream.
+    private static final LocalTime TIME = LocalTime.parse(ServiceConfig.getString("publication.time", "16:15"));
+
+    // Utility class, no instances.
+    private PublicationSchedule() {
+    }
+
+    /**
+     * Computes the next publication boundary strictly after the given instant.
+     * Weekends and TARGET closing days are skipped since no rates are published on them.
+     *
+     * @param nowMillis The current time in epoch milliseconds.
+     * @return The next boundary in epoch milliseconds.
+     */
+    public static long nextPublication(long nowMillis) {
+        ZonedDateTime now = ZonedDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), ZONE);
+        LocalDate day = now.toLocalDate();
+        if (!now.toLocalTime().isBefore(TIME)) {
+            day = day.plusDays(1);
+        }
+        while (isClosingDay(day)) {
+            day = day.plusDays(1);
+        }
+        return day.atTime(TIME).atZone(ZONE).toInstant().toEpochMilli();
+    }
+
+    /**
+     * Returns the date of the most recent rate table that should be available upstream
+     * at the given instant.
+     *
+     * @param nowMillis The current time in epoch milliseconds.
+     * @return The expected rate date.
+     */
+    public static LocalDate latestPublishedDate(long nowMillis) {
+        ZonedDateTime now = ZonedDateTime.ofInstant(Instant.ofEpochMilli(nowMillis), ZONE);
+        LocalDate day = now.toLocalDate();
+        if (now.toLocalTime().isBefore(TIME)) {
+            day = day.minusDays(1);
+        }
+        while (isClosingDay(day)) {
+            day = day.minusDays(1);
+        }
+        return day;
+    }
+
+    /**
+     * Checks whether no rate table is published on the given date.
+     *
+     * @param day The date to check.
+     * @return True for weekends and TARGET closing days.
+     */
+    public static boolean isClosingDay(LocalDate day) {
+        return isWeekend(day) || isTargetHoliday(day);
+    }
+
+    /**
+     * Checks whether the given date is a TARGET closing day. Only 25 December and 26 December
+     * can fall on a weekend, in which case they are not moved to a weekday.
+     *
+     * @param day The date to check.
+     * @return True for 1 January, Good Friday, Easter Monday, 1 May, 25 December and 26 December.
+     */
+    public static boolean isTargetHoliday(LocalDate day) {
+        int month = day.getMonthValue();
+        int dayOfMonth = day.getDayOfMonth();
+        if ((month == 1 && dayOfMonth == 1) || (month == 5 && dayOfMonth == 1)
+                || (month == 12 && (dayOfMonth == 25 || dayOfMonth == 26))) {
+            return true;
+        }
+        if (month != 3 && month != 4) {
+            return false;
+        }
+        LocalDate easter = easterSunday(day.getYear());
+        return day.equals(easter.minusDays(2)) || day.equals(easter.plusDays(1));
+    }
+
+    /**
+     * Computes Easter Sunday of the Gregorian calendar (anonymous Gregorian algorithm).
+     *
+     * @param year The year.
+     * @return The date of Easter Sunday in that year.
+     */
+    static LocalDate easterSunday(int year) {
+        int a = year % 19;
+        int b = year / 100;
+        int c = year % 100;
+        int d = b / 4;
+        int e = b % 4;
+        int f = (b + 8) / 25;
+        int g = (b - f + 1) / 3;
+        int h = (19 * a + b - d - g + 15) % 30;
+        int i = c / 4;
+        int k = c % 4;
+        int l = (32 + 2 * e + 2 * i - h - k) % 7;
+        int m = (a + 11 * h + 22 * l) / 451;
+        int month = (h + l - 7 * m + 114) / 31;
+        int dayOfMonth = (h + l - 7 * m + 114) % 31 + 1;
+        return LocalDate.of(year, month, dayOfMonth);
+    }
+
+    /**
+     * Checks whether the given date falls on a weekend.
+     *
+     * @param day The date to check.
+     * @return True for Saturdays and Sundays.
+     */
+    public static boolean isWeekend(LocalDate day) {
+        DayOfWeek dayOfWeek = day.getDayOfWeek();
+        return dayOfWeek == DayOfWeek.SATURDAY || dayOfWeek == DayOfWeek.SUNDAY;
+    }
+}
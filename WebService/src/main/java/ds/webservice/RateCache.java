@@ -0,0 +1,145 @@
+package ds.webservice;
+
+import java.time.LocalDate;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Bounded in-memory cache of the latest rate tables, keyed by base currency.
+ * Entries expire at the next upstream publication boundary (see {@link PublicationSchedule}),
+ * and the least recently used table is evicted once the configured size is exceeded.
+ * Hit, miss and eviction counters show how much upstream traffic the cache saves.
+ *
+ * Author: Aditya Aayush
+ */
+public final class RateCache {
+
+    /**
+     * Immutable snapshot of one latest rate table as returned by the upstream API.
+     */
+    public static final class RateTable {
+        private final String base;
+        private final String date;
+        private final Map<String, Double> rates;
+        private final long expiresAt;
+
+        RateTable(String base, String date, Map<String, Double> rates, long expiresAt) {
+            this.base = base;
+            this.date = date;
+            this.rates = Collections.unmodifiableMap(rates);
+            this.expiresAt = expiresAt;
+        }
+
+        public String getBase() {
+            return base;
+        }
+
+        public String getDate() {
+            return date;
+        }
+
+        public Map<String, Double> getRates() {
+            return rates;
+        }
+
+        public long getExpiresAt() {
+            return expiresAt;
+        }
+    }
+
+    // How long a table that is older than the expected publication stays cached before retrying.
+    private static final long STALE_RETRY_MILLIS = ServiceConfig.getLong("cache.staleRetrySeconds", 300) * 1000L;
+
+    private final int maxEntries;
+    private final Map<String, RateTable> tables;
+
+    // Counters reported on the dashboard.
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    /**
+     * Creates a cache holding at most the given number of base currencies.
+     *
+     * @param maxEntries The maximum number of rate tables kept in memory.
+     */
+    public RateCache(int maxEntries) {
+        this.maxEntries = maxEntries;
+        // Access-ordered map so that the eldest entry is always the least recently used one.
+        this.tables = new LinkedHashMap<String, RateTable>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, RateTable> eldest) {
+                if (size() > RateCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Looks up the rate table for a base currency.
+     *
+     * @param base The ISO code of the base currency.
+     * @return The cached table, or null if it is missing or has expired.
+     */
+    public RateTable get(String base) {
+        long now = System.currentTimeMillis();
+        synchronized (tables) {
+            RateTable table = tables.get(base);
+            if (table != null && table.expiresAt > now) {
+                hits.incrementAndGet();
+                return table;
+            }
+            if (table != null) {
+                // Expired tables are dropped so they don't occupy a slot until evicted.
+                tables.remove(base);
+            }
+        }
+        misses.incrementAndGet();
+        return null;
+    }
+
+    /**
+     * Stores a freshly fetched rate table. The table expires at the next publication boundary,
+     * unless upstream has not yet published the expected date, in which case it is retried soon.
+     *
+     * @param base The ISO code of the base currency.
+     * @param date The rate date reported by the upstream API (yyyy-MM-dd).
+     * @param rates The rates of every other currency against the base.
+     * @return The table that was stored.
+     */
+    public RateTable put(String base, String date, Map<String, Double> rates) {
+        long now = System.currentTimeMillis();
+        long expiresAt = PublicationSchedule.nextPublication(now);
+        if (LocalDate.parse(date).isBefore(PublicationSchedule.latestPublishedDate(now))) {
+            expiresAt = Math.min(expiresAt, now + STALE_RETRY_MILLIS);
+        }
+        RateTable table = new RateTable(base, date, rates, expiresAt);
+        synchronized (tables) {
+            tables.put(base, table);
+        }
+        return table;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public int size() {
+        synchronized (tables) {
+            return tables.size();
+        }
+    }
+}
@@ -0,0 +1,121 @@
+package ds.webservice;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rate-matrix engine built from a single EUR-based latest rate table.
+ * Every currency gets an ordinal, and its EUR rate is stored in a primitive array at that
+ * ordinal, so any cross rate is a single division that needs neither an HTTP call nor an allocation.
+ * A matrix is immutable; a new one is built whenever a new table is published upstream.
+ *
+ * Author: Aditya Aayush
+ */
+public final class RateMatrix {
+
+    // Base currency of the upstream reference rates.
+    public static final String EUR = "EUR";
+
+    // The rate table this matrix was derived from, used to detect when a rebuild is due.
+    private final RateCache.RateTable source;
+    // Currency codes in ordinal order; EUR is always ordinal 0.
+    private final String[] codes;
+    // Value of one EUR in each currency, indexed by ordinal.
+    private final double[] eurRates;
+    // Lookup from currency code to ordinal.
+    private final Map<String, Integer> ordinals;
+
+    /**
+     * Builds the matrix from an EUR-based rate table.
+     *
+     * @param source The latest rate table with EUR as base currency.
+     */
+    public RateMatrix(RateCache.RateTable source) {
+        this.source = source;
+        Map<String, Double> rates = source.getRates();
+        this.codes = new String[rates.size() + 1];
+        this.eurRates = new double[rates.size() + 1];
+        this.ordinals = new HashMap<>(rates.size() * 2);
+
+        codes[0] = EUR;
+        eurRates[0] = 1.0;
+        ordinals.put(EUR, 0);
+        int ordinal = 1;
+        for (Map.Entry<String, Double> entry : rates.entrySet()) {
+            codes[ordinal] = entry.getKey();
+            eurRates[ordinal] = entry.getValue();
+            ordinals.put(entry.getKey(), ordinal);
+            ordinal++;
+        }
+    }
+
+    /**
+     * Checks whether this matrix was built from the given table.
+     *
+     * @param table The rate table currently held by the cache.
+     * @return True if no rebuild is needed.
+     */
+    public boolean isBuiltFrom(RateCache.RateTable table) {
+        return source == table;
+    }
+
+    /**
+     * Returns the ordinal of a currency code.
+     *
+     * @param code The ISO currency code.
+     * @return The ordinal, or -1 if the currency is not part of the table.
+     */
+    public int ordinal(String code) {
+        Integer ordinal = code != null ? ordinals.get(code) : null;
+        return ordinal != null ? ordinal : -1;
+    }
+
+    /**
+     * Computes the cross rate between two ordinals.
+     *
+     * @param fromOrdinal The ordinal of the source currency.
+     * @param toOrdinal The ordinal of the target currency.
+     * @return How many units of the target currency one unit of the source currency buys.
+     */
+    public double rate(int fromOrdinal, int toOrdinal) {
+        return eurRates[toOrdinal] / eurRates[fromOrdinal];
+    }
+
+    /**
+     * Computes the cross rate between two currency codes.
+     *
+     * @param fromCurrency The ISO code of the source currency.
+     * @param toCurrency The ISO code of the target currency.
+     * @return The cross rate, or NaN if either currency is unknown.
+     */
+    public double rate(String fromCurrency, String toCurrency) {
+        int from = ordinal(fromCurrency);
+        int to = ordinal(toCurrency);
+        if (from < 0 || to < 0) {
+            return Double.NaN;
+        }
+        return rate(from, to);
+    }
+
+    /**
+     * @return The publication date of the underlying table (yyyy-MM-dd).
+     */
+    public String getDate() {
+        return source.getDate();
+    }
+
+    /**
+     * @return The number of currencies in the matrix, including EUR.
+     */
+    public int size() {
+        return codes.length;
+    }
+
+    /**
+     * @param ordinal A currency ordinal.
+     * @return The ISO code of the currency with that ordinal.
+     */
+    public String code(int ordinal) {
+        return codes[ordinal];
+    }
+}
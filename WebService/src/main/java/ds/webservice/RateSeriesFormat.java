@@ -0,0 +1,192 @@
+package ds.webservice;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * Compact binary form of a time series, sent by /api/historical instead of JSON to clients whose
+ * Accept header prefers {@link #MEDIA_TYPE}. A 20-year daily series is 7 to 16 KB instead of
+ * 115 to 190 KB of JSON, and a client decodes it into primitive arrays without intermediate objects.
+ *
+ * Layout (big-endian):
+ * header:  byte version (1), byte encoding, byte scale, byte reserved (0),
+ *          int startEpochDay, int dayCount, int valueCount
+ * bitmap:  ceil(dayCount / 8) bytes, bit i (least significant bit first) set if calendar day
+ *          startEpochDay + i has a rate; valueCount bits are set
+ * values:  encoding 0 (FLOAT): valueCount x float rate
+ *          encoding 1 (DELTA): the rates as integers round(rate x 10^scale), scale 0 to 18, the
+ *          first one as a zigzag varint and each following one as the zigzag varint of its
+ *          difference to the previous one (varint: 7 bits per byte, low bits first, high bit set
+ *          on all but the last byte)
+ *
+ * DELTA is used for every series of finite rates; a client divides by 10^scale. When every rate
+ * is exact with at most 9 decimals, as EUR-based reference rates are, the scale is the fewest
+ * such decimals and the client gets exactly the doubles the JSON form carries. Cross rates
+ * (a quotient of two EUR rates) and period means never are, so they are rounded to
+ * currency.series.significantDigits (7) significant digits of the largest rate in the series,
+ * more than the 5 significant digits the reference rates are published with. FLOAT, single
+ * precision, is only left for rates that are not finite or too large to scale.
+ *
+ * Author: Aditya Aayush
+ */
+public final class RateSeriesFormat {
+
+    // Media type requested in the Accept header and sent as the response content type.
+    public static final String MEDIA_TYPE = "application/vnd.currency.rate-series";
+    static final int VERSION = 1;
+    static final int ENCODING_FLOAT = 0;
+    static final int ENCODING_DELTA = 1;
+    static final int HEADER_SIZE = 16;
+
+    // Most decimals searched for an exact scale, and most decimals of a rounded one.
+    private static final int MAX_EXACT_SCALE = 9;
+    private static final int MAX_SCALE = 18;
+    private static final int SIGNIFICANT_DIGITS = Math.max(1, Math.min(15, ServiceConfig.getInt("series.significantDigits", 7)));
+    private static final double[] POWERS_OF_TEN = {
+            1e0, 1e1, 1e2, 1e3, 1e4, 1e5, 1e6, 1e7, 1e8, 1e9,
+            1e10, 1e11, 1e12, 1e13, 1e14, 1e15, 1e16, 1e17, 1e18};
+    // Largest magnitude whose scaled value is still an exact long.
+    private static final double MAX_EXACT = 9007199254740992.0;
+
+    // Utility class, no instances.
+    private RateSeriesFormat() {
+    }
+
+    /**
+     * Decides from an Accept header whether a client gets the binary form: it must list
+     * {@link #MEDIA_TYPE} with a quality not lower than that of JSON.
+     *
+     * @param accept The Accept header, or null.
+     * @return Whether to send the binary form.
+     */
+    public static boolean isPreferred(String accept) {
+        if (accept == null) {
+            return false;
+        }
+        double binaryQuality = 0;
+        double jsonQuality = 0;
+        for (String range : accept.split(",")) {
+            String[] parts = range.split(";");
+            String type = parts[0].trim();
+            double quality = 1;
+            for (int i = 1; i < parts.length; i++) {
+                String parameter = parts[i].trim();
+                if (parameter.startsWith("q=")) {
+                    try {
+                        quality = Double.parseDouble(parameter.substring(2));
+                    } catch (NumberFormatException e) {
+                        quality = 0;
+                    }
+                }
+            }
+            if (type.equalsIgnoreCase(MEDIA_TYPE)) {
+                binaryQuality = Math.max(binaryQuality, quality);
+            } else if (type.equalsIgnoreCase("application/json") || type.equals("application/*") || type.equals("*/*")) {
+                jsonQuality = Math.max(jsonQuality, quality);
+            }
+        }
+        return binaryQuality > 0 && binaryQuality >= jsonQuality;
+    }
+
+    /**
+     * Encodes a series.
+     *
+     * @param series The rates in ascending date order.
+     * @return The encoded series.
+     */
+    public static byte[] encode(HistoricalRateStore.Series series) {
+        int[] days = series.getEpochDays();
+        double[] rates = series.getRates();
+        int count = series.length();
+        int startDay = count == 0 ? 0 : days[0];
+        int dayCount = count == 0 ? 0 : days[count - 1] - startDay + 1;
+        int scale = count == 0 ? 0 : exactScale(rates, count);
+        if (scale < 0) {
+            scale = roundedScale(rates, count);
+        }
+        int encoding = scale >= 0 ? ENCODING_DELTA : ENCODING_FLOAT;
+
+        // A zigzag varint of a long takes at most 10 bytes
+        int bitmapSize = (dayCount + 7) / 8;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + bitmapSize + count * (encoding == ENCODING_DELTA ? 10 : 4));
+        buffer.put((byte) VERSION).put((byte) encoding).put((byte) Math.max(scale, 0)).put((byte) 0);
+        buffer.putInt(startDay).putInt(dayCount).putInt(count);
+
+        byte[] bitmap = buffer.array();
+        for (int i = 0; i < count; i++) {
+            int bit = days[i] - startDay;
+            bitmap[HEADER_SIZE + (bit >>> 3)] |= (byte) (1 << (bit & 7));
+        }
+        buffer.position(HEADER_SIZE + bitmapSize);
+
+        if (encoding == ENCODING_DELTA) {
+            long previous = 0;
+            for (int i = 0; i < count; i++) {
+                long scaled = (long) Math.rint(rates[i] * POWERS_OF_TEN[scale]);
+                putVarint(buffer, scaled - previous);
+                previous = scaled;
+            }
+        } else {
+            for (int i = 0; i < count; i++) {
+                buffer.putFloat((float) rates[i]);
+            }
+        }
+        return Arrays.copyOf(buffer.array(), buffer.position());
+    }
+
+    /**
+     * @return The fewest decimals with which every rate is exact, or -1 if there is none up to MAX_EXACT_SCALE.
+     */
+    static int exactScale(double[] rates, int count) {
+        int scale = 0;
+        for (int i = 0; i < count; i++) {
+            double rate = rates[i];
+            if (!Double.isFinite(rate)) {
+                return -1;
+            }
+            while (true) {
+                double scaled = Math.rint(rate * POWERS_OF_TEN[scale]);
+                if (Math.abs(scaled) >= MAX_EXACT) {
+                    return -1;
+                }
+                if (scaled / POWERS_OF_TEN[scale] == rate) {
+                    break;
+                }
+                if (++scale > MAX_EXACT_SCALE) {
+                    return -1;
+                }
+            }
+        }
+        return scale;
+    }
+
+    /**
+     * @return The decimals that keep SIGNIFICANT_DIGITS significant digits of the largest rate,
+     *         or -1 if a rate is not finite or cannot be scaled to an exact long.
+     */
+    static int roundedScale(double[] rates, int count) {
+        double largest = 0;
+        for (int i = 0; i < count; i++) {
+            if (!Double.isFinite(rates[i])) {
+                return -1;
+            }
+            largest = Math.max(largest, Math.abs(rates[i]));
+        }
+        if (largest == 0) {
+            return 0;
+        }
+        int integerDigits = (int) Math.floor(Math.log10(largest)) + 1;
+        int scale = Math.max(0, Math.min(MAX_SCALE, SIGNIFICANT_DIGITS - integerDigits));
+        return largest * POWERS_OF_TEN[scale] < MAX_EXACT ? scale : -1;
+    }
+
+    // Zigzag maps small negative and positive numbers alike to small unsigned ones
+    private static void putVarint(ByteBuffer buffer, long value) {
+        long zigzag = (value << 1) ^ (value >> 63);
+        while ((zigzag & ~0x7FL) != 0) {
+            buffer.put((byte) ((zigzag & 0x7F) | 0x80));
+            zigzag >>>= 7;
+        }
+        buffer.put((byte) zigzag);
+    }
+}
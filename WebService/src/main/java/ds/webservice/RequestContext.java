@@ -0,0 +1,236 @@
+package ds.webservice;
+
+import jakarta.servlet.ServletRequest;
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Identity, trace spans and telemetry sampling decision of one API request. The context is
+ * created by {@link RequestContextFilter}, kept as a request attribute and bound to the thread
+ * that is currently working on the request, so code without access to the request can still find it.
+ *
+ * The request id is returned in the X-Request-Id header and stamped on the client, server and
+ * service records of the request, which makes them joinable. A client may send its own
+ * X-Request-Id (up to 64 letters, digits, '.', '_' or '-'); otherwise a random one is used.
+ *
+ * Spans are kept with nanosecond resolution as offsets from the moment the request entered the
+ * filter: parse (until the request is handed to the async pipeline), upstream (the upstream API
+ * call, absent when the answer came from a cache or another request's call), serialize (encoding
+ * the JSON response) and write (handing its bytes to the container). They are stored with the
+ * service record.
+ *
+ * Sampling is head-based: whether the request's telemetry is kept is decided once, from a hash of
+ * the request id, so the client, server and service records of one request are kept or dropped
+ * together. The rate is currency.telemetry.sampleRate (1.0, keep everything), overridden per
+ * endpoint by currency.telemetry.sampleRate.latest and currency.telemetry.sampleRate.historical.
+ *
+ * Author: Aditya Aayush
+ */
+public final class RequestContext {
+
+    /**
+     * Phases of a request recorded as spans.
+     */
+    public enum Span {
+        PARSE("parse"), UPSTREAM("upstream"), SERIALIZE("serialize"), WRITE("write");
+
+        private final String label;
+
+        Span(String label) {
+            this.label = label;
+        }
+
+        public String getLabel() {
+            return label;
+        }
+    }
+
+    // Header carrying the request id in both directions.
+    public static final String HEADER = "X-Request-Id";
+    // Request attribute holding the context.
+    static final String ATTRIBUTE = RequestContext.class.getName();
+    private static final ThreadLocal<RequestContext> CURRENT = new ThreadLocal<>();
+
+    private static final double DEFAULT_SAMPLE_RATE = ServiceConfig.getDouble("telemetry.sampleRate", 1.0);
+    // Sample rate per endpoint, resolved once per endpoint name.
+    private static final Map<String, Double> SAMPLE_RATES = new ConcurrentHashMap<>();
+
+    private final String requestId;
+    private final String endpoint;
+    private final boolean sampled;
+    // System.nanoTime() when the request entered the filter, the origin of all span offsets.
+    private final long startNanos = System.nanoTime();
+    // Start offset and duration of each span, -1 until recorded. Guarded by this.
+    private final long[] spanStarts = new long[Span.values().length];
+    private final long[] spanDurations = new long[Span.values().length];
+
+    RequestContext(String requestId, String endpoint) {
+        this.requestId = requestId;
+        this.endpoint = endpoint;
+        this.sampled = keep(requestId, sampleRate(endpoint));
+        Arrays.fill(spanStarts, -1);
+    }
+
+    /**
+     * Creates the context of a new request.
+     *
+     * @param endpoint The endpoint name, e.g. "latest".
+     * @param requestId The id sent by the client, or null. Ids that are not well-formed are replaced by a random one.
+     * @return The new context.
+     */
+    static RequestContext create(String endpoint, String requestId) {
+        if (!isValidId(requestId)) {
+            requestId = Long.toHexString(ThreadLocalRandom.current().nextLong());
+        }
+        return new RequestContext(requestId, endpoint);
+    }
+
+    /**
+     * @return The context stored on the request, or null if the request did not pass the filter.
+     */
+    public static RequestContext of(ServletRequest request) {
+        return (RequestContext) request.getAttribute(ATTRIBUTE);
+    }
+
+    /**
+     * @return The context bound to the current thread, or null outside of request processing.
+     */
+    public static RequestContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * Binds a context to the current thread.
+     *
+     * @param context The context to bind, or null to unbind.
+     * @return The previously bound context, to be restored when the work is done.
+     */
+    public static RequestContext attach(RequestContext context) {
+        RequestContext previous = CURRENT.get();
+        if (context == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(context);
+        }
+        return previous;
+    }
+
+    /**
+     * Telemetry written outside of a request (context null), e.g. by background refreshes, is always kept.
+     *
+     * @return Whether telemetry of the request with this context should be written.
+     */
+    public static boolean isSampled(RequestContext context) {
+        return context == null || context.sampled;
+    }
+
+    public String getRequestId() {
+        return requestId;
+    }
+
+    public String getEndpoint() {
+        return endpoint;
+    }
+
+    public boolean isSampled() {
+        return sampled;
+    }
+
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * Records a span that started at the given time and ends now.
+     *
+     * @param span The phase.
+     * @param spanStartNanos System.nanoTime() when the phase started.
+     */
+    public void end(Span span, long spanStartNanos) {
+        record(span, spanStartNanos, System.nanoTime());
+    }
+
+    /**
+     * Records a span. A phase recorded twice, e.g. two upstream calls, covers both.
+     *
+     * @param span The phase.
+     * @param spanStartNanos System.nanoTime() when the phase started.
+     * @param spanEndNanos System.nanoTime() when the phase ended.
+     */
+    public synchronized void record(Span span, long spanStartNanos, long spanEndNanos) {
+        int i = span.ordinal();
+        long start = spanStartNanos - startNanos;
+        long end = spanEndNanos - startNanos;
+        if (spanStarts[i] >= 0) {
+            end = Math.max(end, spanStarts[i] + spanDurations[i]);
+            start = Math.min(start, spanStarts[i]);
+        }
+        spanStarts[i] = start;
+        spanDurations[i] = end - start;
+    }
+
+    /**
+     * @return The recorded spans in phase order, each {name, startNanos, durationNanos}.
+     */
+    public synchronized List<Document> getSpans() {
+        List<Document> spans = new ArrayList<>(spanStarts.length);
+        for (Span span : Span.values()) {
+            int i = span.ordinal();
+            if (spanStarts[i] >= 0) {
+                spans.add(new Document("name", span.getLabel())
+                        .append("startNanos", spanStarts[i])
+                        .append("durationNanos", spanDurations[i]));
+            }
+        }
+        return spans;
+    }
+
+    private static boolean isValidId(String id) {
+        if (id == null || id.isEmpty() || id.length() > 64) {
+            return false;
+        }
+        for (int i = 0; i < id.length(); i++) {
+            char c = id.charAt(i);
+            if (!(c >= 'a' && c <= 'z' || c >= 'A' && c <= 'Z' || c >= '0' && c <= '9' || c == '.' || c == '_' || c == '-')) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return The configured sample rate of an endpoint, between 0 and 1.
+     */
+    static double sampleRate(String endpoint) {
+        return SAMPLE_RATES.computeIfAbsent(endpoint,
+                name -> Math.max(0, Math.min(1, ServiceConfig.getDouble("telemetry.sampleRate." + name, DEFAULT_SAMPLE_RATE))));
+    }
+
+    /**
+     * Maps the request id to a uniformly distributed number in [0, 1) and keeps the request if it
+     * falls below the rate. The same id always gets the same decision.
+     */
+    static boolean keep(String requestId, double rate) {
+        if (rate >= 1) {
+            return true;
+        }
+        if (rate <= 0) {
+            return false;
+        }
+        // FNV-1a over the id, then the MurmurHash3 finalizer to spread similar ids apart
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < requestId.length(); i++) {
+            hash = (hash ^ requestId.charAt(i)) * 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 33)) * 0xff51afd7ed558ccdL;
+        hash = (hash ^ (hash >>> 33)) * 0xc4ceb9fe1a85ec53L;
+        hash ^= hash >>> 33;
+        return (hash >>> 11) * 0x1.0p-53 < rate;
+    }
+}
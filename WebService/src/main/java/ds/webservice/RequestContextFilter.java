@@ -0,0 +1,47 @@
+/**
+ * Filter giving every API request a {@link RequestContext}, so LatestRatesServlet and
+ * HistoricalRatesServlet share one place where it is created. The context is stored as a request
+ * attribute and bound to the container thread while the servlet runs, and unbound afterwards so
+ * pooled threads never carry it over to the next request. Its id is returned in the X-Request-Id
+ * response header.
+ *
+ * Author: Aditya Aayush
+ */
+
+package ds.webservice;
+
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.annotation.WebFilter;
+import jakarta.servlet.http.HttpFilter;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+
+import java.io.IOException;
+
+// Applies to the API servlets, which process requests asynchronously
+@WebFilter(urlPatterns = {"/api/*"}, asyncSupported = true)
+public class RequestContextFilter extends HttpFilter {
+
+    @Override
+    protected void doFilter(HttpServletRequest request, HttpServletResponse response, FilterChain chain)
+            throws IOException, ServletException {
+        RequestContext context = RequestContext.create(endpointOf(request), request.getHeader(RequestContext.HEADER));
+        request.setAttribute(RequestContext.ATTRIBUTE, context);
+        response.setHeader(RequestContext.HEADER, context.getRequestId());
+        RequestContext previous = RequestContext.attach(context);
+        try {
+            chain.doFilter(request, response);
+        } finally {
+            RequestContext.attach(previous);
+        }
+    }
+
+    // "/api/latest" -> "latest", the name used in the per-endpoint settings
+    private static String endpointOf(HttpServletRequest request) {
+        String path = request.getServletPath();
+        String name = path.startsWith("/api/") ? path.substring("/api/".length()) : path;
+        int slash = name.indexOf('/');
+        return slash < 0 ? name : name.substring(0, slash);
+    }
+}
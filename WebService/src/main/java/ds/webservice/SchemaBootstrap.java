@@ -0,0 +1,144 @@
+package ds.webservice;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.CreateCollectionOptions;
+import com.mongodb.client.model.IndexOptions;
+import com.mongodb.client.model.Indexes;
+import org.bson.Document;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Creates the indexes and retention settings the service relies on. Runs once at startup and is
+ * idempotent: existing indexes with the same definition are left alone.
+ *
+ * - conversion_requests gets a unique index on {fromCurrency, toCurrency}, so the per-request
+ *   upsert is an index lookup instead of a collection scan.
+ * - The telemetry collections get an index on createdAt. With the default "ttl" retention it is
+ *   a TTL index that removes documents older than currency.telemetry.retentionDays (90).
+ * - With currency.telemetry.retention=capped, telemetry collections that do not exist yet are
+ *   created as capped collections of currency.telemetry.cappedMegabytes (256) each. Existing
+ *   collections are not converted, since that rewrites and locks them.
+ * - currency.telemetry.retention=none keeps everything and only creates the time index.
+ * - The telemetry collections also get a sparse index on requestId, so the records of one
+ *   request can be joined without scanning.
+ *
+ * The outcome is reported on /metrics and the dashboard rather than logged, above all a missing
+ * unique pair index, without which concurrent upserts can create duplicate pair documents.
+ *
+ * Author: Aditya Aayush
+ */
+public final class SchemaBootstrap {
+
+    private static final String RETENTION = ServiceConfig.getString("telemetry.retention", "ttl");
+    private static final long RETENTION_DAYS = ServiceConfig.getLong("telemetry.retentionDays", 90);
+    private static final long CAPPED_MEGABYTES = ServiceConfig.getLong("telemetry.cappedMegabytes", 256);
+
+    // Outcome of the last run, read by the metrics endpoint and the dashboard.
+    private static volatile boolean finished;
+    private static volatile boolean pairIndexReady;
+    private static final List<String> FAILURES = new CopyOnWriteArrayList<>();
+
+    // Utility class, no instances.
+    private SchemaBootstrap() {
+    }
+
+    /**
+     * Creates the indexes and collections. Failures are recorded for {@link #getFailures()} and
+     * do not stop the service.
+     */
+    public static void run() {
+        FAILURES.clear();
+        try {
+            MongoDatabase database = MongoConnectionInstance.getInstance().getDatabase("Project4");
+            createPairIndex(database);
+            // Existing collections and whether each one is capped
+            Map<String, Boolean> existing = new HashMap<>();
+            for (Document collection : database.listCollections()) {
+                Document options = collection.get("options", Document.class);
+                existing.put(collection.getString("name"), options != null && Boolean.TRUE.equals(options.get("capped")));
+            }
+            for (String collection : TelemetryWriter.COLLECTIONS) {
+                boolean capped = existing.getOrDefault(collection, false);
+                if (RETENTION.equalsIgnoreCase("capped") && !existing.containsKey(collection)) {
+                    database.createCollection(collection, new CreateCollectionOptions()
+                            .capped(true)
+                            .sizeInBytes(CAPPED_MEGABYTES * 1024 * 1024));
+                    capped = true;
+                }
+                createTimeIndex(database, collection, capped);
+                database.getCollection(collection).createIndex(Indexes.ascending("requestId"),
+                        new IndexOptions().sparse(true).name("requestId"));
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+            FAILURES.add("bootstrap: " + e.getMessage());
+        } finally {
+            finished = true;
+        }
+    }
+
+    /**
+     * @return Whether the startup run has ended, successfully or not.
+     */
+    public static boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * @return Whether the unique index on conversion pairs exists, so pair upserts cannot create duplicates.
+     */
+    public static boolean isPairIndexReady() {
+        return pairIndexReady;
+    }
+
+    /**
+     * @return The indexes or collections the last run could not create, with the reason.
+     */
+    public static List<String> getFailures() {
+        return List.copyOf(FAILURES);
+    }
+
+    /**
+     * Unique index backing the conversion pair upsert.
+     */
+    private static void createPairIndex(MongoDatabase database) {
+        try {
+            database.getCollection("conversion_requests").createIndex(
+                    Indexes.ascending("fromCurrency", "toCurrency"),
+                    new IndexOptions().unique(true).name("pair_unique"));
+            pairIndexReady = true;
+        } catch (MongoCommandException e) {
+            // Duplicate pairs written before the index existed have to be merged by hand first
+            FAILURES.add("pair_unique on conversion_requests: " + e.getErrorMessage());
+        }
+    }
+
+    /**
+     * Index on createdAt, with TTL expiry unless retention is disabled or the collection is capped
+     * (capped collections do not support TTL indexes).
+     */
+    private static void createTimeIndex(MongoDatabase database, String collection, boolean capped) {
+        IndexOptions options = new IndexOptions().name("createdAt");
+        if (RETENTION.equalsIgnoreCase("ttl") && RETENTION_DAYS > 0 && !capped) {
+            options.expireAfter(RETENTION_DAYS, TimeUnit.DAYS);
+        }
+        try {
+            database.getCollection(collection).createIndex(Indexes.ascending("createdAt"), options);
+        } catch (MongoCommandException e) {
+            // The index exists with a different expiry: update it in place
+            if (options.getExpireAfter(TimeUnit.SECONDS) != null) {
+                database.runCommand(new Document("collMod", collection)
+                        .append("index", new Document("name", "createdAt")
+                                .append("expireAfterSeconds", options.getExpireAfter(TimeUnit.SECONDS))));
+            } else {
+                FAILURES.add("createdAt on " + collection + ": " + e.getErrorMessage());
+            }
+        }
+    }
+}
@@ -0,0 +1,133 @@
+package ds.webservice;
+
+import com.mongodb.client.MongoCollection;
+import com.mongodb.client.MongoDatabase;
+import com.mongodb.client.model.BulkWriteOptions;
+import com.mongodb.client.model.Filters;
+import com.mongodb.client.model.ReplaceOneModel;
+import com.mongodb.client.model.WriteModel;
+import org.bson.Document;
+import org.bson.conversions.Bson;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import static com.mongodb.client.model.Sorts.ascending;
+
+/**
+ * Background job rewriting telemetry documents stored before {@link TelemetrySchema} version 2.
+ *
+ * Documents without a "v" field are read in _id order, converted with
+ * {@link TelemetrySchema#upgrade(String, Document)} and replaced with one unordered bulkWrite per
+ * batch of currency.migration.batchSize (500) documents, pausing currency.migration.pauseMillis
+ * (200) between batches so the job does not compete with live traffic. A converted document no
+ * longer matches the filter, so the job can be stopped and restarted at any point.
+ *
+ * Before and after each collection the job records collStats (documents, data size, average
+ * document size, storage size) and the time of an average-responseTime aggregation, and stores
+ * both in the "schema_migrations" collection.
+ * Disabled with currency.migration.enabled=false.
+ *
+ * Author: Aditya Aayush
+ */
+public final class SchemaMigration {
+
+    private static final boolean ENABLED = Boolean.parseBoolean(ServiceConfig.getString("migration.enabled", "true"));
+    private static final int BATCH_SIZE = ServiceConfig.getInt("migration.batchSize", 500);
+    private static final long PAUSE_MILLIS = ServiceConfig.getLong("migration.pauseMillis", 200);
+
+    // Collections holding a numeric responseTime, used for the query timing.
+    private static final List<String> TIMED = List.of("server_response", "service_response");
+
+    // Utility class, no instances.
+    private SchemaMigration() {
+    }
+
+    /**
+     * Migrates every telemetry collection. Failures are reported and leave the remaining
+     * documents for the next start.
+     */
+    public static void run() {
+        if (!ENABLED) {
+            return;
+        }
+        try {
+            MongoDatabase database = MongoConnectionInstance.getInstance().getDatabase("Project4");
+            for (String collection : TelemetryWriter.COLLECTIONS) {
+                migrate(database, collection);
+            }
+        } catch (RuntimeException e) {
+            e.printStackTrace();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Converts the old documents of one collection and records the savings.
+     */
+    private static void migrate(MongoDatabase database, String collectionName) throws InterruptedException {
+        MongoCollection<Document> collection = database.getCollection(collectionName);
+        Bson outdated = Filters.exists(TelemetrySchema.VERSION_FIELD, false);
+        if (collection.find(outdated).limit(1).first() == null) {
+            return;
+        }
+
+        Document before = measure(database, collectionName, false);
+        long migrated = 0;
+        long start = System.nanoTime();
+        // Each batch continues after the last _id of the previous one, so migrated documents are not scanned again
+        Object lastId = null;
+        while (true) {
+            List<WriteModel<Document>> replacements = new ArrayList<>(BATCH_SIZE);
+            Bson batch = lastId == null ? outdated : Filters.and(Filters.gt("_id", lastId), outdated);
+            for (Document document : collection.find(batch).sort(ascending("_id")).limit(BATCH_SIZE)) {
+                lastId = document.get("_id");
+                replacements.add(new ReplaceOneModel<>(Filters.eq("_id", lastId),
+                        TelemetrySchema.upgrade(collectionName, document)));
+            }
+            if (replacements.isEmpty()) {
+                break;
+            }
+            collection.bulkWrite(replacements, new BulkWriteOptions().ordered(false));
+            migrated += replacements.size();
+            Thread.sleep(PAUSE_MILLIS);
+        }
+        Document after = measure(database, collectionName, true);
+
+        Document report = new Document("collection", collectionName)
+                .append("schemaVersion", TelemetrySchema.VERSION)
+                .append("migrated", migrated)
+                .append("durationMillis", (System.nanoTime() - start) / 1_000_000)
+                .append("before", before)
+                .append("after", after)
+                .append("completedAt", new Date());
+        database.getCollection("schema_migrations").insertOne(report);
+    }
+
+    /**
+     * Reads the storage statistics of a collection and, for response logs, times the
+     * average-responseTime aggregation. Version 1 stores responseTime as a string, so the query
+     * before the migration has to convert it on every document.
+     *
+     * @param typed Whether responseTime is already numeric.
+     */
+    private static Document measure(MongoDatabase database, String collectionName, boolean typed) {
+        Document stats = database.runCommand(new Document("collStats", collectionName));
+        Document measurement = new Document("count", stats.get("count"))
+                .append("size", stats.get("size"))
+                .append("avgObjSize", stats.get("avgObjSize"))
+                .append("storageSize", stats.get("storageSize"));
+        if (TIMED.contains(collectionName)) {
+            Object responseTime = typed ? "$responseTime"
+                    : new Document("$convert", new Document("input", "$responseTime")
+                            .append("to", "double").append("onError", null).append("onNull", null));
+            long start = System.nanoTime();
+            database.getCollection(collectionName).aggregate(List.of(new Document("$group",
+                    new Document("_id", null).append("average", new Document("$avg", responseTime))))).first();
+            measurement.append("queryMillis", (System.nanoTime() - start) / 1_000_000);
+        }
+        return measurement;
+    }
+}
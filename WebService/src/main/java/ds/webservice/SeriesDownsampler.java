@@ -0,0 +1,173 @@
+package ds.webservice;
+
+/**
+ * Reduces a time series to a requested number of points for display, so a chart a thousand
+ * pixels wide does not receive five thousand days. Each method walks the primitive arrays of
+ * the series once, bucket by bucket, and fills new arrays of the target size.
+ *
+ * LTTB (largest triangle three buckets, S. Steinarsson) keeps the first and last day and from
+ * each bucket in between the day that spans the largest triangle with the day kept from the
+ * previous bucket and the average of the next bucket, which preserves the visual shape of the
+ * line including its peaks. MIN_MAX keeps the lowest and highest day of each bucket in date
+ * order, so no extreme is lost. AVERAGE replaces each bucket by its mean rate, dated at the
+ * bucket's middle day.
+ *
+ * Author: Aditya Aayush
+ */
+public final class SeriesDownsampler {
+
+    /**
+     * Downsampling methods, selected with the "downsample" request parameter.
+     */
+    public enum Method {
+        LTTB, MIN_MAX, AVERAGE;
+
+        /**
+         * @param name "lttb", "minmax" or "avg", or null for LTTB.
+         * @return The method, or null if the name is unknown.
+         */
+        public static Method of(String name) {
+            if (name == null || name.equalsIgnoreCase("lttb")) {
+                return LTTB;
+            }
+            if (name.equalsIgnoreCase("minmax")) {
+                return MIN_MAX;
+            }
+            if (name.equalsIgnoreCase("avg")) {
+                return AVERAGE;
+            }
+            return null;
+        }
+    }
+
+    // Utility class, no instances.
+    private SeriesDownsampler() {
+    }
+
+    /**
+     * @param series The rates in ascending date order.
+     * @param points The maximum number of points to return, at least 3.
+     * @param method The downsampling method.
+     * @return The series itself if it has no more than the requested points, else the reduced series.
+     */
+    public static HistoricalRateStore.Series downsample(HistoricalRateStore.Series series, int points, Method method) {
+        if (series.length() <= points) {
+            return series;
+        }
+        switch (method) {
+            case MIN_MAX:
+                return minMax(series, points);
+            case AVERAGE:
+                return average(series, points);
+            default:
+                return lttb(series, points);
+        }
+    }
+
+    static HistoricalRateStore.Series lttb(HistoricalRateStore.Series series, int points) {
+        int[] days = series.getEpochDays();
+        double[] rates = series.getRates();
+        int length = series.length();
+        int[] sampledDays = new int[points];
+        double[] sampledRates = new double[points];
+
+        // The first and last day are always kept; the days in between form points - 2 buckets
+        sampledDays[0] = days[0];
+        sampledRates[0] = rates[0];
+        double bucketSize = (double) (length - 2) / (points - 2);
+        int kept = 0;
+        for (int bucket = 0; bucket < points - 2; bucket++) {
+            int from = (int) (bucket * bucketSize) + 1;
+            int to = Math.min((int) ((bucket + 1) * bucketSize) + 1, length - 1);
+
+            // Average of the next bucket, or the last day for the last bucket
+            int nextFrom = to;
+            int nextTo = Math.min((int) ((bucket + 2) * bucketSize) + 1, length);
+            if (bucket == points - 3) {
+                nextFrom = length - 1;
+                nextTo = length;
+            }
+            double averageDay = 0;
+            double averageRate = 0;
+            for (int i = nextFrom; i < nextTo; i++) {
+                averageDay += days[i];
+                averageRate += rates[i];
+            }
+            averageDay /= nextTo - nextFrom;
+            averageRate /= nextTo - nextFrom;
+
+            // The day forming the largest triangle with the kept day and the next bucket's average
+            double keptDay = days[kept];
+            double keptRate = rates[kept];
+            double largestArea = -1;
+            int largest = from;
+            for (int i = from; i < to; i++) {
+                double area = Math.abs((keptDay - averageDay) * (rates[i] - keptRate) - (keptDay - days[i]) * (averageRate - keptRate));
+                if (area > largestArea) {
+                    largestArea = area;
+                    largest = i;
+                }
+            }
+            sampledDays[bucket + 1] = days[largest];
+            sampledRates[bucket + 1] = rates[largest];
+            kept = largest;
+        }
+        sampledDays[points - 1] = days[length - 1];
+        sampledRates[points - 1] = rates[length - 1];
+        return new HistoricalRateStore.Series(sampledDays, sampledRates, points);
+    }
+
+    static HistoricalRateStore.Series minMax(HistoricalRateStore.Series series, int points) {
+        int[] days = series.getEpochDays();
+        double[] rates = series.getRates();
+        int length = series.length();
+        // Two points per bucket
+        int buckets = points / 2;
+        int[] sampledDays = new int[buckets * 2];
+        double[] sampledRates = new double[buckets * 2];
+        int count = 0;
+        for (int bucket = 0; bucket < buckets; bucket++) {
+            int from = (int) ((long) bucket * length / buckets);
+            int to = (int) ((long) (bucket + 1) * length / buckets);
+            int min = from;
+            int max = from;
+            for (int i = from + 1; i < to; i++) {
+                if (rates[i] < rates[min]) {
+                    min = i;
+                }
+                if (rates[i] > rates[max]) {
+                    max = i;
+                }
+            }
+            // In date order; a flat bucket contributes a single point
+            int first = Math.min(min, max);
+            int second = Math.max(min, max);
+            sampledDays[count] = days[first];
+            sampledRates[count++] = rates[first];
+            if (second != first) {
+                sampledDays[count] = days[second];
+                sampledRates[count++] = rates[second];
+            }
+        }
+        return new HistoricalRateStore.Series(sampledDays, sampledRates, count);
+    }
+
+    static HistoricalRateStore.Series average(HistoricalRateStore.Series series, int points) {
+        int[] days = series.getEpochDays();
+        double[] rates = series.getRates();
+        int length = series.length();
+        int[] sampledDays = new int[points];
+        double[] sampledRates = new double[points];
+        for (int bucket = 0; bucket < points; bucket++) {
+            int from = (int) ((long) bucket * length / points);
+            int to = (int) ((long) (bucket + 1) * length / points);
+            double sum = 0;
+            for (int i = from; i < to; i++) {
+                sum += rates[i];
+            }
+            sampledDays[bucket] = days[(from + to - 1) / 2];
+            sampledRates[bucket] = sum / (to - from);
+        }
+        return new HistoricalRateStore.Series(sampledDays, sampledRates, points);
+    }
+}
@@ -0,0 +1,261 @@
+package ds.webservice;
+
+import java.time.LocalDate;
+import java.util.Arrays;
+
+/**
+ * Weekly or monthly aggregates of a daily time series: open, high, low, close and mean rate of
+ * every period that has at least one rate. Periods are calendar weeks starting on Monday or
+ * calendar months, identified by their first calendar day.
+ *
+ * {@link HistoricalRateStore} keeps the rollup of the whole history of a pair and answers range
+ * queries from it with {@link #range(int, int, DailySource)}. Only the periods cut by the range
+ * boundaries are recomputed from daily rates, so the cost of a query grows with the number of
+ * periods it returns rather than the number of days it covers.
+ *
+ * Author: Aditya Aayush
+ */
+public final class SeriesRollup {
+
+    /**
+     * Resolutions of the "interval" request parameter.
+     */
+    public enum Interval {
+        DAY, WEEK, MONTH;
+
+        /**
+         * @param name "day", "week" or "month", or null for DAY.
+         * @return The interval, or null if the name is unknown.
+         */
+        public static Interval of(String name) {
+            if (name == null || name.equalsIgnoreCase("day")) {
+                return DAY;
+            }
+            if (name.equalsIgnoreCase("week")) {
+                return WEEK;
+            }
+            if (name.equalsIgnoreCase("month")) {
+                return MONTH;
+            }
+            return null;
+        }
+    }
+
+    /**
+     * Daily rates of a pair for a range of epoch days, inclusive.
+     */
+    @FunctionalInterface
+    interface DailySource {
+        HistoricalRateStore.Series range(int startDay, int endDay);
+    }
+
+    private final Interval interval;
+    private final int[] periodDays;
+    private final double[] open;
+    private final double[] high;
+    private final double[] low;
+    private final double[] close;
+    private final double[] mean;
+    private final int length;
+
+    private SeriesRollup(Interval interval, int[] periodDays, double[] open, double[] high, double[] low, double[] close, double[] mean, int length) {
+        this.interval = interval;
+        this.periodDays = periodDays;
+        this.open = open;
+        this.high = high;
+        this.low = low;
+        this.close = close;
+        this.mean = mean;
+        this.length = length;
+    }
+
+    /**
+     * Aggregates a daily series in a single pass.
+     *
+     * @param daily The rates in ascending date order.
+     * @param interval WEEK or MONTH.
+     * @return The aggregates of every period with at least one rate.
+     */
+    public static SeriesRollup of(HistoricalRateStore.Series daily, Interval interval) {
+        int[] days = daily.getEpochDays();
+        double[] rates = daily.getRates();
+        int count = daily.length();
+        // Enough for weeks; months need fewer
+        int capacity = count == 0 ? 0 : (days[count - 1] - days[0]) / 7 + 2;
+        int[] periodDays = new int[capacity];
+        double[] open = new double[capacity];
+        double[] high = new double[capacity];
+        double[] low = new double[capacity];
+        double[] close = new double[capacity];
+        double[] mean = new double[capacity];
+
+        int length = 0;
+        int periodEnd = Integer.MIN_VALUE;
+        double sum = 0;
+        int periodCount = 0;
+        for (int i = 0; i < count; i++) {
+            int day = days[i];
+            double rate = rates[i];
+            if (day >= periodEnd) {
+                // Close the previous period and open the one containing this day
+                if (periodCount > 0) {
+                    mean[length - 1] = sum / periodCount;
+                }
+                int periodStart = periodStart(day, interval);
+                periodEnd = nextPeriodStart(periodStart, interval);
+                periodDays[length] = periodStart;
+                open[length] = rate;
+                high[length] = rate;
+                low[length] = rate;
+                length++;
+                sum = 0;
+                periodCount = 0;
+            }
+            high[length - 1] = Math.max(high[length - 1], rate);
+            low[length - 1] = Math.min(low[length - 1], rate);
+            close[length - 1] = rate;
+            sum += rate;
+            periodCount++;
+        }
+        if (periodCount > 0) {
+            mean[length - 1] = sum / periodCount;
+        }
+        return new SeriesRollup(interval, periodDays, open, high, low, close, mean, length);
+    }
+
+    /**
+     * Returns the aggregates of the periods overlapping a date range. Periods that extend beyond
+     * the range are recomputed from the daily rates inside it, so the result equals the rollup of
+     * the daily series of the range.
+     *
+     * @param startDay The first epoch day of the range (inclusive).
+     * @param endDay The last epoch day of the range (inclusive).
+     * @param daily Supplies the daily rates for the cut periods.
+     * @return The aggregates of the range.
+     */
+    SeriesRollup range(int startDay, int endDay, DailySource daily) {
+        int first = lowerBound(periodStart(startDay, interval));
+        int last = lowerBound(endDay + 1);
+        int count = Math.max(0, last - first);
+        SeriesRollup slice = new SeriesRollup(interval,
+                Arrays.copyOfRange(periodDays, first, first + count), Arrays.copyOfRange(open, first, first + count),
+                Arrays.copyOfRange(high, first, first + count), Arrays.copyOfRange(low, first, first + count),
+                Arrays.copyOfRange(close, first, first + count), Arrays.copyOfRange(mean, first, first + count), count);
+        if (count == 0) {
+            return slice;
+        }
+
+        // The first and last period may be cut by the range; one period can be both
+        boolean cutFirst = slice.periodDays[0] < startDay;
+        boolean cutLast = nextPeriodStart(slice.periodDays[count - 1], interval) - 1 > endDay;
+        if (count == 1 && (cutFirst || cutLast)) {
+            return slice.replace(0, daily.range(startDay, endDay));
+        }
+        if (cutFirst) {
+            slice = slice.replace(0, daily.range(startDay, nextPeriodStart(slice.periodDays[0], interval) - 1));
+        }
+        if (cutLast) {
+            slice = slice.replace(slice.length - 1, daily.range(slice.periodDays[slice.length - 1], endDay));
+        }
+        return slice;
+    }
+
+    public Interval getInterval() {
+        return interval;
+    }
+
+    /**
+     * @return The first calendar day of each period, as days since 1970-01-01.
+     */
+    public int[] getPeriodDays() {
+        return periodDays;
+    }
+
+    public double[] getOpen() {
+        return open;
+    }
+
+    public double[] getHigh() {
+        return high;
+    }
+
+    public double[] getLow() {
+        return low;
+    }
+
+    public double[] getClose() {
+        return close;
+    }
+
+    public double[] getMean() {
+        return mean;
+    }
+
+    public int length() {
+        return length;
+    }
+
+    /**
+     * @return The mean rate of each period as a series dated at the period's first calendar day.
+     */
+    public HistoricalRateStore.Series toMeanSeries() {
+        return new HistoricalRateStore.Series(periodDays, mean, length);
+    }
+
+    /**
+     * @return The first calendar day of the week (Monday) or month containing the day.
+     */
+    static int periodStart(int epochDay, Interval interval) {
+        if (interval == Interval.MONTH) {
+            LocalDate date = LocalDate.ofEpochDay(epochDay);
+            return epochDay - date.getDayOfMonth() + 1;
+        }
+        // 1970-01-01 was a Thursday
+        return epochDay - Math.floorMod(epochDay + 3, 7);
+    }
+
+    private static int nextPeriodStart(int periodStart, Interval interval) {
+        if (interval == Interval.MONTH) {
+            return periodStart + LocalDate.ofEpochDay(periodStart).lengthOfMonth();
+        }
+        return periodStart + 7;
+    }
+
+    // Replaces one period by the aggregate of the given daily rates, dropping it if there are none
+    private SeriesRollup replace(int index, HistoricalRateStore.Series daily) {
+        SeriesRollup period = of(daily, interval);
+        if (period.length == 0) {
+            int[] keptDays = new int[length - 1];
+            double[][] kept = new double[5][length - 1];
+            double[][] source = {open, high, low, close, mean};
+            System.arraycopy(periodDays, 0, keptDays, 0, index);
+            System.arraycopy(periodDays, index + 1, keptDays, index, length - index - 1);
+            for (int column = 0; column < source.length; column++) {
+                System.arraycopy(source[column], 0, kept[column], 0, index);
+                System.arraycopy(source[column], index + 1, kept[column], index, length - index - 1);
+            }
+            return new SeriesRollup(interval, keptDays, kept[0], kept[1], kept[2], kept[3], kept[4], length - 1);
+        }
+        open[index] = period.open[0];
+        high[index] = period.high[0];
+        low[index] = period.low[0];
+        close[index] = period.close[0];
+        mean[index] = period.mean[0];
+        return this;
+    }
+
+    // First period starting on or after the given day
+    private int lowerBound(int day) {
+        int left = 0;
+        int right = length;
+        while (left < right) {
+            int mid = (left + right) >>> 1;
+            if (periodDays[mid] < day) {
+                left = mid + 1;
+            } else {
+                right = mid;
+            }
+        }
+        return left;
+    }
+}
@@ -0,0 +1,87 @@
+package ds.webservice;
+
+/**
+ * Central place for the tunable settings of the web service.
+ * Every value is read from a JVM system property (e.g. -Dcurrency.cache.maxEntries=64)
+ * so deployments can adjust behaviour without rebuilding, and falls back to a sensible default.
+ *
+ * Author: Aditya Aayush
+ */
+public final class ServiceConfig {
+
+    // Prefix shared by every property understood by the service.
+    private static final String PREFIX = "currency.";
+
+    // Utility class, no instances.
+    private ServiceConfig() {
+    }
+
+    /**
+     * Reads an integer setting.
+     *
+     * @param name The property name without the common prefix.
+     * @param defaultValue The value used when the property is missing or malformed.
+     * @return The configured value or the default.
+     */
+    public static int getInt(String name, int defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a long setting.
+     *
+     * @param name The property name without the common prefix.
+     * @param defaultValue The value used when the property is missing or malformed.
+     * @return The configured value or the default.
+     */
+    public static long getLong(String name, long defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a floating point setting.
+     *
+     * @param name The property name without the common prefix.
+     * @param defaultValue The value used when the property is missing or malformed.
+     * @return The configured value or the default.
+     */
+    public static double getDouble(String name, double defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Double.parseDouble(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    /**
+     * Reads a string setting.
+     *
+     * @param name The property name without the common prefix.
+     * @param defaultValue The value used when the property is missing.
+     * @return The configured value or the default.
+     */
+    public static String getString(String name, String defaultValue) {
+        String value = System.getProperty(PREFIX + name);
+        return value != null ? value.trim() : defaultValue;
+    }
+}
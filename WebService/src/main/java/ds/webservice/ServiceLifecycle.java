@@ -0,0 +1,44 @@
+package ds.webservice;
+
+import jakarta.servlet.ServletContextEvent;
+import jakarta.servlet.ServletContextListener;
+import jakarta.servlet.annotation.WebListener;
+
+/**
+ * Hooks into the lifecycle of the web application. On startup the User-Agent analyzer is built
+ * so the first request does not pay for loading its rules, and the MongoDB indexes and retention
+ * settings are created in the background. On shutdown the telemetry writer, the metrics rollup
+ * and the pair counter flush what they still hold in memory, so undeployment does not lose the
+ * last batch of logs. Then the historical rate store and the executors of {@link ExecutionMode}
+ * stop their threads, so no thread outlives the deployment.
+ *
+ * Author: Aditya Aayush
+ */
+@WebListener
+public class ServiceLifecycle implements ServletContextListener {
+
+    @Override
+    public void contextInitialized(ServletContextEvent event) {
+        // Load the analyzer rules before traffic arrives
+        UserAgentParser.getInstance();
+        // Create indexes, then convert old telemetry, without delaying startup if MongoDB is slow or unreachable
+        ExecutionMode.blocking().execute(() -> {
+            SchemaBootstrap.run();
+            SchemaMigration.run();
+        });
+    }
+
+    @Override
+    public void contextDestroyed(ServletContextEvent event) {
+        // Flush the queued telemetry before the Mongo client goes away
+        TelemetryWriter.getInstance().close();
+        // Write the metrics counted since the last rollup flush
+        MetricsRollup.getInstance().close();
+        // Write the pair counts collected since the last bulk write
+        PairPopularity.getInstance().close();
+        // Stop the daily store update and release the mapped store files
+        HistoricalRateStore.shutdown();
+        // Stop the blocking and upstream client pools last, the steps above may still use them
+        ExecutionMode.shutdown();
+    }
+}
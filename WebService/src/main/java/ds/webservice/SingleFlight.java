@@ -0,0 +1,79 @@
+package ds.webservice;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+
+/**
+ * Request coalescing for identical upstream calls. The first caller for a key (the leader)
+ * performs the call; every caller that arrives while it is still in flight waits on the
+ * leader's {@link CompletableFuture} instead of issuing its own request. Once the call
+ * finishes the key is released, so later callers start a fresh call.
+ *
+ * Author: Aditya Aayush
+ */
+public final class SingleFlight {
+
+    // Calls currently in flight, keyed by upstream URL.
+    private final ConcurrentHashMap<String, CompletableFuture<Object>> inFlight = new ConcurrentHashMap<>();
+
+    // Counters reported on the dashboard.
+    private final AtomicLong leaders = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+
+    /**
+     * Starts the asynchronous task for the given key, or joins the identical call that is already running.
+     *
+     * @param key Identifies identical calls, typically the upstream URL.
+     * @param task Starts the call when no identical call is in flight.
+     * @return A future with the result of the task, shared by every caller that joined it.
+     */
+    @SuppressWarnings("unchecked")
+    public <T> CompletableFuture<T> call(String key, Supplier<CompletableFuture<T>> task) {
+        CompletableFuture<Object> flight = new CompletableFuture<>();
+        CompletableFuture<Object> existing = inFlight.putIfAbsent(key, flight);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return (CompletableFuture<T>) existing;
+        }
+
+        leaders.incrementAndGet();
+        try {
+            task.get().whenComplete((result, error) -> {
+                // Release the key first so that callers arriving from now on start a fresh call
+                inFlight.remove(key, flight);
+                if (error != null) {
+                    flight.completeExceptionally(error);
+                } else {
+                    flight.complete(result);
+                }
+            });
+        } catch (RuntimeException e) {
+            inFlight.remove(key, flight);
+            flight.completeExceptionally(e);
+        }
+        return (CompletableFuture<T>) flight;
+    }
+
+    /**
+     * @return The number of calls that were actually performed.
+     */
+    public long getLeaders() {
+        return leaders.get();
+    }
+
+    /**
+     * @return The number of callers that joined a call already in flight.
+     */
+    public long getCoalesced() {
+        return coalesced.get();
+    }
+
+    /**
+     * @return The number of distinct calls in flight right now.
+     */
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
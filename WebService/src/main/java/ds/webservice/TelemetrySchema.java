@@ -0,0 +1,164 @@
+package ds.webservice;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+/**
+ * Version 2 of the telemetry document schema and the conversion from version 1.
+ *
+ * Version 1 documents stored every number as a string ("123", "N/A") and timestamps as strings of
+ * epoch milliseconds. Version 2 documents carry "v": 2 and use native BSON types: int32 for status
+ * codes, sizes and counts, int64 for durations in milliseconds, double for rates, date for points
+ * in time and rate dates, and plain ISO codes for currencies. Field names are unchanged, so the
+ * dashboard and the rollup aggregations read both versions.
+ *
+ * Author: Aditya Aayush
+ */
+public final class TelemetrySchema {
+
+    // Name and current value of the schema version field.
+    public static final String VERSION_FIELD = "v";
+    public static final int VERSION = 2;
+
+    // Utility class, no instances.
+    private TelemetrySchema() {
+    }
+
+    /**
+     * Converts a version 1 document to version 2, keeping its _id. Documents without createdAt get
+     * the creation time of their ObjectId, so the TTL index applies to them as well.
+     *
+     * @param collection The telemetry collection the document belongs to.
+     * @param document The stored document.
+     * @return The document to store instead.
+     */
+    public static Document upgrade(String collection, Document document) {
+        Document upgraded = new Document("_id", document.get("_id"));
+        switch (collection) {
+            case "server_request": {
+                Document query = document.get("queryParameters", Document.class);
+                upgraded.append("timestamp", toDate(document.get("timestamp")))
+                        .append("endpoint", document.get("endpoint"))
+                        .append("httpMethod", document.get("httpMethod"))
+                        .append("queryParameters", query == null ? null : new Document()
+                                .append("toDate", toDate(query.get("toDate")))
+                                .append("from", query.get("from"))
+                                .append("to", query.get("to")))
+                        .append("ipAddress", document.get("ipAddress"));
+                break;
+            }
+            case "server_response": {
+                Document data = document.get("responseData", Document.class);
+                upgraded.append("responseTime", toLong(document.get("responseTime")))
+                        .append("statusCode", toInt(document.get("statusCode")))
+                        .append("payloadSize", toInt(document.get("payloadSize")))
+                        .append("responseData", data == null ? null : new Document("base", data.get("base"))
+                                .append("start_Date", toDate(data.get("start_Date")))
+                                .append("end_Date", toDate(data.get("end_Date")))
+                                .append("NumberOfRateValues", toInt(data.get("NumberOfRateValues")))
+                                .append("AverageRate", toDouble(data.get("AverageRate")))
+                                .append("toCurrencies", data.get("toCurrencies"))
+                                .append("toCurrencyValues", toDoubles(data.get("toCurrencyValues"))));
+                break;
+            }
+            case "service_response": {
+                Document data = document.get("responseData", Document.class);
+                upgraded.append("responseTime", toLong(document.get("responseTime")))
+                        .append("statusCode", toInt(document.get("statusCode")))
+                        .append("responseData", data == null ? null : new Document()
+                                .append("NumberOfRateValues", toInt(data.get("NumberOfRateValues")))
+                                .append("AverageRate", toDouble(data.get("AverageRate")))
+                                .append("toCurrencies", data.get("toCurrencies"))
+                                .append("toCurrencyValues", toDoubles(data.get("toCurrencyValues"))));
+                break;
+            }
+            default:
+                // client_request only holds strings, copy it as it is
+                for (String key : document.keySet()) {
+                    upgraded.append(key, document.get(key));
+                }
+        }
+        Object createdAt = document.get("createdAt");
+        if (createdAt == null && document.get("_id") instanceof ObjectId) {
+            createdAt = document.getObjectId("_id").getDate();
+        }
+        return upgraded.append("createdAt", createdAt).append(VERSION_FIELD, VERSION);
+    }
+
+    /**
+     * @return The value as an int, or null if it is missing or not a number.
+     */
+    public static Integer toInt(Object value) {
+        Double number = toDouble(value);
+        return number == null ? null : (int) Math.round(number);
+    }
+
+    /**
+     * @return The value as a long, or null if it is missing or not a number.
+     */
+    public static Long toLong(Object value) {
+        Double number = toDouble(value);
+        return number == null ? null : Math.round(number);
+    }
+
+    /**
+     * @return The value as a finite double, or null if it is missing, not a number, NaN or infinite.
+     */
+    public static Double toDouble(Object value) {
+        double number;
+        if (value instanceof Number) {
+            number = ((Number) value).doubleValue();
+        } else if (value instanceof String) {
+            try {
+                number = Double.parseDouble(((String) value).trim());
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        } else {
+            return null;
+        }
+        return Double.isFinite(number) ? number : null;
+    }
+
+    /**
+     * Converts epoch milliseconds (number or string) or an ISO date (yyyy-MM-dd, as UTC midnight).
+     *
+     * @return The date, or null if the value is missing or cannot be read.
+     */
+    public static Date toDate(Object value) {
+        if (value == null || value instanceof Date) {
+            return (Date) value;
+        }
+        if (value instanceof Number) {
+            return new Date(((Number) value).longValue());
+        }
+        String text = value.toString().trim();
+        try {
+            return Date.from(LocalDate.parse(text).atStartOfDay(ZoneOffset.UTC).toInstant());
+        } catch (DateTimeParseException e) {
+            Long millis = toLong(text);
+            return millis == null ? null : new Date(millis);
+        }
+    }
+
+    /**
+     * @return The list with every element converted by {@link #toDouble(Object)}, or null if the value is not a list.
+     */
+    public static List<Double> toDoubles(Object value) {
+        if (!(value instanceof List)) {
+            return null;
+        }
+        List<Double> numbers = new ArrayList<>();
+        for (Object element : (List<?>) value) {
+            numbers.add(toDouble(element));
+        }
+        return numbers;
+    }
+}
@@ -0,0 +1,67 @@
+package ds.webservice;
+
+import org.bson.Document;
+
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
+
+/**
+ * Destination of the batches collected by {@link TelemetryWriter}. The writer's drainer threads
+ * call {@link #write(String, List)} concurrently, one batch of one collection at a time.
+ *
+ * The implementation is chosen with currency.telemetry.sink:
+ * - "failover" (default): MongoDB, switching to the local segment files while MongoDB is down or
+ *   slow and replaying them once it has recovered.
+ * - "mongo": MongoDB only, failed batches are lost.
+ * - "file": local segment files only, e.g. to be shipped elsewhere.
+ * - "noop": discards everything.
+ *
+ * Author: Aditya Aayush
+ */
+public interface TelemetrySink {
+
+    /**
+     * Stores one batch.
+     *
+     * @param collection The telemetry collection the documents belong to.
+     * @param batch The documents, in insertion order.
+     * @throws RuntimeException If the batch could not be stored.
+     */
+    void write(String collection, List<Document> batch);
+
+    /**
+     * @return A short human-readable state, shown on the dashboard.
+     */
+    String describe();
+
+    /**
+     * Flushes and releases resources. Called after the last write.
+     */
+    default void close() {
+    }
+
+    /**
+     * Creates the sink selected by currency.telemetry.sink.
+     *
+     * @return The configured sink.
+     */
+    static TelemetrySink fromConfig() {
+        String type = ServiceConfig.getString("telemetry.sink", "failover").toLowerCase();
+        switch (type) {
+            case "noop":
+                return new NoopTelemetrySink();
+            case "mongo":
+                return new MongoTelemetrySink();
+            case "file":
+                return new FileTelemetrySink(spoolDirectory());
+            default:
+                return new FailoverTelemetrySink(new MongoTelemetrySink(), new FileTelemetrySink(spoolDirectory()));
+        }
+    }
+
+    private static Path spoolDirectory() {
+        return Paths.get(ServiceConfig.getString("telemetry.spoolDir",
+                Paths.get(System.getProperty("java.io.tmpdir"), "currency-converter", "telemetry").toString()));
+    }
+}
@@ -0,0 +1,221 @@
+package ds.webservice;
+
+import org.bson.Document;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Batching writer for the telemetry collections. Request threads only enqueue documents into a
+ * bounded queue per collection; one drainer thread per queue hands them to the configured
+ * {@link TelemetrySink} once a batch is full or the linger time has passed. When a queue is
+ * full the document is dropped and counted, so telemetry can never slow down or take down
+ * serving. Documents of requests that {@link RequestContext} did not sample are counted and
+ * discarded before they reach a queue.
+ *
+ * Author: Aditya Aayush
+ */
+public final class TelemetryWriter {
+
+    // Collections written through the pipeline, each with its own queue and drainer.
+    public static final String[] COLLECTIONS = {"client_request", "server_request", "server_response", "service_response"};
+
+    /**
+     * Queue, drainer thread and counters of one collection.
+     */
+    private final class Channel implements Runnable {
+        private final String collection;
+        private final BlockingQueue<Document> queue;
+        private final Thread drainer;
+        private final AtomicLong written = new AtomicLong();
+        private final AtomicLong dropped = new AtomicLong();
+        private final AtomicLong sampledOut = new AtomicLong();
+        private final AtomicLong failed = new AtomicLong();
+        private final AtomicLong batches = new AtomicLong();
+
+        Channel(String collection) {
+            this.collection = collection;
+            this.queue = new ArrayBlockingQueue<>(queueCapacity);
+            this.drainer = new Thread(this, "telemetry-" + collection);
+            this.drainer.setDaemon(true);
+        }
+
+        void offer(Document document) {
+            if (!queue.offer(document)) {
+                dropped.incrementAndGet();
+            }
+        }
+
+        @Override
+        public void run() {
+            List<Document> batch = new ArrayList<>(batchSize);
+            while (running || !queue.isEmpty()) {
+                try {
+                    Document first = queue.poll(lingerMillis, TimeUnit.MILLISECONDS);
+                    if (first == null) {
+                        continue;
+                    }
+                    batch.add(first);
+                    // Keep collecting until the batch is full or the linger time is up
+                    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(lingerMillis);
+                    while (batch.size() < batchSize) {
+                        queue.drainTo(batch, batchSize - batch.size());
+                        long remaining = deadline - System.nanoTime();
+                        if (batch.size() >= batchSize || remaining <= 0) {
+                            break;
+                        }
+                        Document next = queue.poll(remaining, TimeUnit.NANOSECONDS);
+                        if (next == null) {
+                            break;
+                        }
+                        batch.add(next);
+                    }
+                } catch (InterruptedException e) {
+                    // Unexpected interrupt, keep what was collected and stop this drainer
+                    Thread.currentThread().interrupt();
+                    flush(batch);
+                    return;
+                }
+                flush(batch);
+                batch.clear();
+            }
+        }
+
+        private void flush(List<Document> batch) {
+            if (batch.isEmpty()) {
+                return;
+            }
+            try {
+                sink.write(collection, batch);
+                written.addAndGet(batch.size());
+                batches.incrementAndGet();
+            } catch (RuntimeException e) {
+                failed.addAndGet(batch.size());
+                e.printStackTrace();
+            }
+        }
+    }
+
+    // Singleton instance shared by every Model.
+    private static TelemetryWriter instance = null;
+
+    private final int queueCapacity = ServiceConfig.getInt("telemetry.queueCapacity", 10000);
+    private final int batchSize = ServiceConfig.getInt("telemetry.batchSize", 500);
+    private final long lingerMillis = ServiceConfig.getLong("telemetry.lingerMillis", 200);
+    private final Map<String, Channel> channels = new LinkedHashMap<>();
+    private final TelemetrySink sink = TelemetrySink.fromConfig();
+    private volatile boolean running = true;
+
+    /**
+     * Private constructor to enforce the singleton. Creates and starts one channel per collection.
+     */
+    private TelemetryWriter() {
+        for (String collection : COLLECTIONS) {
+            channels.put(collection, new Channel(collection));
+        }
+        for (Channel channel : channels.values()) {
+            channel.drainer.start();
+        }
+    }
+
+    /**
+     * Thread-safe accessor for the shared telemetry writer.
+     *
+     * @return The shared writer.
+     */
+    public static synchronized TelemetryWriter getInstance() {
+        if (instance == null) {
+            instance = new TelemetryWriter();
+        }
+        return instance;
+    }
+
+    /**
+     * Enqueues a document of the request bound to the current thread.
+     *
+     * @param collection One of {@link #COLLECTIONS}.
+     * @param document The document to insert.
+     */
+    public void write(String collection, Document document) {
+        write(collection, document, RequestContext.current());
+    }
+
+    /**
+     * Enqueues a document for the given collection without blocking, unless the request it
+     * belongs to is not sampled. The document is stamped with the id of its request, a createdAt
+     * date, which the time and TTL indexes of {@link SchemaBootstrap} are built on, and the
+     * {@link TelemetrySchema} version it was built for.
+     *
+     * @param collection One of {@link #COLLECTIONS}.
+     * @param document The document to insert.
+     * @param context The request the document belongs to, or null if it belongs to none.
+     */
+    public void write(String collection, Document document, RequestContext context) {
+        Channel channel = channels.get(collection);
+        if (channel == null) {
+            throw new IllegalArgumentException("Unknown telemetry collection: " + collection);
+        }
+        if (!RequestContext.isSampled(context)) {
+            channel.sampledOut.incrementAndGet();
+            return;
+        }
+        if (context != null) {
+            document.append("requestId", context.getRequestId());
+        }
+        document.append("createdAt", new Date()).append(TelemetrySchema.VERSION_FIELD, TelemetrySchema.VERSION);
+        channel.offer(document);
+    }
+
+    /**
+     * Stops the drainers after they have flushed what is still queued, then closes the sink.
+     * Called when the web application stops.
+     */
+    public void close() {
+        // Drainers notice the flag within one linger interval and exit once their queue is empty
+        running = false;
+        for (Channel channel : channels.values()) {
+            try {
+                channel.drainer.join(TimeUnit.SECONDS.toMillis(5));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        sink.close();
+    }
+
+    public TelemetrySink getSink() {
+        return sink;
+    }
+
+    public int getQueueDepth(String collection) {
+        return channels.get(collection).queue.size();
+    }
+
+    public long getWritten(String collection) {
+        return channels.get(collection).written.get();
+    }
+
+    public long getDropped(String collection) {
+        return channels.get(collection).dropped.get();
+    }
+
+    public long getSampledOut(String collection) {
+        return channels.get(collection).sampledOut.get();
+    }
+
+    public long getFailed(String collection) {
+        return channels.get(collection).failed.get();
+    }
+
+    public long getBatches(String collection) {
+        return channels.get(collection).batches.get();
+    }
+}
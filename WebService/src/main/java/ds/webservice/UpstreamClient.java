@@ -0,0 +1,237 @@
+package ds.webservice;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared client for every call to the upstream rate API. A single HTTP/2-enabled
+ * {@link HttpClient} with a bounded executor is reused for all requests, so connections
+ * (and their TLS sessions) are kept alive and shared instead of being set up per call.
+ * Counts requests and TLS handshakes so that connection reuse can be verified.
+ *
+ * Author: Aditya Aayush
+ */
+public final class UpstreamClient {
+
+    // Singleton instance shared by every Model.
+    private static UpstreamClient instance = null;
+
+    private final HttpClient client;
+    private final Duration requestTimeout;
+
+    // Counters reported on the dashboard.
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong http2Responses = new AtomicLong();
+    private final AtomicLong http1Responses = new AtomicLong();
+    private final AtomicLong handshakes = new AtomicLong();
+
+    /**
+     * Private constructor to enforce the singleton. Builds the shared client from the configured
+     * timeouts, keep-alive and thread count.
+     */
+    private UpstreamClient() {
+        // The JDK client reads its idle keep-alive from a system property when it is first used
+        if (System.getProperty("jdk.httpclient.keepalive.timeout") == null) {
+            System.setProperty("jdk.httpclient.keepalive.timeout",
+                    String.valueOf(ServiceConfig.getLong("upstream.keepAliveSeconds", 300)));
+        }
+        this.requestTimeout = Duration.ofMillis(ServiceConfig.getLong("upstream.requestTimeoutMillis", 10000));
+
+        ExecutorService executor = ExecutionMode.newExecutor("upstream-client", ServiceConfig.getInt("upstream.threads", 4));
+        this.client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(Duration.ofMillis(ServiceConfig.getLong("upstream.connectTimeoutMillis", 5000)))
+                .executor(executor)
+                .sslContext(countingSslContext())
+                .build();
+    }
+
+    /**
+     * Thread-safe accessor for the shared upstream client.
+     *
+     * @return The shared client.
+     */
+    public static synchronized UpstreamClient getInstance() {
+        if (instance == null) {
+            instance = new UpstreamClient();
+        }
+        return instance;
+    }
+
+    /**
+     * Creates a GET request for the given URL with the configured request timeout.
+     *
+     * @param url The upstream URL.
+     * @return The request.
+     */
+    public HttpRequest get(String url) {
+        return HttpRequest.newBuilder()
+                .uri(URI.create(url))
+                .timeout(requestTimeout)
+                .GET()
+                .build();
+    }
+
+    /**
+     * Sends a request over the shared client and records which protocol version served it.
+     *
+     * @param request The request to send.
+     * @param bodyHandler How to consume the response body.
+     * @return The response.
+     * @throws IOException If the request fails or times out.
+     * @throws InterruptedException If the calling thread is interrupted while waiting.
+     */
+    public <T> HttpResponse<T> send(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) throws IOException, InterruptedException {
+        requests.incrementAndGet();
+        HttpResponse<T> response = client.send(request, bodyHandler);
+        countVersion(response);
+        return response;
+    }
+
+    /**
+     * Sends a request asynchronously over the shared client. The returned future completes on
+     * one of the client's executor threads, so no caller thread waits for network I/O.
+     *
+     * @param request The request to send.
+     * @param bodyHandler How to consume the response body.
+     * @return A future completed with the response, or exceptionally if the request fails or times out.
+     */
+    public <T> CompletableFuture<HttpResponse<T>> sendAsync(HttpRequest request, HttpResponse.BodyHandler<T> bodyHandler) {
+        requests.incrementAndGet();
+        return client.sendAsync(request, bodyHandler).thenApply(response -> {
+            countVersion(response);
+            return response;
+        });
+    }
+
+    /**
+     * Records which protocol version served a response.
+     */
+    private void countVersion(HttpResponse<?> response) {
+        if (response.version() == HttpClient.Version.HTTP_2) {
+            http2Responses.incrementAndGet();
+        } else {
+            http1Responses.incrementAndGet();
+        }
+    }
+
+    public long getRequests() {
+        return requests.get();
+    }
+
+    public long getHttp2Responses() {
+        return http2Responses.get();
+    }
+
+    public long getHttp1Responses() {
+        return http1Responses.get();
+    }
+
+    /**
+     * @return The number of TLS handshakes, i.e. new connections opened to upstream.
+     */
+    public long getHandshakes() {
+        return handshakes.get();
+    }
+
+    /**
+     * @return The number of requests that were served over an already open connection.
+     */
+    public long getReusedRequests() {
+        return Math.max(0, requests.get() - handshakes.get());
+    }
+
+    /**
+     * Wraps the default TLS context so that every new engine, which the client creates once per
+     * connection, is counted as a handshake.
+     */
+    private SSLContext countingSslContext() {
+        try {
+            SSLContext delegate = SSLContext.getInstance("TLS");
+            delegate.init(null, null, null);
+            return new SSLContext(new CountingSslContextSpi(delegate, handshakes), delegate.getProvider(), delegate.getProtocol()) {
+            };
+        } catch (NoSuchAlgorithmException | KeyManagementException e) {
+            throw new IllegalStateException("TLS is not available", e);
+        }
+    }
+
+    /**
+     * Delegating TLS context implementation that counts created engines.
+     */
+    private static final class CountingSslContextSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+        private final AtomicLong handshakes;
+
+        CountingSslContextSpi(SSLContext delegate, AtomicLong handshakes) {
+            this.delegate = delegate;
+            this.handshakes = handshakes;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] keyManagers, TrustManager[] trustManagers, SecureRandom random) {
+            // The delegate is already initialized with the platform defaults
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            handshakes.incrementAndGet();
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            handshakes.incrementAndGet();
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
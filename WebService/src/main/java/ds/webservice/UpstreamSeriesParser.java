@@ -0,0 +1,178 @@
+package ds.webservice;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Reads an upstream time-series response, {"base": "EUR", "rates": {"2024-01-02": {"USD": 1.09}, ...}},
+ * straight from the response stream into primitive arrays. Only the target currency's value of
+ * each day is converted; everything else is skipped by the {@link JsonPullParser} without being
+ * decoded, so a 20-year series costs two growing arrays instead of a JSON tree with one object
+ * per day.
+ *
+ * Author: Aditya Aayush
+ */
+final class UpstreamSeriesParser {
+
+    /**
+     * The parsed series with the details logged for the upstream response.
+     */
+    static final class Result {
+        private final HistoricalRateStore.Series series;
+        private final String base;
+        private final long byteCount;
+
+        Result(HistoricalRateStore.Series series, String base, long byteCount) {
+            this.series = series;
+            this.base = base;
+            this.byteCount = byteCount;
+        }
+
+        HistoricalRateStore.Series getSeries() {
+            return series;
+        }
+
+        String getBase() {
+            return base;
+        }
+
+        long getByteCount() {
+            return byteCount;
+        }
+    }
+
+    // Utility class, no instances.
+    private UpstreamSeriesParser() {
+    }
+
+    /**
+     * Parses a time-series response and closes the stream.
+     *
+     * @param body The response body.
+     * @param toCurrency The currency whose rates are extracted.
+     * @return The rates of the days that have one, in ascending date order.
+     * @throws IOException If the body cannot be read or is not a time-series response.
+     */
+    static Result parse(InputStream body, String toCurrency) throws IOException {
+        try (JsonPullParser parser = new JsonPullParser(body)) {
+            if (parser.next() != JsonPullParser.Token.START_OBJECT) {
+                throw new IOException("Upstream time series is not a JSON object");
+            }
+            String base = null;
+            int[] days = new int[1024];
+            double[] rates = new double[1024];
+            int length = 0;
+            boolean sorted = true;
+            boolean hasRates = false;
+
+            JsonPullParser.Token token;
+            while ((token = parser.next()) == JsonPullParser.Token.FIELD_NAME) {
+                if (parser.textEquals("base")) {
+                    JsonPullParser.Token value = parser.next();
+                    if (value == JsonPullParser.Token.STRING) {
+                        base = parser.getText();
+                    } else {
+                        parser.skip(value);
+                    }
+                } else if (parser.textEquals("rates")) {
+                    if (parser.next() != JsonPullParser.Token.START_OBJECT) {
+                        throw new IOException("Upstream time series has no rates object");
+                    }
+                    hasRates = true;
+                    // One {currency: rate} object per date
+                    while (parser.next() == JsonPullParser.Token.FIELD_NAME) {
+                        int day = epochDay(parser);
+                        JsonPullParser.Token dayToken = parser.next();
+                        if (dayToken != JsonPullParser.Token.START_OBJECT) {
+                            parser.skip(dayToken);
+                            continue;
+                        }
+                        JsonPullParser.Token field;
+                        while ((field = parser.next()) == JsonPullParser.Token.FIELD_NAME) {
+                            // Compare the name before the value replaces the parser's text
+                            boolean target = day != Integer.MIN_VALUE && parser.textEquals(toCurrency);
+                            JsonPullParser.Token value = parser.next();
+                            if (!target || value != JsonPullParser.Token.NUMBER) {
+                                parser.skip(value);
+                                continue;
+                            }
+                            if (length == days.length) {
+                                days = Arrays.copyOf(days, length * 2);
+                                rates = Arrays.copyOf(rates, length * 2);
+                            }
+                            sorted &= length == 0 || days[length - 1] < day;
+                            days[length] = day;
+                            rates[length] = parser.getDouble();
+                            length++;
+                        }
+                        if (field != JsonPullParser.Token.END_OBJECT) {
+                            throw new IOException("Malformed upstream time series");
+                        }
+                    }
+                } else {
+                    parser.skip(token);
+                }
+            }
+            if (token != JsonPullParser.Token.END_OBJECT || !hasRates) {
+                throw new IOException("Malformed upstream time series");
+            }
+            if (!sorted) {
+                sort(days, rates, length);
+            }
+            return new Result(new HistoricalRateStore.Series(days, rates, length), base, parser.getByteCount());
+        }
+    }
+
+    /**
+     * Converts the current name, "yyyy-MM-dd", to days since 1970-01-01 without creating objects.
+     *
+     * @return The epoch day, or Integer.MIN_VALUE if the name is not a date.
+     */
+    static int epochDay(JsonPullParser parser) {
+        if (parser.textLength() != 10 || parser.textAt(4) != '-' || parser.textAt(7) != '-') {
+            return Integer.MIN_VALUE;
+        }
+        int year = digits(parser, 0, 4);
+        int month = digits(parser, 5, 2);
+        int day = digits(parser, 8, 2);
+        if (year < 0 || month < 1 || month > 12 || day < 1 || day > 31) {
+            return Integer.MIN_VALUE;
+        }
+        // Days from civil date, proleptic Gregorian calendar (H. Hinnant's algorithm)
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int digits(JsonPullParser parser, int from, int count) {
+        int value = 0;
+        for (int i = from; i < from + count; i++) {
+            char c = parser.textAt(i);
+            if (c < '0' || c > '9') {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    // Insertion sort by day; upstream normally sends ascending dates, so this rarely runs.
+    private static void sort(int[] days, double[] rates, int length) {
+        for (int i = 1; i < length; i++) {
+            int day = days[i];
+            double rate = rates[i];
+            int j = i - 1;
+            while (j >= 0 && days[j] > day) {
+                days[j + 1] = days[j];
+                rates[j + 1] = rates[j];
+                j--;
+            }
+            days[j + 1] = day;
+            rates[j + 1] = rate;
+        }
+    }
+}
@@ -0,0 +1,135 @@
+package ds.webservice;
+
+import nl.basjes.parse.useragent.UserAgent;
+import nl.basjes.parse.useragent.UserAgentAnalyzer;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shared User-Agent parser. Building a YAUAA analyzer loads thousands of rules, so it is built
+ * once and restricted to the two fields the service logs. Parsed results are memoized in an LRU
+ * cache keyed by the raw header, because the client fleet only sends a few hundred distinct
+ * User-Agent strings. Hit and miss counters show how often the analyzer is actually run.
+ *
+ * Author: Aditya Aayush
+ */
+public final class UserAgentParser {
+
+    // The only fields the service stores for a client request.
+    public static final String DEVICE_NAME = "DeviceName";
+    public static final String OPERATING_SYSTEM = "OperatingSystemNameVersionMajor";
+
+    /**
+     * The fields extracted from one User-Agent string.
+     */
+    public static final class Result {
+        private final String deviceName;
+        private final String operatingSystem;
+
+        Result(String deviceName, String operatingSystem) {
+            this.deviceName = deviceName;
+            this.operatingSystem = operatingSystem;
+        }
+
+        public String getDeviceName() {
+            return deviceName;
+        }
+
+        public String getOperatingSystem() {
+            return operatingSystem;
+        }
+    }
+
+    // Singleton instance shared by every Model.
+    private static UserAgentParser instance = null;
+
+    private final UserAgentAnalyzer analyzer;
+    private final int maxEntries = ServiceConfig.getInt("userAgent.cacheSize", 1000);
+    private final Map<String, Result> results;
+
+    // Counters reported on the dashboard.
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+
+    /**
+     * Private constructor to enforce the singleton. Builds the analyzer with only the needed fields
+     * and without its own cache, since results are memoized here.
+     */
+    private UserAgentParser() {
+        analyzer = UserAgentAnalyzer.newBuilder()
+                .withFields(DEVICE_NAME, OPERATING_SYSTEM)
+                .withoutCache()
+                .hideMatcherLoadStats()
+                .immediateInitialization()
+                .build();
+        // Access-ordered map so that the eldest entry is always the least recently used one.
+        results = new LinkedHashMap<String, Result>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Result> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * Thread-safe accessor for the shared parser. The first call builds the analyzer.
+     *
+     * @return The shared parser.
+     */
+    public static synchronized UserAgentParser getInstance() {
+        if (instance == null) {
+            instance = new UserAgentParser();
+        }
+        return instance;
+    }
+
+    /**
+     * Extracts the device name and operating system from a User-Agent header.
+     *
+     * @param userAgent The raw header, may be null.
+     * @return The parsed fields.
+     */
+    public Result parse(String userAgent) {
+        String key = userAgent == null ? "" : userAgent;
+        synchronized (results) {
+            Result cached = results.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+        // Parse outside the lock, two threads may parse the same new string once each
+        UserAgent agent = analyzer.parse(key);
+        Result result = new Result(agent.getValue(DEVICE_NAME), agent.getValue(OPERATING_SYSTEM));
+        synchronized (results) {
+            results.put(key, result);
+        }
+        return result;
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    /**
+     * @return The fraction of lookups answered from the cache, 0 before the first lookup.
+     */
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    public int size() {
+        synchronized (results) {
+            return results.size();
+        }
+    }
+}
@@ -1,6 +1,11 @@
 <%@ page import="org.bson.Document" %>
+<%@ page import="java.util.Iterator" %>
 <%@ page import="java.util.List" %>
-<%@ page contentType="text/html;charset=UTF-8" language="java" %>
+<%@ page import="ds.webservice.LatencyHistogram" %>
+<%@ page import="ds.webservice.LogPage" %>
+<%@ page import="ds.webservice.PairPopularity" %>
+<%-- Small buffer with auto flush: rows are sent in chunks while the log cursors are read --%>
+<%@ page contentType="text/html;charset=UTF-8" language="java" buffer="8kb" autoFlush="true" %>
 <html>
 <head>
     <title>Dashboard</title>
@@ -21,9 +26,74 @@
 <h2>Average Response Time</h2>
 <p><%= request.getAttribute("averageResponseTime") %></p>
 
+<h2>Latency (ms)</h2>
+<table>
+    <tr>
+        <th>Operation</th>
+        <th>Window</th>
+        <th>Count</th>
+        <th>p50</th>
+        <th>p95</th>
+        <th>p99</th>
+        <th>Max</th>
+    </tr>
+    <%
+        List<LatencyHistogram> latencyHistograms = (List<LatencyHistogram>) request.getAttribute("latencyHistograms");
+        for (LatencyHistogram histogram : latencyHistograms) {
+            for (LatencyHistogram.Window latencyWindow : LatencyHistogram.Window.values()) {
+                LatencyHistogram.Summary summary = histogram.summary(latencyWindow);
+    %>
+    <tr>
+        <td><%= histogram.getName() %></td>
+        <td><%= latencyWindow.getLabel() %></td>
+        <td><%= summary.getCount() %></td>
+        <td><%= String.format("%.2f", summary.getP50()) %></td>
+        <td><%= String.format("%.2f", summary.getP95()) %></td>
+        <td><%= String.format("%.2f", summary.getP99()) %></td>
+        <td><%= String.format("%.2f", summary.getMax()) %></td>
+    </tr>
+    <%
+            }
+        }
+    %>
+</table>
+<p>Also available as JSON at <a href="metrics/latency">metrics/latency</a>.</p>
+
+<h2>Latest Rate Cache</h2>
+<p><%= request.getAttribute("rateCacheStats") %></p>
+
+<h2>Upstream Request Coalescing</h2>
+<p><%= request.getAttribute("upstreamFlightStats") %></p>
+
+<h2>Upstream Connections</h2>
+<p><%= request.getAttribute("upstreamClientStats") %></p>
+
+<h2>In-Flight Requests</h2>
+<p><%= request.getAttribute("inFlightStats") %></p>
+
+<h2>Telemetry Writer</h2>
+<p><%= request.getAttribute("telemetryStats") %></p>
+
+<h2>Database Indexes</h2>
+<p><%= request.getAttribute("schemaStats") %></p>
+
+<h2>User-Agent Cache</h2>
+<p><%= request.getAttribute("userAgentStats") %></p>
+
 <h2>Most Frequent Conversion</h2>
 <p><%= request.getAttribute("mostFrequentConversion") %></p>
 
+<h2>Most Requested Pairs</h2>
+<ol>
+    <% List<PairPopularity.RankedPair> topPairs = (List<PairPopularity.RankedPair>) request.getAttribute("topPairs");
+        for (PairPopularity.RankedPair pair : topPairs) {
+    %>
+    <li><%= pair.getFromCurrency() %> to <%= pair.getToCurrency() %> (<%= pair.getCount() %>)</li>
+    <%
+        }
+    %>
+</ol>
+
 <h2>Top 5 Devices</h2>
 <ul>
     <% List<String> topDevices = (List<String>) request.getAttribute("topDevices");
@@ -41,14 +111,27 @@
     %>
 </ul>
 
+<%
+    LogPage.Window window = (LogPage.Window) request.getAttribute("window");
+    // Send everything above the log tables before the first query runs
+    out.flush();
+%>
+<form method="get">
+    Rows per table <input type="number" name="pageSize" min="1" value="<%= window.getPageSize() %>">
+    Last hours (0 for all) <input type="number" name="windowHours" min="0" value="<%= window.getWindowHours() %>">
+    <input type="submit" value="Show">
+</form>
+
 <h2>Client Request Data</h2>
 
 <%
-    List<Document> clientRequests = (List<Document>) request.getAttribute("clientRequests");
-    if (clientRequests != null && !clientRequests.isEmpty()) {
+    LogPage clientRequests = (LogPage) request.getAttribute("clientRequests");
+    Iterator<Document> clientRequestsRows = clientRequests.iterator();
+    if (clientRequestsRows.hasNext()) {
 %>
 <table>
     <tr>
+        <th>Request Id</th>
         <th>EndPoint</th>
         <th>HTTP Method</th>
         <th>Device Name</th>
@@ -60,9 +143,11 @@
         <th>To Date</th>
     </tr>
     <%
-        for (Document clientRequest : clientRequests) {
+        while (clientRequestsRows.hasNext()) {
+            Document clientRequest = clientRequestsRows.next();
     %>
     <tr>
+        <td><%= clientRequest.get("requestId") != null ? clientRequest.get("requestId") : "N/A" %></td>
         <td><%= clientRequest.getString("endPoint") %></td>
         <td><%= clientRequest.getString("httpMethod") %></td>
         <td><%= clientRequest.getString("deviceName") %></td>
@@ -83,17 +168,25 @@
 <p>No client requests found.</p>
 <%
     }
+    if (clientRequests.hasMore()) {
+%>
+<p><a href="<%= clientRequests.nextPageQuery(request) %>">Older client requests</a></p>
+<%
+    }
+    out.flush();
 %>
 
 <!-- Server Request Data Table Begins Here -->
 <h2>Server Request Data</h2>
 
 <%
-    List<Document> serverRequests = (List<Document>) request.getAttribute("serverRequests");
-    if (serverRequests != null && !serverRequests.isEmpty()) {
+    LogPage serverRequests = (LogPage) request.getAttribute("serverRequests");
+    Iterator<Document> serverRequestsRows = serverRequests.iterator();
+    if (serverRequestsRows.hasNext()) {
 %>
 <table>
     <tr>
+        <th>Request Id</th>
         <th>Timestamp</th>
         <th>Endpoint</th>
         <th>HTTP Method</th>
@@ -103,14 +196,16 @@
         <th>IP Address</th>
     </tr>
     <%
-        for (Document requestDoc : serverRequests) {
+        while (serverRequestsRows.hasNext()) {
+            Document requestDoc = serverRequestsRows.next();
             Document queryParameters = (Document) requestDoc.get("queryParameters");
     %>
     <tr>
-        <td><%= requestDoc.getString("timestamp") %></td>
+        <td><%= requestDoc.get("requestId") != null ? requestDoc.get("requestId") : "N/A" %></td>
+        <td><%= requestDoc.get("timestamp") %></td>
         <td><%= requestDoc.getString("endpoint") %></td>
         <td><%= requestDoc.getString("httpMethod") %></td>
-        <td><%= queryParameters.getString("toDate") %></td>
+        <td><%= queryParameters.get("toDate") %></td>
         <td><%= queryParameters.getString("from") %></td>
         <td><%= queryParameters.getString("to") %></td>
         <td><%= requestDoc.getString("ipAddress") %></td>
@@ -125,16 +220,24 @@
 <p>No server requests found.</p>
 <%
     }
+    if (serverRequests.hasMore()) {
+%>
+<p><a href="<%= serverRequests.nextPageQuery(request) %>">Older server requests</a></p>
+<%
+    }
+    out.flush();
 %>
 
 <h2>Server Response Data</h2>
 
 <%
-    List<Document> serverResponses = (List<Document>) request.getAttribute("serverResponses");
-    if (serverResponses != null && !serverResponses.isEmpty()) {
+    LogPage serverResponses = (LogPage) request.getAttribute("serverResponses");
+    Iterator<Document> serverResponsesRows = serverResponses.iterator();
+    if (serverResponsesRows.hasNext()) {
 %>
 <table>
     <tr>
+        <th>Request Id</th>
         <th>Response Time (ms)</th>
         <th>Status Code</th>
         <th>Payload Size</th>
@@ -147,18 +250,20 @@
         <th>Currency Values</th>
     </tr>
     <%
-        for (Document serverResponse : serverResponses) {
+        while (serverResponsesRows.hasNext()) {
+            Document serverResponse = serverResponsesRows.next();
             Document responseData = (Document) serverResponse.get("responseData");
     %>
     <tr>
-        <td><%= serverResponse.getString("responseTime") %></td>
-        <td><%= serverResponse.getString("statusCode") %></td>
-        <td><%= serverResponse.getString("payloadSize") %></td>
+        <td><%= serverResponse.get("requestId") != null ? serverResponse.get("requestId") : "N/A" %></td>
+        <td><%= serverResponse.get("responseTime") %></td>
+        <td><%= serverResponse.get("statusCode") %></td>
+        <td><%= serverResponse.get("payloadSize") %></td>
         <td><%= responseData.getString("base") %></td>
-        <td><%= responseData.getString("start_Date") %></td>
-        <td><%= responseData.getString("end_Date") %></td>
-        <td><%= responseData.getString("NumberOfRateValues") %></td>
-        <td><%= responseData.getString("AverageRate") %></td>
+        <td><%= responseData.get("start_Date") %></td>
+        <td><%= responseData.get("end_Date") %></td>
+        <td><%= responseData.get("NumberOfRateValues") %></td>
+        <td><%= responseData.get("AverageRate") %></td>
         <td><%= responseData.getString("toCurrencies") %></td>
         <td><%= responseData.getString("toCurrencyValues") %></td>
     </tr>
@@ -172,34 +277,46 @@
 <p>No server responses found.</p>
 <%
     }
+    if (serverResponses.hasMore()) {
+%>
+<p><a href="<%= serverResponses.nextPageQuery(request) %>">Older server responses</a></p>
+<%
+    }
+    out.flush();
 %>
 
 <h2>Service Response Data</h2>
 
 <%
-    List<Document> serviceResponses = (List<Document>) request.getAttribute("serviceResponses");
-    if (serviceResponses != null && !serviceResponses.isEmpty()) {
+    LogPage serviceResponses = (LogPage) request.getAttribute("serviceResponses");
+    Iterator<Document> serviceResponsesRows = serviceResponses.iterator();
+    if (serviceResponsesRows.hasNext()) {
 %>
 <table>
     <tr>
+        <th>Request Id</th>
         <th>Response Time (ms)</th>
         <th>Status Code</th>
         <th>Number Of Values</th>
         <th>Average Rate</th>
         <th>To Currencies</th>
         <th>Currency Values</th>
+        <th>Spans (&micro;s from arrival)</th>
     </tr>
     <%
-        for (Document serviceResponse : serviceResponses) {
+        while (serviceResponsesRows.hasNext()) {
+            Document serviceResponse = serviceResponsesRows.next();
             Document responseData = (Document) serviceResponse.get("responseData");
     %>
     <tr>
-        <td><%= serviceResponse.getLong("responseTime").toString() %></td>
-        <td><%= serviceResponse.getString("statusCode") %></td>
-        <td><%= responseData.getString("NumberOfRateValues") %></td>
-        <td><%= responseData.getString("AverageRate") %></td>
+        <td><%= serviceResponse.get("requestId") != null ? serviceResponse.get("requestId") : "N/A" %></td>
+        <td><%= serviceResponse.get("responseTime") %></td>
+        <td><%= serviceResponse.get("statusCode") %></td>
+        <td><%= responseData.get("NumberOfRateValues") %></td>
+        <td><%= responseData.get("AverageRate") %></td>
         <td><%= responseData.getString("toCurrencies") %></td>
         <td><%= responseData.getString("toCurrencyValues") %></td>
+        <td><%= serviceResponse.getString("spans") %></td>
     </tr>
     <%
         }
@@ -211,6 +328,12 @@
 <p>No service responses found.</p>
 <%
     }
+    if (serviceResponses.hasMore()) {
+%>
+<p><a href="<%= serviceResponses.nextPageQuery(request) %>">Older service responses</a></p>
+<%
+    }
+    out.flush();
 %>
 
 
@@ -0,0 +1,189 @@
+package ds.webservice;
+
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Spooling and replay of {@link FileTelemetrySink}: group commit across concurrent writers,
+ * typed BSON values surviving the round trip, torn or corrupt trailing records, and replaying a
+ * segment again after the target failed part way through.
+ *
+ * Author: Aditya Aayush
+ */
+class FileTelemetrySinkTest {
+
+    /**
+     * Keeps every replayed document, optionally failing on one write.
+     */
+    private static final class CollectingSink implements TelemetrySink {
+        private final List<Document> documents = new ArrayList<>();
+        private final int failingWrite;
+        private int writes;
+
+        CollectingSink(int failingWrite) {
+            this.failingWrite = failingWrite;
+        }
+
+        @Override
+        public synchronized void write(String collection, List<Document> batch) {
+            if (++writes == failingWrite) {
+                throw new IllegalStateException("Target unavailable");
+            }
+            for (Document document : batch) {
+                documents.add(new Document(document).append("collection", collection));
+            }
+        }
+
+        @Override
+        public String describe() {
+            return "collecting";
+        }
+    }
+
+    @TempDir
+    Path directory;
+
+    @Test
+    void concurrentWritersAreAllReplayedWithTheirTypes() throws Exception {
+        FileTelemetrySink sink = new FileTelemetrySink(directory);
+        int writers = 4;
+        int batches = 100;
+        int batchSize = 100;
+        Date createdAt = new Date(1_700_000_000_000L);
+        ExecutorService executor = Executors.newFixedThreadPool(writers);
+        List<Future<?>> results = new ArrayList<>();
+        for (int writer = 0; writer < writers; writer++) {
+            int id = writer;
+            results.add(executor.submit(() -> {
+                for (int b = 0; b < batches; b++) {
+                    List<Document> batch = new ArrayList<>(batchSize);
+                    for (int i = 0; i < batchSize; i++) {
+                        batch.add(new Document("sequence", (long) (id * batches + b) * batchSize + i)
+                                .append("createdAt", createdAt)
+                                .append("responseTime", 12.5)
+                                .append("statusCode", 200)
+                                .append("currencies", Arrays.asList("USD", "JPY")));
+                    }
+                    sink.write(TelemetryWriter.COLLECTIONS[id], batch);
+                }
+                return null;
+            }));
+        }
+        for (Future<?> result : results) {
+            result.get();
+        }
+        executor.shutdown();
+        int total = writers * batches * batchSize;
+        assertEquals(total, sink.getSpooled());
+        assertTrue(sink.hasSegments());
+
+        CollectingSink target = new CollectingSink(0);
+        assertEquals(total, sink.replay(target));
+
+        assertEquals(total, target.documents.size());
+        Set<Long> sequences = new HashSet<>();
+        for (Document document : target.documents) {
+            sequences.add(document.getLong("sequence"));
+            assertEquals(createdAt, document.getDate("createdAt"));
+            assertEquals(Double.valueOf(12.5), document.getDouble("responseTime"));
+            assertEquals(Integer.valueOf(200), document.getInteger("statusCode"));
+            assertEquals(Arrays.asList("USD", "JPY"), document.getList("currencies", String.class));
+            assertTrue(document.get("_id") instanceof ObjectId);
+            int writer = (int) (document.getLong("sequence") / (batches * batchSize));
+            assertEquals(TelemetryWriter.COLLECTIONS[writer], document.getString("collection"));
+        }
+        assertEquals(total, sequences.size());
+        assertFalse(sink.hasSegments());
+        assertEquals(0, sink.getSpoolBytes());
+        assertEquals(total, sink.getReplayed());
+    }
+
+    @Test
+    void tornTrailingRecordEndsTheReplay() throws IOException {
+        FileTelemetrySink sink = new FileTelemetrySink(directory);
+        sink.write("client_request", documents(10));
+        sink.close();
+        Path segment = onlySegment();
+        try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 5);
+        }
+
+        CollectingSink target = new CollectingSink(0);
+        assertEquals(9, new FileTelemetrySink(directory).replay(target));
+        assertEquals(9, target.documents.size());
+        assertFalse(Files.exists(segment));
+    }
+
+    @Test
+    void recordWithWrongChecksumEndsTheReplay() throws IOException {
+        FileTelemetrySink sink = new FileTelemetrySink(directory);
+        sink.write("client_request", documents(10));
+        sink.close();
+        Path segment = onlySegment();
+        byte[] bytes = Files.readAllBytes(segment);
+        bytes[bytes.length - 3] ^= 0x55;
+        Files.write(segment, bytes);
+
+        CollectingSink target = new CollectingSink(0);
+        assertEquals(9, new FileTelemetrySink(directory).replay(target));
+        assertEquals(Long.valueOf(8), target.documents.get(8).getLong("sequence"));
+    }
+
+    @Test
+    void replayAfterAFailedTargetKeepsTheDocumentIds() {
+        // Three replay batches of at most 500 documents; the second write fails
+        FileTelemetrySink sink = new FileTelemetrySink(directory);
+        sink.write("server_response", documents(1200));
+        CollectingSink failing = new CollectingSink(2);
+        assertThrows(IllegalStateException.class, () -> sink.replay(failing));
+        assertEquals(500, failing.documents.size());
+        assertTrue(sink.hasSegments());
+
+        CollectingSink target = new CollectingSink(0);
+        assertEquals(1200, sink.replay(target));
+        for (int i = 0; i < failing.documents.size(); i++) {
+            assertEquals(failing.documents.get(i).get("_id"), target.documents.get(i).get("_id"));
+        }
+        assertFalse(sink.hasSegments());
+    }
+
+    private static List<Document> documents(int count) {
+        List<Document> documents = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            documents.add(new Document("sequence", (long) i).append("createdAt", new Date()));
+        }
+        return documents;
+    }
+
+    private Path onlySegment() throws IOException {
+        List<Path> files = new ArrayList<>();
+        try (DirectoryStream<Path> stream = Files.newDirectoryStream(directory, "*.seg")) {
+            stream.forEach(files::add);
+        }
+        assertEquals(1, files.size());
+        return files.get(0);
+    }
+}
@@ -0,0 +1,154 @@
+package ds.webservice;
+
+import org.json.JSONArray;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Number conversion, string escapes and UTF-8 decoding of {@link JsonPullParser}, checked
+ * against Double.parseDouble and org.json on the same input. The inputs are larger than the
+ * parser's read buffer, and are also fed one byte per read, so tokens cross buffer refills.
+ *
+ * Author: Aditya Aayush
+ */
+class JsonPullParserTest {
+
+    @Test
+    void numbersMatchDoubleParseDouble() throws IOException {
+        Random random = new Random(21);
+        List<String> numbers = new ArrayList<>();
+        String[] fixed = {"0", "-0", "1", "-1", "0.0005", "1e20", "1E20", "1e22", "1e23", "1.5e-22", "1.5e-23",
+                "123456789012345", "1234567890123456", "0.000000000000000000001234", "1.7976931348623157e308",
+                "4.9e-324", "2.2250738585072014E-308", "1.08", "161.95", "0.85673", "7.4371", "1e+5", "-2.5E-3"};
+        for (String number : fixed) {
+            numbers.add(number);
+        }
+        for (int i = 0; i < 20000; i++) {
+            switch (i % 4) {
+                case 0:
+                    // Shortest representation of an arbitrary double, often with an exponent
+                    double value = Double.longBitsToDouble(random.nextLong());
+                    numbers.add(Double.isFinite(value) ? Double.toString(value) : "1");
+                    break;
+                case 1:
+                    // Rates as upstream publishes them, up to 6 decimals
+                    numbers.add(String.format(Locale.ROOT, "%." + random.nextInt(7) + "f", random.nextDouble() * Math.pow(10, random.nextInt(6))));
+                    break;
+                case 2:
+                    numbers.add(new BigDecimal(random.nextGaussian() * 1e6).toPlainString());
+                    break;
+                default:
+                    numbers.add((random.nextBoolean() ? "-" : "") + random.nextInt(100000) + "e" + (random.nextInt(60) - 30));
+            }
+        }
+        String json = "[" + String.join(",", numbers) + "]";
+
+        for (InputStream in : streams(json)) {
+            try (JsonPullParser parser = new JsonPullParser(in)) {
+                assertEquals(JsonPullParser.Token.START_ARRAY, parser.next());
+                for (String number : numbers) {
+                    assertEquals(JsonPullParser.Token.NUMBER, parser.next());
+                    assertEquals(Double.doubleToLongBits(Double.parseDouble(number)), Double.doubleToLongBits(parser.getDouble()), number);
+                }
+                assertEquals(JsonPullParser.Token.END_ARRAY, parser.next());
+                assertEquals(JsonPullParser.Token.END, parser.next());
+            }
+        }
+    }
+
+    @Test
+    void stringsMatchOrgJson() throws IOException {
+        String[] strings = {
+                "plain", "", "quote \\\" backslash \\\\ slash \\/", "\\b\\f\\n\\r\\t",
+                "\\u0041\\u00e9\\u20ac", "surrogate pair \\ud834\\udd1e",
+                "raw UTF-8 é € 𝄞 日本円", "Złoty, Forint, Lira — Türkiye"};
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < 2000; i++) {
+            json.append(i == 0 ? "" : ",").append('"').append(strings[i % strings.length]).append('"');
+        }
+        json.append(']');
+        JSONArray expected = new JSONArray(json.toString());
+
+        for (InputStream in : streams(json.toString())) {
+            try (JsonPullParser parser = new JsonPullParser(in)) {
+                assertEquals(JsonPullParser.Token.START_ARRAY, parser.next());
+                for (int i = 0; i < expected.length(); i++) {
+                    assertEquals(JsonPullParser.Token.STRING, parser.next());
+                    assertEquals(expected.getString(i), parser.getText());
+                }
+                assertEquals(JsonPullParser.Token.END_ARRAY, parser.next());
+            }
+        }
+    }
+
+    @Test
+    void skipsNestedValuesAndCountsBytes() throws IOException {
+        String json = "{\"skip\": {\"a\": [1, {\"b\": \"}]\"}, null, true, false]}, \"keep\": 2.5, \"€\": \"x\"}";
+        try (JsonPullParser parser = new JsonPullParser(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)))) {
+            assertEquals(JsonPullParser.Token.START_OBJECT, parser.next());
+            assertEquals(JsonPullParser.Token.FIELD_NAME, parser.next());
+            parser.skip(JsonPullParser.Token.FIELD_NAME);
+            assertEquals(JsonPullParser.Token.FIELD_NAME, parser.next());
+            assertEquals("keep", parser.getText());
+            assertEquals(JsonPullParser.Token.NUMBER, parser.next());
+            assertEquals(2.5, parser.getDouble());
+            assertEquals(JsonPullParser.Token.FIELD_NAME, parser.next());
+            assertEquals("€", parser.getText());
+            assertEquals(JsonPullParser.Token.STRING, parser.next());
+            assertEquals(JsonPullParser.Token.END_OBJECT, parser.next());
+            assertEquals(JsonPullParser.Token.END, parser.next());
+            assertEquals(json.getBytes(StandardCharsets.UTF_8).length, parser.getByteCount());
+        }
+    }
+
+    @Test
+    void rejectsMalformedInput() {
+        assertThrows(IOException.class, () -> readAll("[\"unterminated"));
+        assertThrows(IOException.class, () -> readAll("[\"bad escape \\x\"]"));
+        assertThrows(IOException.class, () -> readAll("[\"bad unicode \\u12g4\"]"));
+        assertThrows(IOException.class, () -> readAll("[tru]"));
+        assertThrows(IOException.class, () -> readAll("]"));
+        assertThrows(IOException.class, () -> readAll("[@]"));
+        byte[] invalidUtf8 = {'[', '"', (byte) 0xC3, '"', ']'};
+        assertThrows(IOException.class, () -> readAll(new ByteArrayInputStream(invalidUtf8)));
+    }
+
+    private static void readAll(String json) throws IOException {
+        readAll(new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    private static void readAll(InputStream in) throws IOException {
+        try (JsonPullParser parser = new JsonPullParser(in)) {
+            while (parser.next() != JsonPullParser.Token.END) {
+                // Only the tokens are checked
+            }
+        }
+    }
+
+    // The same input read in large chunks and one byte per read
+    static List<InputStream> streams(String json) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        List<InputStream> streams = new ArrayList<>();
+        streams.add(new ByteArrayInputStream(bytes));
+        streams.add(new FilterInputStream(new ByteArrayInputStream(bytes)) {
+            @Override
+            public int read(byte[] buffer, int offset, int length) throws IOException {
+                return super.read(buffer, offset, Math.min(length, 1));
+            }
+        });
+        return streams;
+    }
+}
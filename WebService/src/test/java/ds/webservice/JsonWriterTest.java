@@ -0,0 +1,200 @@
+package ds.webservice;
+
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigDecimal;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Output of {@link JsonWriter}: doubles that read back as the same value with the fewest
+ * decimals, ISO dates computed from epoch days, null for values JSON cannot express, string
+ * escaping, and buffers that are reused through the pool.
+ *
+ * Author: Aditya Aayush
+ */
+class JsonWriterTest {
+
+    /**
+     * Writes one JSON value through a fresh writer and returns the text.
+     */
+    @FunctionalInterface
+    private interface Body {
+        void writeTo(JsonWriter json) throws IOException;
+    }
+
+    @Test
+    void doublesReadBackAsTheSameValue() throws IOException {
+        Random random = new Random(3);
+        int count = 200000;
+        double[] values = new double[count];
+        for (int i = 0; i < count; i++) {
+            if (i % 2 == 0) {
+                values[i] = Double.longBitsToDouble(random.nextLong());
+            } else {
+                values[i] = random.nextGaussian() * Math.pow(10, random.nextInt(30) - 15);
+            }
+        }
+        String text = write(json -> {
+            json.beginArray();
+            for (double value : values) {
+                json.value(value);
+            }
+            json.endArray();
+        });
+
+        JSONArray parsed = new JSONArray(text);
+        String[] numbers = text.substring(1, text.length() - 1).split(",");
+        assertEquals(count, numbers.length);
+        for (int i = 0; i < count; i++) {
+            if (Double.isFinite(values[i])) {
+                assertEquals(values[i], Double.parseDouble(numbers[i]), numbers[i]);
+            } else {
+                assertTrue(parsed.isNull(i));
+            }
+        }
+    }
+
+    @Test
+    void ratesUseTheirShortestDecimalForm() throws IOException {
+        Random random = new Random(4);
+        for (int i = 0; i < 100000; i++) {
+            // A published rate: up to 6 decimals, up to 6 integer digits
+            int decimals = random.nextInt(7);
+            BigDecimal rate = BigDecimal.valueOf(random.nextInt(1_000_000_000), decimals).stripTrailingZeros();
+            double value = rate.doubleValue();
+            String expected = rate.signum() == 0 ? "0" : rate.toPlainString();
+            assertEquals(expected, write(json -> json.value(value)));
+        }
+    }
+
+    @Test
+    void writesEdgeValues() throws IOException {
+        assertEquals("0.0005", write(json -> json.value(0.0005)));
+        assertEquals("1.0849", write(json -> json.value(1.0849)));
+        assertEquals("-2.5", write(json -> json.value(-2.5)));
+        assertEquals("100", write(json -> json.value(100.0)));
+        assertEquals("0.000000001", write(json -> json.value(1e-9)));
+        assertEquals(1e20, Double.parseDouble(write(json -> json.value(1e20))));
+        assertEquals(1e-10, Double.parseDouble(write(json -> json.value(1e-10))));
+        assertEquals(0.1 + 0.2, Double.parseDouble(write(json -> json.value(0.1 + 0.2))));
+        assertEquals(Double.MAX_VALUE, Double.parseDouble(write(json -> json.value(Double.MAX_VALUE))));
+        assertEquals(Double.MIN_VALUE, Double.parseDouble(write(json -> json.value(Double.MIN_VALUE))));
+        assertEquals("-9223372036854775808", write(json -> json.value(Long.MIN_VALUE)));
+        assertEquals("[null,null,null]", write(json -> json.beginArray()
+                .value(Double.NaN).value(Double.POSITIVE_INFINITY).value(Double.NEGATIVE_INFINITY).endArray()));
+    }
+
+    @Test
+    void datesMatchLocalDate() throws IOException {
+        int first = (int) LocalDate.of(1600, 1, 1).toEpochDay();
+        int last = (int) LocalDate.of(2400, 12, 31).toEpochDay();
+        int[] extremes = {(int) LocalDate.of(0, 1, 1).toEpochDay(), (int) LocalDate.of(9999, 12, 31).toEpochDay()};
+        StringBuilder expected = new StringBuilder("{");
+        String text = write(json -> {
+            json.beginObject();
+            for (int day = first; day <= last; day++) {
+                json.nameDate(day).value(day);
+            }
+            for (int day : extremes) {
+                json.nameDate(day).value(day);
+            }
+            json.endObject();
+        });
+        for (int day = first; day <= last; day++) {
+            expected.append('"').append(LocalDate.ofEpochDay(day)).append("\":").append(day).append(',');
+        }
+        for (int day : extremes) {
+            expected.append('"').append(LocalDate.ofEpochDay(day)).append("\":").append(day).append(',');
+        }
+        expected.setCharAt(expected.length() - 1, '}');
+        assertEquals(expected.toString(), text);
+        // Days before 1970 and around leap days
+        assertEquals("{\"1969-12-31\":1,\"1900-02-28\":2,\"1900-03-01\":3,\"2000-02-29\":4,\"2024-02-29\":5}", write(json -> json.beginObject()
+                .nameDate(-1).value(1)
+                .nameDate((int) LocalDate.of(1900, 2, 28).toEpochDay()).value(2)
+                .nameDate((int) LocalDate.of(1900, 3, 1).toEpochDay()).value(3)
+                .nameDate((int) LocalDate.of(2000, 2, 29).toEpochDay()).value(4)
+                .nameDate((int) LocalDate.of(2024, 2, 29).toEpochDay()).value(5)
+                .endObject()));
+    }
+
+    @Test
+    void stringsReadBackThroughOrgJson() throws IOException {
+        String[] strings = {"plain", "", "quote \" backslash \\ slash /", "\b\f\n\r\t\u0001\u001f",
+                "é € 日本円", "surrogate pair 𝄞", "Złoty — Türkiye"};
+        String text = write(json -> {
+            json.beginArray();
+            for (String value : strings) {
+                json.value(value);
+            }
+            json.value((String) null);
+            json.endArray();
+        });
+        JSONArray parsed = new JSONArray(text);
+        for (int i = 0; i < strings.length; i++) {
+            assertEquals(strings[i], parsed.getString(i));
+        }
+        assertTrue(parsed.isNull(strings.length));
+    }
+
+    @Test
+    void writesOrgJsonValues() throws IOException {
+        JSONObject value = new JSONObject()
+                .put("base", "EUR")
+                .put("rates", new JSONObject().put("USD", 1.0849).put("JPY", 161))
+                .put("days", new JSONArray().put(true).put(JSONObject.NULL).put(2.5));
+        assertTrue(value.similar(new JSONObject(write(json -> json.value((Object) value)))));
+    }
+
+    @Test
+    void pooledBuffersStartEmpty() throws IOException {
+        // Larger than one buffer, so the first writer hands bytes to the stream while writing
+        StringBuilder expected = new StringBuilder("[");
+        for (int i = 0; i < 5000; i++) {
+            expected.append(i == 0 ? "" : ",").append(i);
+        }
+        expected.append(']');
+        for (int round = 0; round < 3; round++) {
+            assertEquals(expected.toString(), write(json -> {
+                json.beginArray();
+                for (int i = 0; i < 5000; i++) {
+                    json.value(i);
+                }
+                json.endArray();
+            }));
+            assertEquals("{\"a\":1}", write(json -> json.beginObject().name("a").value(1).endObject()));
+        }
+        // Closing twice must not return the buffer to the pool twice
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JsonWriter json = new JsonWriter(out);
+        json.value("x");
+        json.close();
+        json.close();
+        assertEquals("\"x\"", out.toString(StandardCharsets.UTF_8.name()));
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream second = new ByteArrayOutputStream();
+        try (JsonWriter one = new JsonWriter(first); JsonWriter two = new JsonWriter(second)) {
+            one.value("first");
+            two.value("second");
+        }
+        assertEquals("\"first\"", first.toString(StandardCharsets.UTF_8.name()));
+        assertEquals("\"second\"", second.toString(StandardCharsets.UTF_8.name()));
+    }
+
+    private static String write(Body body) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (JsonWriter json = new JsonWriter(out)) {
+            body.writeTo(json);
+        }
+        return out.toString(StandardCharsets.UTF_8.name());
+    }
+}
@@ -0,0 +1,79 @@
+package ds.webservice;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Publication boundaries of {@link PublicationSchedule} around weekends and TARGET closing days,
+ * with Easter checked against known dates.
+ *
+ * Author: Aditya Aayush
+ */
+class PublicationScheduleTest {
+
+    private static final ZoneId ZONE = ZoneId.of("Europe/Berlin");
+
+    @Test
+    void easterMatchesKnownDates() {
+        assertEquals(LocalDate.of(2000, 4, 23), PublicationSchedule.easterSunday(2000));
+        assertEquals(LocalDate.of(2008, 3, 23), PublicationSchedule.easterSunday(2008));
+        assertEquals(LocalDate.of(2019, 4, 21), PublicationSchedule.easterSunday(2019));
+        assertEquals(LocalDate.of(2024, 3, 31), PublicationSchedule.easterSunday(2024));
+        assertEquals(LocalDate.of(2025, 4, 20), PublicationSchedule.easterSunday(2025));
+        assertEquals(LocalDate.of(2026, 4, 5), PublicationSchedule.easterSunday(2026));
+        assertEquals(LocalDate.of(2038, 4, 25), PublicationSchedule.easterSunday(2038));
+    }
+
+    @Test
+    void closingDaysOf2025() {
+        int count = 0;
+        for (LocalDate day = LocalDate.of(2025, 1, 1); day.getYear() == 2025; day = day.plusDays(1)) {
+            if (PublicationSchedule.isTargetHoliday(day)) {
+                count++;
+            }
+        }
+        assertEquals(6, count);
+        assertTrue(PublicationSchedule.isTargetHoliday(LocalDate.of(2025, 1, 1)));
+        assertTrue(PublicationSchedule.isTargetHoliday(LocalDate.of(2025, 4, 18)));
+        assertTrue(PublicationSchedule.isTargetHoliday(LocalDate.of(2025, 4, 21)));
+        assertTrue(PublicationSchedule.isTargetHoliday(LocalDate.of(2025, 5, 1)));
+        assertTrue(PublicationSchedule.isTargetHoliday(LocalDate.of(2025, 12, 25)));
+        assertTrue(PublicationSchedule.isTargetHoliday(LocalDate.of(2025, 12, 26)));
+        assertFalse(PublicationSchedule.isTargetHoliday(LocalDate.of(2025, 4, 20)));
+        assertFalse(PublicationSchedule.isClosingDay(LocalDate.of(2025, 12, 24)));
+    }
+
+    @Test
+    void latestPublishedDateSkipsClosingDays() {
+        // Good Friday afternoon: Thursday's table is still the latest
+        assertEquals(LocalDate.of(2025, 4, 17), PublicationSchedule.latestPublishedDate(millis(2025, 4, 18, 17, 0)));
+        // Easter Monday afternoon, across the weekend
+        assertEquals(LocalDate.of(2025, 4, 17), PublicationSchedule.latestPublishedDate(millis(2025, 4, 21, 17, 0)));
+        // Before the boundary on the Tuesday after Easter
+        assertEquals(LocalDate.of(2025, 4, 17), PublicationSchedule.latestPublishedDate(millis(2025, 4, 22, 9, 0)));
+        assertEquals(LocalDate.of(2025, 4, 22), PublicationSchedule.latestPublishedDate(millis(2025, 4, 22, 16, 15)));
+        // Christmas and New Year
+        assertEquals(LocalDate.of(2025, 12, 24), PublicationSchedule.latestPublishedDate(millis(2025, 12, 26, 18, 0)));
+        assertEquals(LocalDate.of(2025, 12, 31), PublicationSchedule.latestPublishedDate(millis(2026, 1, 1, 18, 0)));
+        assertEquals(LocalDate.of(2025, 4, 30), PublicationSchedule.latestPublishedDate(millis(2025, 5, 1, 20, 0)));
+    }
+
+    @Test
+    void nextPublicationSkipsClosingDays() {
+        assertEquals(millis(2025, 4, 22, 16, 15), PublicationSchedule.nextPublication(millis(2025, 4, 17, 16, 15)));
+        assertEquals(millis(2025, 12, 29, 16, 15), PublicationSchedule.nextPublication(millis(2025, 12, 24, 17, 0)));
+        assertEquals(millis(2026, 1, 2, 16, 15), PublicationSchedule.nextPublication(millis(2025, 12, 31, 16, 30)));
+        assertEquals(millis(2025, 4, 30, 16, 15), PublicationSchedule.nextPublication(millis(2025, 4, 30, 9, 0)));
+    }
+
+    private static long millis(int year, int month, int day, int hour, int minute) {
+        return LocalDateTime.of(year, month, day, hour, minute).atZone(ZONE).toInstant().toEpochMilli();
+    }
+}
@@ -0,0 +1,112 @@
+package ds.webservice;
+
+import com.example.currency_converter.RateSeriesDecoder;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Round trip of the binary time series between the server's {@link RateSeriesFormat} and the
+ * Android client's RateSeriesDecoder, for series as the store produces them: EUR-based
+ * reference rates, cross rates between two other currencies and monthly means.
+ *
+ * Author: Aditya Aayush
+ */
+class RateSeriesFormatTest {
+
+    private static ColumnarSeriesFile store;
+
+    // Ten years of business days with USD and JPY EUR rates published with 5 significant digits
+    @BeforeAll
+    static void createStore() throws Exception {
+        Random random = new Random(42);
+        int rows = 2600;
+        int[] days = new int[rows];
+        double[][] columns = new double[2][rows];
+        double usd = 1.17;
+        double jpy = 130;
+        LocalDate date = LocalDate.of(2014, 1, 1);
+        for (int row = 0; row < rows; date = date.plusDays(1)) {
+            if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                continue;
+            }
+            usd += random.nextGaussian() * 0.004;
+            jpy += random.nextGaussian() * 0.5;
+            days[row] = (int) date.toEpochDay();
+            columns[0][row] = Math.round(usd * 10000) / 10000.0;
+            columns[1][row] = Math.round(jpy * 100) / 100.0;
+            row++;
+        }
+        Path file = Files.createTempFile("rate-series", ".col");
+        file.toFile().deleteOnExit();
+        ColumnarSeriesFile.write(file, new String[]{"USD", "JPY"}, days, columns);
+        store = ColumnarSeriesFile.open(file);
+    }
+
+    @Test
+    void eurBasedRatesRoundTripExactly() {
+        HistoricalRateStore.Series series = store.range(Integer.MIN_VALUE, Integer.MAX_VALUE, "EUR", "JPY");
+        byte[] encoded = RateSeriesFormat.encode(series);
+
+        assertEquals(RateSeriesFormat.ENCODING_DELTA, encoded[1]);
+        assertArrayEquals(slice(series.getRates(), series.length()), RateSeriesDecoder.decodeRates(encoded));
+        assertArrayEquals(slice(series.getEpochDays(), series.length()), RateSeriesDecoder.decodeEpochDays(encoded));
+    }
+
+    @Test
+    void crossRatesRoundTripToSevenSignificantDigits() {
+        HistoricalRateStore.Series series = store.range(Integer.MIN_VALUE, Integer.MAX_VALUE, "USD", "JPY");
+        byte[] encoded = RateSeriesFormat.encode(series);
+
+        assertEquals(RateSeriesFormat.ENCODING_DELTA, encoded[1]);
+        assertArrayEquals(slice(series.getEpochDays(), series.length()), RateSeriesDecoder.decodeEpochDays(encoded));
+        assertWithinSignificantDigits(series, RateSeriesDecoder.decodeRates(encoded), 7);
+        // Much smaller than 4-byte floats
+        assertTrue(encoded.length < series.length() * 3, "encoded size " + encoded.length);
+    }
+
+    @Test
+    void monthlyMeansRoundTripToSevenSignificantDigits() {
+        HistoricalRateStore.Series daily = store.range(Integer.MIN_VALUE, Integer.MAX_VALUE, "JPY", "USD");
+        HistoricalRateStore.Series means = SeriesRollup.of(daily, SeriesRollup.Interval.MONTH).toMeanSeries();
+        byte[] encoded = RateSeriesFormat.encode(means);
+
+        assertEquals(RateSeriesFormat.ENCODING_DELTA, encoded[1]);
+        assertArrayEquals(slice(means.getEpochDays(), means.length()), RateSeriesDecoder.decodeEpochDays(encoded));
+        assertWithinSignificantDigits(means, RateSeriesDecoder.decodeRates(encoded), 7);
+    }
+
+    // Every decoded rate is within half a unit of the last kept digit of the largest rate
+    private static void assertWithinSignificantDigits(HistoricalRateStore.Series series, double[] decoded, int digits) {
+        double largest = 0;
+        for (int i = 0; i < series.length(); i++) {
+            largest = Math.max(largest, Math.abs(series.getRates()[i]));
+        }
+        double unit = Math.pow(10, Math.floor(Math.log10(largest)) + 1 - digits);
+        assertEquals(series.length(), decoded.length);
+        for (int i = 0; i < decoded.length; i++) {
+            assertEquals(series.getRates()[i], decoded[i], unit / 2 * (1 + 1e-9), "rate " + i);
+        }
+    }
+
+    private static double[] slice(double[] values, int length) {
+        double[] copy = new double[length];
+        System.arraycopy(values, 0, copy, 0, length);
+        return copy;
+    }
+
+    private static int[] slice(int[] values, int length) {
+        int[] copy = new int[length];
+        System.arraycopy(values, 0, copy, 0, length);
+        return copy;
+    }
+}
@@ -0,0 +1,124 @@
+package ds.webservice;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Checks the range queries of {@link SeriesRollup}, which only recompute the periods cut by the
+ * range boundaries, against aggregating the daily rates of the range from scratch. The daily
+ * series has weekends, scattered missing days and a gap of several weeks, so ranges cut periods
+ * on one or both sides and cut periods can be left without any rate.
+ *
+ * Author: Aditya Aayush
+ */
+class SeriesRollupTest {
+
+    private static final HistoricalRateStore.Series DAILY = dailySeries();
+
+    @Test
+    void weeklyRangesMatchAggregatingTheRange() {
+        checkRandomRanges(SeriesRollup.Interval.WEEK, 11);
+    }
+
+    @Test
+    void monthlyRangesMatchAggregatingTheRange() {
+        checkRandomRanges(SeriesRollup.Interval.MONTH, 12);
+    }
+
+    @Test
+    void rangeInsideOnePeriodIsCutOnBothSides() {
+        SeriesRollup whole = SeriesRollup.of(DAILY, SeriesRollup.Interval.MONTH);
+        int start = (int) LocalDate.of(2012, 3, 6).toEpochDay();
+        int end = (int) LocalDate.of(2012, 3, 21).toEpochDay();
+
+        SeriesRollup range = whole.range(start, end, SeriesRollupTest::slice);
+
+        assertEquals(1, range.length());
+        assertSame(SeriesRollup.of(slice(start, end), SeriesRollup.Interval.MONTH), range);
+    }
+
+    @Test
+    void cutPeriodWithoutRatesIsDropped() {
+        SeriesRollup whole = SeriesRollup.of(DAILY, SeriesRollup.Interval.WEEK);
+        // The week of Monday 2013-06-24 has rates, but none from its Saturday on, and the gap follows
+        int start = (int) LocalDate.of(2013, 6, 29).toEpochDay();
+        int end = (int) LocalDate.of(2013, 9, 20).toEpochDay();
+
+        SeriesRollup range = whole.range(start, end, SeriesRollupTest::slice);
+
+        assertEquals((int) LocalDate.of(2013, 9, 2).toEpochDay(), range.getPeriodDays()[0]);
+        assertSame(SeriesRollup.of(slice(start, end), SeriesRollup.Interval.WEEK), range);
+    }
+
+    private static void checkRandomRanges(SeriesRollup.Interval interval, long seed) {
+        SeriesRollup whole = SeriesRollup.of(DAILY, interval);
+        int[] days = DAILY.getEpochDays();
+        int first = days[0] - 20;
+        int span = days[DAILY.length() - 1] + 20 - first;
+        Random random = new Random(seed);
+        for (int i = 0; i < 20000; i++) {
+            int start = first + random.nextInt(span);
+            // Mostly short ranges, where cut periods make up most of the result
+            int length = random.nextBoolean() ? random.nextInt(70) : random.nextInt(span);
+            int end = start + length;
+
+            SeriesRollup expected = SeriesRollup.of(slice(start, end), interval);
+            SeriesRollup actual = whole.range(start, end, SeriesRollupTest::slice);
+            assertSame(expected, actual);
+        }
+    }
+
+    private static void assertSame(SeriesRollup expected, SeriesRollup actual) {
+        int length = expected.length();
+        assertEquals(length, actual.length());
+        assertArrayEquals(Arrays.copyOf(expected.getPeriodDays(), length), Arrays.copyOf(actual.getPeriodDays(), length));
+        assertArrayEquals(Arrays.copyOf(expected.getOpen(), length), Arrays.copyOf(actual.getOpen(), length));
+        assertArrayEquals(Arrays.copyOf(expected.getHigh(), length), Arrays.copyOf(actual.getHigh(), length));
+        assertArrayEquals(Arrays.copyOf(expected.getLow(), length), Arrays.copyOf(actual.getLow(), length));
+        assertArrayEquals(Arrays.copyOf(expected.getClose(), length), Arrays.copyOf(actual.getClose(), length));
+        assertArrayEquals(Arrays.copyOf(expected.getMean(), length), Arrays.copyOf(actual.getMean(), length));
+    }
+
+    // Business days from 2010 to 2015 with a few random holidays and no rates in July and August 2013
+    private static HistoricalRateStore.Series dailySeries() {
+        Random random = new Random(7);
+        LocalDate gapStart = LocalDate.of(2013, 7, 1);
+        LocalDate gapEnd = LocalDate.of(2013, 8, 31);
+        int[] days = new int[2000];
+        double[] rates = new double[days.length];
+        int count = 0;
+        double rate = 1.3;
+        for (LocalDate date = LocalDate.of(2010, 1, 1); date.isBefore(LocalDate.of(2016, 1, 1)); date = date.plusDays(1)) {
+            boolean weekend = date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY;
+            boolean gap = !date.isBefore(gapStart) && !date.isAfter(gapEnd);
+            if (weekend || gap || random.nextInt(40) == 0) {
+                continue;
+            }
+            rate += random.nextGaussian() * 0.005;
+            days[count] = (int) date.toEpochDay();
+            rates[count++] = Math.round(rate * 10000) / 10000.0;
+        }
+        return new HistoricalRateStore.Series(days, rates, count);
+    }
+
+    // The daily rates of an inclusive range of epoch days, as the columnar store returns them
+    private static HistoricalRateStore.Series slice(int startDay, int endDay) {
+        int[] days = DAILY.getEpochDays();
+        int from = lowerBound(days, startDay);
+        int to = Math.max(from, lowerBound(days, endDay + 1));
+        return new HistoricalRateStore.Series(Arrays.copyOfRange(days, from, to),
+                Arrays.copyOfRange(DAILY.getRates(), from, to), to - from);
+    }
+
+    private static int lowerBound(int[] days, int day) {
+        int index = Arrays.binarySearch(days, 0, DAILY.length(), day);
+        return index >= 0 ? index : -index - 1;
+    }
+}
@@ -0,0 +1,124 @@
+package ds.webservice;
+
+import org.json.JSONObject;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.time.DayOfWeek;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.TreeMap;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+/**
+ * Extraction of one currency's rates from an upstream time-series body by
+ * {@link UpstreamSeriesParser}, compared with reading the same body through org.json. The sample
+ * body has days on which the target currency is missing or null and an extra top-level field.
+ *
+ * Author: Aditya Aayush
+ */
+class UpstreamSeriesParserTest {
+
+    @Test
+    void matchesOrgJsonOnSampleBody() throws IOException {
+        String body = sampleBody(new Random(5), LocalDate.of(2004, 1, 1), LocalDate.of(2024, 12, 31), false);
+        checkAgainstOrgJson(body, "JPY");
+        checkAgainstOrgJson(body, "USD");
+        // A currency that is not in the body gives an empty series
+        checkAgainstOrgJson(body, "CHF");
+    }
+
+    @Test
+    void sortsDaysSentOutOfOrder() throws IOException {
+        String body = sampleBody(new Random(6), LocalDate.of(2023, 1, 1), LocalDate.of(2023, 3, 31), true);
+        checkAgainstOrgJson(body, "USD");
+    }
+
+    @Test
+    void rejectsBodiesWithoutRates() {
+        assertThrows(IOException.class, () -> parse("{\"message\": \"not found\"}", "USD"));
+        assertThrows(IOException.class, () -> parse("[1, 2]", "USD"));
+        assertThrows(IOException.class, () -> parse("{\"rates\": {\"2024-01-02\": {\"USD\": 1.09}", "USD"));
+    }
+
+    @Test
+    void convertsDatesToEpochDays() throws IOException {
+        for (LocalDate date = LocalDate.of(1999, 1, 1); date.isBefore(LocalDate.of(2031, 1, 1)); date = date.plusDays(1)) {
+            String body = "{\"rates\": {\"" + date + "\": {\"USD\": 1}}}";
+            assertEquals(date.toEpochDay(), parse(body, "USD").getSeries().getEpochDays()[0], date.toString());
+        }
+        // Names that are not dates are skipped
+        assertEquals(0, parse("{\"rates\": {\"2024-13-01\": {\"USD\": 1}, \"latest\": {\"USD\": 1}}}", "USD").getSeries().length());
+    }
+
+    private static void checkAgainstOrgJson(String body, String currency) throws IOException {
+        JSONObject json = new JSONObject(body);
+        JSONObject days = json.getJSONObject("rates");
+        TreeMap<LocalDate, Double> expected = new TreeMap<>();
+        for (String date : days.keySet()) {
+            JSONObject rates = days.getJSONObject(date);
+            if (rates.has(currency) && !rates.isNull(currency)) {
+                expected.put(LocalDate.parse(date), rates.getDouble(currency));
+            }
+        }
+        int[] expectedDays = new int[expected.size()];
+        double[] expectedRates = new double[expected.size()];
+        int i = 0;
+        for (Map.Entry<LocalDate, Double> entry : expected.entrySet()) {
+            expectedDays[i] = (int) entry.getKey().toEpochDay();
+            expectedRates[i++] = entry.getValue();
+        }
+
+        for (InputStream in : JsonPullParserTest.streams(body)) {
+            UpstreamSeriesParser.Result result = UpstreamSeriesParser.parse(in, currency);
+            HistoricalRateStore.Series series = result.getSeries();
+            assertEquals(expected.size(), series.length());
+            assertArrayEquals(expectedDays, Arrays.copyOf(series.getEpochDays(), series.length()));
+            assertArrayEquals(expectedRates, Arrays.copyOf(series.getRates(), series.length()));
+            assertEquals(json.getString("base"), result.getBase());
+            assertEquals(body.getBytes(StandardCharsets.UTF_8).length, result.getByteCount());
+        }
+    }
+
+    private static UpstreamSeriesParser.Result parse(String body, String currency) throws IOException {
+        return UpstreamSeriesParser.parse(new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8)), currency);
+    }
+
+    // A body in the upstream format; JPY is missing on some days and null on others
+    private static String sampleBody(Random random, LocalDate start, LocalDate end, boolean shuffled) {
+        List<String> entries = new ArrayList<>();
+        for (LocalDate date = start; !date.isAfter(end); date = date.plusDays(1)) {
+            if (date.getDayOfWeek() == DayOfWeek.SATURDAY || date.getDayOfWeek() == DayOfWeek.SUNDAY) {
+                continue;
+            }
+            StringBuilder day = new StringBuilder("\"").append(date).append("\": {");
+            day.append(String.format(Locale.ROOT, "\"USD\": %.4f, \"GBP\": %.5f", 1 + random.nextDouble() * 0.5, 0.7 + random.nextDouble() * 0.2));
+            int jpy = random.nextInt(20);
+            if (jpy == 0) {
+                day.append(", \"JPY\": null");
+            } else if (jpy > 1) {
+                day.append(String.format(Locale.ROOT, ", \"JPY\": %.2f", 100 + random.nextDouble() * 80));
+            }
+            day.append(", \"TRY\": ").append(random.nextInt(40)).append('}');
+            entries.add(day.toString());
+        }
+        if (shuffled) {
+            Collections.shuffle(entries, random);
+        }
+        return "{\"amount\": 1.0, \"base\": \"EUR\", \"start_date\": \"" + start + "\", \"end_date\": \"" + end
+                + "\", \"meta\": {\"source\": [\"ECB\", {\"note\": \"Euro – €\"}]}, \"rates\": {"
+                + String.join(", ", entries) + "}}";
+    }
+}